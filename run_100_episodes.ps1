@@ -1,5 +1,5 @@
 # run_100_episodes.ps1
-# Script to run the agent 100 times and calculate the average reward
+# Script to run the agent for 100 episodes and calculate the average reward
 
 $ErrorActionPreference = "Continue"
 
@@ -15,8 +15,8 @@ Write-Host ""
 $totalEpisodes = 100
 $successCount = 0
 
-# Clear the rewards file at the start (new file: episode_rewards.txt with append)
-$rewardsFile = Join-Path $projectDir "episode_rewards.txt"
+# Per-episode results (CSV with header: episode,seed,reward,steps,...), rewritten by every launch
+$rewardsFile = Join-Path $projectDir "episode_results.csv"
 if (Test-Path $rewardsFile) {
     Remove-Item $rewardsFile -Force
 }
@@ -27,25 +27,16 @@ gradle classes -q 2>$null
 Write-Host "Build complete." -ForegroundColor Green
 Write-Host ""
 
-for ($i = 1; $i -le $totalEpisodes; $i++) {
-    Write-Host -NoNewline "Running episode $i of $totalEpisodes... "
-    
-    # Run the MAS with auto-exit enabled (environment appends reward to episode_rewards.txt)
-    gradle runBenchmark -q 2>&1 | Out-Null
-    
-    # Check if the reward was recorded
-    if (Test-Path $rewardsFile) {
-        $lineCount = (Get-Content $rewardsFile | Measure-Object -Line).Lines
-        if ($lineCount -ge $i) {
-            $lastReward = (Get-Content $rewardsFile -Tail 1).Trim()
-            Write-Host "Reward: $lastReward" -ForegroundColor Green
-            $successCount++
-        } else {
-            Write-Host "Failed to record reward" -ForegroundColor Red
-        }
-    } else {
-        Write-Host "Rewards file not found" -ForegroundColor Red
-    }
+# Run all episodes inside one JVM: the environment resets itself between episodes,
+# streams one line per episode to episode_results.csv and exits after the last one
+Write-Host "Running $totalEpisodes episodes in one MAS launch..." -ForegroundColor Yellow
+gradle runBenchmark -q "-Pmas.episodes=$totalEpisodes" 2>&1 | Out-Null
+
+if (Test-Path $rewardsFile) {
+    $successCount = @(Import-Csv $rewardsFile).Count
+    Write-Host "Episodes recorded: $successCount" -ForegroundColor Green
+} else {
+    Write-Host "Rewards file not found" -ForegroundColor Red
 }
 
 Write-Host ""
@@ -55,7 +46,7 @@ Write-Host "========================================" -ForegroundColor Cyan
 
 # Read all rewards from the file
 if (Test-Path $rewardsFile) {
-    $rewards = Get-Content $rewardsFile | Where-Object { $_ -match '\S' } | ForEach-Object { [double]$_.Trim() }
+    $rewards = @(Import-Csv $rewardsFile | ForEach-Object { [double]$_.reward })
     
     if ($rewards.Count -gt 0) {
         $avgReward = ($rewards | Measure-Object -Average).Average
@@ -76,23 +67,9 @@ if (Test-Path $rewardsFile) {
         Write-Host "Std Deviation:   $([Math]::Round($stdDev, 4))" -ForegroundColor Yellow
         Write-Host ""
         
-        # Save summary to results file
-        $resultsFile = "benchmark_results.txt"
-        $timestamp = Get-Date -Format "yyyy-MM-dd HH:mm:ss"
-        @"
-Benchmark Results - $timestamp
-======================================
-Episodes completed: $($rewards.Count) / $totalEpisodes
-Average Reward:  $([Math]::Round($avgReward, 4))
-Min Reward:      $([Math]::Round($minReward, 4))
-Max Reward:      $([Math]::Round($maxReward, 4))
-Std Deviation:   $([Math]::Round($stdDev, 4))
-
-Individual rewards saved in: episode_rewards.txt
-"@ | Out-File -FilePath $resultsFile -Encoding UTF8
-        
-        Write-Host "Results saved to: $resultsFile" -ForegroundColor Cyan
-        Write-Host "All rewards in: episode_rewards.txt" -ForegroundColor Cyan
+        # runBenchmark itself writes the summary after the last episode
+        Write-Host "Summary in: benchmark_results.txt" -ForegroundColor Cyan
+        Write-Host "All rewards in: episode_results.csv" -ForegroundColor Cyan
     } else {
         Write-Host "No rewards recorded in file!" -ForegroundColor Red
     }
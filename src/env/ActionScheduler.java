@@ -0,0 +1,147 @@
+package env;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jason.asSyntax.Structure;
+
+/**
+ * Drives the multi-step actions scheduled by the agents: every step is a short task on a few
+ * threads, and the next step is scheduled after the pacing of the previous one (at once in
+ * virtual time), so many agents can walk at the same time without a thread each.
+ *
+ * An agent has at most one action here: scheduling another action of the same agent cancels
+ * it between two steps (it ends as failed), and so does {@link #cancel(AgentState)}.
+ */
+final class ActionScheduler {
+
+    /** What the environment does for the steps of a run and at its end. */
+    interface Host {
+        // plays the next step of r under the environment's locks: MultiStepAction.RUNNING, SUCCEEDED or FAILED
+        int step(Run r);
+
+        // r ended (cancelled: stopped between two steps, result false): tick, percepts, report to the agent
+        void finish(Run r, boolean result, boolean cancelled);
+    }
+
+    /** One multi-step action in progress. */
+    final class Run implements Runnable {
+        final AgentState agent;
+        final Structure action;
+        final int type;
+        final Object infraData;
+        final long startNanos;
+        final int episode;
+        final MultiStepAction steps;
+        // a step and a cancel never overlap
+        private final ReentrantLock lock = new ReentrantLock();
+        private boolean ended;
+
+        Run(AgentState agent, Structure action, int type, Object infraData, long startNanos, int episode,
+            MultiStepAction steps) {
+            this.agent = agent;
+            this.action = action;
+            this.type = type;
+            this.infraData = infraData;
+            this.startNanos = startNanos;
+            this.episode = episode;
+            this.steps = steps;
+        }
+
+        @Override
+        public void run() {
+            lock.lock();
+            try {
+                if (ended) return;
+                int status;
+                try {
+                    status = host.step(this);
+                } catch (RuntimeException e) {
+                    EnvLog.error("Step of " + action + " failed: " + e);
+                    status = MultiStepAction.FAILED;
+                }
+                if (status == MultiStepAction.RUNNING) {
+                    schedule(this, steps.delay);
+                } else {
+                    end(status == MultiStepAction.SUCCEEDED, false);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // stops the run between two steps; false if it had already ended
+        boolean cancel() {
+            lock.lock();
+            try {
+                if (ended) return false;
+                end(false, true);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void end(boolean result, boolean cancelled) {
+            ended = true;
+            running.remove(agent, this);
+            host.finish(this, result, cancelled);
+        }
+    }
+
+    private final Host host;
+    private final boolean virtual;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<AgentState, Run> running = new ConcurrentHashMap<>();
+
+    ActionScheduler(Host host, int threads, boolean virtual) {
+        this.host = host;
+        this.virtual = virtual;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "env-steps-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    Run run(AgentState agent, Structure action, int type, Object infraData, long startNanos, int episode,
+            MultiStepAction steps) {
+        return new Run(agent, action, type, infraData, startNanos, episode, steps);
+    }
+
+    /** Starts r, cancelling the action its agent had running. */
+    void start(Run r) {
+        Run previous = running.put(r.agent, r);
+        if (previous != null) previous.cancel();
+        executor.execute(r);
+    }
+
+    /** Cancels the running action of agent a; false if it had none. */
+    boolean cancel(AgentState a) {
+        Run r = running.get(a);
+        return r != null && r.cancel();
+    }
+
+    void cancelAll() {
+        for (Run r : running.values()) r.cancel();
+    }
+
+    // real time: the next step once the pacing of this one has passed
+    private void schedule(Run r, long delayMillis) {
+        if (virtual || delayMillis <= 0) {
+            executor.execute(r);
+        } else {
+            executor.schedule(r, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
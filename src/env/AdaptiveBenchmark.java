@@ -0,0 +1,349 @@
+package env;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates an agent configuration, or compares two, for as many episodes as the noise of the
+ * reward calls for: the rewards are folded into {@link RewardStats} (Welford mean and variance,
+ * P² quantiles) episode by episode, and the run stops once the confidence interval of the mean
+ * is narrower than the target, the time budget is spent or the episode limit is reached. A
+ * configuration with a steady reward stops after the minimum number of episodes.
+ *
+ * Comparing two configurations, both play episode k from the same seed
+ * {@link EnvConfig#episodeSeed}(base, k) (same start positions and object moves as long as the
+ * two agents act alike), and the stopping rule is on the mean of the paired differences, whose
+ * variance is much lower than that of either reward when the configurations are close.
+ *
+ * Episodes are played in rounds on a fork-join pool, each thread with its own players, and
+ * folded in episode order with the stopping rule checked after each one: the episodes counted,
+ * and so the results, do not depend on the number of threads (except where the time budget
+ * cuts the run, or with 'lookahead', whose decisions depend on the time they get).
+ *
+ * Configurations: scripted (the Java port of agent.asl on an isolated environment),
+ * greedy[:EPSILON] ({@link GreedyPolicy} on the kernel), mdp (the optimal policy of
+ * {@link MdpSolver}, solved once at start) and lookahead[:MS] ({@link RolloutPlanner} with MS
+ * per action on one thread).
+ *
+ * gradle runAdaptive -Padaptive.a=scripted [-Padaptive.b=greedy] [-Padaptive.halfWidth=0.005]
+ * [-Padaptive.confidence=0.95] [-Padaptive.seconds=300] [-Padaptive.minEpisodes=30]
+ * [-Padaptive.maxEpisodes=N] [-Padaptive.threads=N] [-Pmas.seed=S] [-Pmas.map=FILE]
+ * writes adaptive_results.csv (one line per episode counted) and adaptive_summary.txt.
+ */
+public class AdaptiveBenchmark {
+
+    // episodes per fork-join leaf task; a round is CHUNK episodes per thread
+    private static final int CHUNK = 8;
+    // quantiles reported for each configuration
+    private static final double[] QUANTILES = {0.05, 0.5, 0.95};
+    // time between two progress lines
+    private static final long PROGRESS_NANOS = 5_000_000_000L;
+
+    /** Plays whole episodes of one configuration; one instance per thread. */
+    interface Player {
+        /** Plays episode k from its seed and returns the reward. */
+        double play(int episode);
+
+        default void close() {}
+    }
+
+    /** Receives the episodes counted by a run (rewardB NaN when not comparing). */
+    public interface EpisodeSink {
+        void episode(int episode, long seed, double rewardA, double rewardB) throws IOException;
+    }
+
+    /** Why a run stopped. */
+    public enum Stop { CONVERGED, TIME_BUDGET, EPISODE_LIMIT }
+
+    /** Statistics of a run: per configuration, and of the differences A - B when comparing. */
+    public static final class Result {
+        public final RewardStats a = new RewardStats(QUANTILES);
+        public final RewardStats b = new RewardStats(QUANTILES);
+        public final RewardStats difference = new RewardStats(QUANTILES);
+        public Stop stop;
+        public double seconds;
+    }
+
+    private final String specA;
+    private final String specB;
+    private final long seed;
+    private final double halfWidth;
+    private final double confidence;
+    private final double z;
+    private final int minEpisodes;
+    private final int maxEpisodes;
+    private final long budgetNanos;
+    private final Supplier<Player> factoryA;
+    private final Supplier<Player> factoryB;
+    private final Queue<Player> players = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Player> playerA;
+    private final ThreadLocal<Player> playerB;
+
+    /**
+     * @param specB      the second configuration, or null to evaluate specA alone
+     * @param halfWidth  target half-width of the confidence interval of the mean reward (of the
+     *                   mean difference when comparing)
+     * @param confidence confidence level of the interval, in (0, 1)
+     */
+    public AdaptiveBenchmark(String mapFile, long seed, String specA, String specB, double halfWidth,
+                             double confidence, int minEpisodes, int maxEpisodes, double seconds) throws IOException {
+        this.specA = specA;
+        this.specB = specB;
+        this.seed = seed;
+        this.halfWidth = halfWidth;
+        this.confidence = confidence;
+        this.z = RewardStats.z(confidence);
+        this.minEpisodes = Math.max(2, minEpisodes);
+        this.maxEpisodes = Math.max(this.minEpisodes, maxEpisodes);
+        this.budgetNanos = (long) (seconds * 1e9);
+        GridMap map = mapFile == null || mapFile.isEmpty() ? GridMap.defaultMap() : MapLoader.load(mapFile);
+        PathService paths = new PathService(map);
+        this.factoryA = factory(specA, mapFile, map, paths);
+        this.factoryB = specB == null ? null : factory(specB, mapFile, map, paths);
+        this.playerA = ThreadLocal.withInitial(() -> register(factoryA.get()));
+        this.playerB = ThreadLocal.withInitial(() -> register(factoryB.get()));
+    }
+
+    private Player register(Player p) {
+        players.add(p);
+        return p;
+    }
+
+    // the players of a configuration spec, NAME or NAME:ARG
+    private Supplier<Player> factory(String spec, String mapFile, GridMap map, PathService paths) {
+        int colon = spec.indexOf(':');
+        String name = colon < 0 ? spec : spec.substring(0, colon);
+        String arg = colon < 0 ? null : spec.substring(colon + 1);
+        int maxSteps = 100 * map.cells();
+        switch (name) {
+            case "scripted":
+                return () -> {
+                    EnvironmentExt env = new EnvironmentExt(EnvConfig.isolated(seed).setMapFile(mapFile).setPaths(paths));
+                    env.init(new String[0]);
+                    ScriptedAgent agent = new ScriptedAgent(env, "agent1");
+                    return new Player() {
+                        @Override
+                        public double play(int episode) {
+                            env.resetEpisode(episode);
+                            return agent.playEpisode();
+                        }
+
+                        @Override
+                        public void close() {
+                            env.stop();
+                        }
+                    };
+                };
+            case "greedy": {
+                double epsilon = arg == null ? 0.0 : Double.parseDouble(arg);
+                return () -> {
+                    Random random = new Random();
+                    SimKernel kernel = new SimKernel(map, seed);
+                    SimAgent agent = kernel.addAgent();
+                    GreedyPolicy policy = new GreedyPolicy(map, paths, random, epsilon);
+                    return episode -> {
+                        kernel.resetEpisode(episode);
+                        // the policy's own draws also follow from the episode
+                        random.setSeed(EnvConfig.episodeSeed(~seed, episode));
+                        return kernel.run(policy, agent, maxSteps);
+                    };
+                };
+            }
+            case "mdp": {
+                MdpPolicy policy = MdpSolver.solve(map, Runtime.getRuntime().availableProcessors());
+                return () -> {
+                    SimKernel kernel = new SimKernel(map, seed);
+                    SimAgent agent = kernel.addAgent();
+                    return episode -> {
+                        kernel.resetEpisode(episode);
+                        return kernel.run(policy, agent, maxSteps);
+                    };
+                };
+            }
+            case "lookahead": {
+                long budget = (arg == null ? 5 : Long.parseLong(arg)) * 1_000_000L;
+                return () -> {
+                    SimKernel kernel = new SimKernel(map, seed);
+                    SimAgent agent = kernel.addAgent();
+                    RolloutPlanner planner = new RolloutPlanner(map, paths, seed, 1);
+                    return new Player() {
+                        @Override
+                        public double play(int episode) {
+                            kernel.resetEpisode(episode);
+                            for (int i = 0; i < maxSteps && !kernel.goalsAwarded(); i++) {
+                                kernel.step(agent, planner.decide(kernel, agent, budget));
+                            }
+                            return agent.episodeReward();
+                        }
+
+                        @Override
+                        public void close() {
+                            planner.shutdown();
+                        }
+                    };
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Unknown configuration '" + spec
+                        + "' (scripted, greedy[:EPSILON], mdp, lookahead[:MS])");
+        }
+    }
+
+    /**
+     * Plays episodes 0, 1, ... on 'threads' threads until the stopping rule holds, calling
+     * 'episodes' with every episode counted, in order.
+     */
+    public Result run(int threads, EpisodeSink episodes) throws IOException {
+        Result result = new Result();
+        int round = threads * CHUNK;
+        double[] a = new double[round];
+        double[] b = new double[round];
+        long start = System.nanoTime(), lastProgress = start;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            int from = 0;
+            while (result.stop == null) {
+                int to = (int) Math.min((long) from + round, maxEpisodes);
+                pool.invoke(new Episodes(a, b, from, from, to));
+                for (int k = from; k < to && result.stop == null; k++) {
+                    double ra = a[k - from];
+                    result.a.add(ra);
+                    if (specB != null) {
+                        double rb = b[k - from];
+                        result.b.add(rb);
+                        result.difference.add(ra - rb);
+                    }
+                    episodes.episode(k, EnvConfig.episodeSeed(seed, k), ra, specB == null ? Double.NaN : b[k - from]);
+                    RewardStats tested = specB == null ? result.a : result.difference;
+                    if (k + 1 >= minEpisodes && tested.halfWidth(z) <= halfWidth) {
+                        result.stop = Stop.CONVERGED;
+                    } else if (k + 1 >= maxEpisodes) {
+                        result.stop = Stop.EPISODE_LIMIT;
+                    }
+                }
+                from = to;
+                long now = System.nanoTime();
+                if (result.stop == null && now - start >= budgetNanos) result.stop = Stop.TIME_BUDGET;
+                if (now - lastProgress >= PROGRESS_NANOS && EnvLog.enabled(EnvLog.INFO)) {
+                    lastProgress = now;
+                    RewardStats tested = specB == null ? result.a : result.difference;
+                    EnvLog.info(String.format(Locale.ROOT, "%d episodes: mean %.4f +- %.4f",
+                            tested.count(), tested.mean(), tested.halfWidth(z)));
+                }
+            }
+        } finally {
+            pool.shutdown();
+            for (Player p : players) p.close();
+            players.clear();
+        }
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        return result;
+    }
+
+    @SuppressWarnings("serial")
+    private final class Episodes extends RecursiveAction {
+        private final double[] a, b;
+        private final int base, from, to;
+
+        Episodes(double[] a, double[] b, int base, int from, int to) {
+            this.a = a;
+            this.b = b;
+            this.base = base;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Episodes(a, b, base, from, mid), new Episodes(a, b, base, mid, to));
+                return;
+            }
+            for (int k = from; k < to; k++) {
+                a[k - base] = playerA.get().play(k);
+                if (specB != null) b[k - base] = playerB.get().play(k);
+            }
+        }
+    }
+
+    /** The report of adaptive_summary.txt. */
+    public String summary(Result r) {
+        StringBuilder sb = new StringBuilder();
+        String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        sb.append("Adaptive Benchmark Results - ").append(timestamp).append('\n');
+        sb.append("======================================\n");
+        sb.append(String.format(Locale.ROOT, "Episodes: %d in %.1f s, stopped on %s (target +-%s at %s%% confidence, base seed %d)%n",
+                r.a.count(), r.seconds, r.stop.name().toLowerCase(Locale.ROOT).replace('_', ' '),
+                round4(halfWidth), round4(100 * confidence), seed));
+        append(sb, "Configuration A (" + specA + ")", r.a);
+        if (specB != null) {
+            append(sb, "Configuration B (" + specB + ")", r.b);
+            append(sb, "Difference A - B, paired", r.difference);
+            double lo = r.difference.mean() - r.difference.halfWidth(z), hi = r.difference.mean() + r.difference.halfWidth(z);
+            sb.append(lo > 0 ? "A is better" : hi < 0 ? "B is better" : "No significant difference")
+                    .append(" (interval ").append(round4(lo)).append(" .. ").append(round4(hi)).append(")\n");
+        }
+        sb.append('\n');
+        sb.append("Individual rewards saved in: adaptive_results.csv\n");
+        return sb.toString();
+    }
+
+    private void append(StringBuilder sb, String title, RewardStats s) {
+        sb.append('\n').append(title).append('\n');
+        sb.append("Average Reward:  ").append(round4(s.mean())).append(" +- ").append(round4(s.halfWidth(z))).append('\n');
+        sb.append("Min Reward:      ").append(round4(s.min())).append('\n');
+        sb.append("Max Reward:      ").append(round4(s.max())).append('\n');
+        sb.append("Std Deviation:   ").append(round4(s.stdDev())).append('\n');
+        sb.append("Quantiles:      ");
+        for (int i = 0; i < s.quantiles(); i++) {
+            sb.append(" p").append(Math.round(100 * s.quantileP(i))).append(' ').append(round4(s.quantile(i)));
+        }
+        sb.append('\n');
+    }
+
+    private static double round4(double v) {
+        return Math.round(v * 10000.0) / 10000.0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        EnvConfig defaults = EnvConfig.fromSystemProperties();
+        if (System.getProperty("mas.log", "").isEmpty()) EnvLog.setLevel(EnvLog.WARN);
+        String specA = System.getProperty("adaptive.a", "scripted");
+        String specB = System.getProperty("adaptive.b", "");
+        double halfWidth = Double.parseDouble(System.getProperty("adaptive.halfWidth", "0.005"));
+        double confidence = Double.parseDouble(System.getProperty("adaptive.confidence", "0.95"));
+        double seconds = Double.parseDouble(System.getProperty("adaptive.seconds", "300"));
+        int minEpisodes = Integer.getInteger("adaptive.minEpisodes", 30);
+        int maxEpisodes = Integer.getInteger("adaptive.maxEpisodes", 1_000_000);
+        int threads = Math.max(1, Integer.getInteger("adaptive.threads", Runtime.getRuntime().availableProcessors()));
+
+        AdaptiveBenchmark bench = new AdaptiveBenchmark(defaults.mapFile(), defaults.seed(), specA,
+                specB.isEmpty() ? null : specB, halfWidth, confidence, minEpisodes, maxEpisodes, seconds);
+        Result result;
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get("adaptive_results.csv"), StandardCharsets.UTF_8)) {
+            out.write(specB.isEmpty() ? "episode,seed,reward" : "episode,seed,reward_a,reward_b");
+            out.newLine();
+            result = bench.run(threads, (k, seed, ra, rb) -> {
+                out.write(k + "," + seed + "," + ra + (Double.isNaN(rb) ? "" : "," + rb));
+                out.newLine();
+            });
+        }
+        String summary = bench.summary(result);
+        Files.write(Paths.get("adaptive_summary.txt"), summary.getBytes(StandardCharsets.UTF_8));
+        EnvLog.flush();
+        System.out.print(summary);
+    }
+}
@@ -0,0 +1,69 @@
+package env;
+
+/**
+ * Position, inventory and episode counters of one agent (the {@link SimAgent} the rules work on),
+ * with the percepts only that agent gets (position, inventory, rewards, nearby obstacles,
+ * objects in range) and its route planner.
+ * Touched by the thread executing the agent's action (Jason runs one action per agent at
+ * a time, and a scheduled multi-step action is cancelled before the agent's next one starts),
+ * or by the exclusive reset_episode.
+ */
+final class AgentState extends SimAgent {
+
+    final String name;
+    final PerceptEngine percepts;
+    final Planner planner;
+    // incremental search of the approach action, created on first use
+    DStarLite approach;
+
+    // track if this action executed any primitive move (so we don't overwrite step rewards)
+    boolean movedThisAction = false;
+
+    // objects whose carrying percept must be refreshed
+    private final boolean[] dirty;
+    private final int[] dirtyList;
+    private int dirtyCount = 0;
+
+    // obstacle cells currently published (packed cell indices)
+    final int[] shownObstacles;
+    int shownObstacleCount = 0;
+    // with a sensing radius: objects whose location is currently published to this agent,
+    // and the cells it has had in range this episode (explore heads for the others)
+    final int[] shownObjects;
+    int shownObjectCount = 0;
+    boolean[] seen;
+
+    AgentState(String name, int id, int objectCount, int obstacleWindow, PerceptEngine percepts, Planner planner) {
+        super(id);
+        this.name = name;
+        this.percepts = percepts;
+        this.planner = planner;
+        dirty = new boolean[objectCount];
+        dirtyList = new int[objectCount];
+        shownObstacles = new int[obstacleWindow];
+        shownObjects = new int[objectCount];
+    }
+
+    void markDirty(int obj) {
+        if (!dirty[obj]) {
+            dirty[obj] = true;
+            dirtyList[dirtyCount++] = obj;
+        }
+    }
+
+    void markAllDirty() {
+        for (int i = 0; i < dirty.length; i++) markDirty(i);
+    }
+
+    // takes the dirty objects: returns how many are in dirtyList() and clears the marks
+    int drainDirty() {
+        int n = dirtyCount;
+        for (int k = 0; k < n; k++) dirty[dirtyList[k]] = false;
+        dirtyCount = 0;
+        return n;
+    }
+
+    int[] dirtyList() {
+        return dirtyList;
+    }
+}
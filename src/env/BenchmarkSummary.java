@@ -0,0 +1,66 @@
+package env;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Aggregate statistics over the rewards of the episodes run in one MAS launch.
+ * Writes the same report format as run_100_episodes.ps1 used to produce.
+ */
+public class BenchmarkSummary {
+
+    private BenchmarkSummary() {}
+
+    public static void write(String file, List<Double> rewards, int episodesRequested) {
+        write(file, rewards, episodesRequested, "episode_results.csv");
+    }
+
+    public static void write(String file, List<Double> rewards, int episodesRequested, String rewardsFile) {
+        int n = rewards.size();
+        if (n == 0) return;
+
+        double sum = 0.0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double r : rewards) {
+            sum += r;
+            min = Math.min(min, r);
+            max = Math.max(max, r);
+        }
+        double avg = sum / n;
+        double stdDev = 0.0;
+        if (n > 1) {
+            double sumSquares = 0.0;
+            for (double r : rewards) sumSquares += (r - avg) * (r - avg);
+            stdDev = Math.sqrt(sumSquares / (n - 1));
+        }
+
+        String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        StringBuilder sb = new StringBuilder();
+        sb.append("Benchmark Results - ").append(timestamp).append('\n');
+        sb.append("======================================\n");
+        sb.append("Episodes completed: ").append(n).append(" / ").append(episodesRequested).append('\n');
+        sb.append("Average Reward:  ").append(round4(avg)).append('\n');
+        sb.append("Min Reward:      ").append(round4(min)).append('\n');
+        sb.append("Max Reward:      ").append(round4(max)).append('\n');
+        sb.append("Std Deviation:   ").append(round4(stdDev)).append('\n');
+        sb.append('\n');
+        sb.append("Individual rewards saved in: ").append(rewardsFile).append('\n');
+
+        try (FileWriter fw = new FileWriter(file, false)) {
+            fw.write(sb.toString());
+        } catch (IOException e) {
+            EnvLog.error("Failed to write benchmark summary: " + e.getMessage());
+        }
+        // keep the summary after the queued log records
+        EnvLog.flush();
+        System.out.print(sb);
+    }
+
+    private static double round4(double v) {
+        return Math.round(v * 10000.0) / 10000.0;
+    }
+}
@@ -0,0 +1,99 @@
+package env;
+
+/**
+ * Indexed binary min-heap of node ids (cells, or nodes of an abstract graph) for the A*-style
+ * searches, with decrease-key. Ordered by f, ties broken toward the larger g (the smaller h),
+ * so among equally promising nodes the one nearest the goal comes first and a search across
+ * open ground runs straight at the goal instead of widening over the whole f plateau.
+ *
+ * The f and g arrays belong to the search; the heap only reads them.
+ */
+final class CellHeap {
+
+    private final int[] heap;
+    private final int[] pos;     // -1 when not in the heap
+    private final int[] f;
+    private final int[] g;
+    private int size;
+
+    CellHeap(int nodes, int[] f, int[] g) {
+        this.heap = new int[nodes];
+        this.pos = new int[nodes];
+        this.f = f;
+        this.g = g;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    // a node the search just touched: not in the heap yet
+    void forget(int node) {
+        pos[node] = -1;
+    }
+
+    void push(int node) {
+        heap[size] = node;
+        pos[node] = size;
+        siftUp(size++);
+    }
+
+    int pop() {
+        int top = heap[0];
+        pos[top] = -1;
+        int last = heap[--size];
+        if (size > 0) {
+            heap[0] = last;
+            pos[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    // f of node went down (a shorter way was found)
+    void decreased(int node) {
+        siftUp(pos[node]);
+    }
+
+    private boolean before(int a, int b) {
+        return f[a] < f[b] || f[a] == f[b] && g[a] > g[b];
+    }
+
+    private void siftUp(int i) {
+        int node = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            int p = heap[parent];
+            if (!before(node, p)) break;
+            heap[i] = p;
+            pos[p] = i;
+            i = parent;
+        }
+        heap[i] = node;
+        pos[node] = i;
+    }
+
+    private void siftDown(int i) {
+        int node = heap[i];
+        int half = size >> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int c = heap[child];
+            int right = child + 1;
+            if (right < size && before(heap[right], c)) {
+                child = right;
+                c = heap[child];
+            }
+            if (!before(c, node)) break;
+            heap[i] = c;
+            pos[c] = i;
+            i = child;
+        }
+        heap[i] = node;
+        pos[node] = i;
+    }
+}
@@ -0,0 +1,51 @@
+package env;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks over the grid cells, guarding the objects of a cell (occupancy index,
+ * carried flag). Operations that span two cells (an object moving, a drop) take both
+ * stripes in index order so two threads can never wait on each other.
+ */
+public class CellLocks {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    /** @param stripes number of stripes, rounded up to a power of two */
+    public CellLocks(int stripes) {
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[n];
+        this.mask = n - 1;
+        for (int i = 0; i < n; i++) this.stripes[i] = new ReentrantLock();
+    }
+
+    private int stripe(int cell) {
+        // spread neighbouring cells over different stripes
+        return (cell * 0x9E3779B1) >>> 16 & mask;
+    }
+
+    public void lock(int cell) {
+        stripes[stripe(cell)].lock();
+    }
+
+    public void unlock(int cell) {
+        stripes[stripe(cell)].unlock();
+    }
+
+    public void lock(int a, int b) {
+        int sa = stripe(a), sb = stripe(b);
+        if (sa == sb) {
+            stripes[sa].lock();
+        } else {
+            stripes[Math.min(sa, sb)].lock();
+            stripes[Math.max(sa, sb)].lock();
+        }
+    }
+
+    public void unlock(int a, int b) {
+        int sa = stripe(a), sb = stripe(b);
+        stripes[sa].unlock();
+        if (sa != sb) stripes[sb].unlock();
+    }
+}
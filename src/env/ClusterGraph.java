@@ -0,0 +1,192 @@
+package env;
+
+/**
+ * Abstract graph of HPA* over the static obstacles of a {@link GridMap}: the map is cut into
+ * square clusters, every run of free cells facing each other across a cluster border is an
+ * entrance with one transition (two, at its ends, when it is long), and the graph's nodes are
+ * the transition cells. Edges join the two cells of a transition (one move) and every pair of
+ * nodes of a cluster that reach each other inside it (their distance within the cluster, by
+ * BFS). Stored as flat arrays (nodes by cell, edges in CSR form), built once and
+ * read-only afterwards, so the searches of every thread share it.
+ */
+final class ClusterGraph {
+
+    // entrances longer than this get a transition at each end instead of one in the middle
+    private static final int LONG_ENTRANCE = 6;
+
+    final GridMap map;
+    final int size;
+    final int clustersX, clustersY;
+
+    // node of a cell, -1 if the cell is no transition
+    private final int[] nodeOfCell;
+    final int nodes;
+    final int[] nodeCell;
+    // nodes of cluster c: clusterNodes[clusterStart[c] .. clusterStart[c + 1])
+    final int[] clusterStart;
+    final int[] clusterNodes;
+    // edges of node n: edgeTarget/edgeCost[edgeStart[n] .. edgeStart[n + 1])
+    final int[] edgeStart;
+    final int[] edgeTarget;
+    final int[] edgeCost;
+
+    ClusterGraph(GridMap map, int size) {
+        this.map = map;
+        this.size = size;
+        this.clustersX = (map.width() + size - 1) / size;
+        this.clustersY = (map.height() + size - 1) / size;
+        int cells = map.cells();
+        nodeOfCell = new int[cells];
+        java.util.Arrays.fill(nodeOfCell, -1);
+
+        // transitions: pairs of cells, one on each side of a border
+        IntList pairs = new IntList();
+        for (int cx = 0; cx < clustersX; cx++) {
+            for (int cy = 0; cy < clustersY; cy++) {
+                int x0 = cx * size + 1, y0 = cy * size + 1;
+                int x1 = Math.min(map.width(), x0 + size - 1), y1 = Math.min(map.height(), y0 + size - 1);
+                if (x1 < map.width()) entrances(pairs, x1, y0, x1 + 1, y0, 0, 1, y1 - y0 + 1);
+                if (y1 < map.height()) entrances(pairs, x0, y1, x0, y1 + 1, 1, 0, x1 - x0 + 1);
+            }
+        }
+        IntList cellsOfNodes = new IntList();
+        for (int i = 0; i < pairs.size; i++) {
+            int c = pairs.data[i];
+            if (nodeOfCell[c] < 0) {
+                nodeOfCell[c] = cellsOfNodes.size;
+                cellsOfNodes.add(c);
+            }
+        }
+        nodes = cellsOfNodes.size;
+        nodeCell = cellsOfNodes.toArray();
+
+        // nodes by cluster (counting sort)
+        int clusters = clustersX * clustersY;
+        clusterStart = new int[clusters + 1];
+        for (int n = 0; n < nodes; n++) clusterStart[clusterOf(nodeCell[n]) + 1]++;
+        for (int c = 0; c < clusters; c++) clusterStart[c + 1] += clusterStart[c];
+        clusterNodes = new int[nodes];
+        int[] fill = java.util.Arrays.copyOf(clusterStart, clusters);
+        for (int n = 0; n < nodes; n++) clusterNodes[fill[clusterOf(nodeCell[n])]++] = n;
+
+        // edges: the transition's other cell, then the nodes reached inside the cluster
+        IntList[] targets = new IntList[nodes];
+        IntList[] costs = new IntList[nodes];
+        for (int n = 0; n < nodes; n++) {
+            targets[n] = new IntList();
+            costs[n] = new IntList();
+        }
+        for (int i = 0; i < pairs.size; i += 2) {
+            int a = nodeOfCell[pairs.data[i]], b = nodeOfCell[pairs.data[i + 1]];
+            targets[a].add(b); costs[a].add(1);
+            targets[b].add(a); costs[b].add(1);
+        }
+        int[] dist = new int[cells];
+        java.util.Arrays.fill(dist, -1);
+        int[] queue = new int[size * size];
+        for (int c = 0; c < clusters; c++) {
+            for (int i = clusterStart[c]; i < clusterStart[c + 1]; i++) {
+                int n = clusterNodes[i];
+                int reached = bfs(nodeCell[n], c, dist, queue, -1, null);
+                for (int j = clusterStart[c]; j < clusterStart[c + 1]; j++) {
+                    int m = clusterNodes[j];
+                    int d = dist[nodeCell[m]];
+                    if (m != n && d >= 0) {
+                        targets[n].add(m);
+                        costs[n].add(d);
+                    }
+                }
+                for (int k = 0; k < reached; k++) dist[queue[k]] = -1;
+            }
+        }
+        edgeStart = new int[nodes + 1];
+        for (int n = 0; n < nodes; n++) edgeStart[n + 1] = edgeStart[n] + targets[n].size;
+        edgeTarget = new int[edgeStart[nodes]];
+        edgeCost = new int[edgeStart[nodes]];
+        for (int n = 0; n < nodes; n++) {
+            System.arraycopy(targets[n].data, 0, edgeTarget, edgeStart[n], targets[n].size);
+            System.arraycopy(costs[n].data, 0, edgeCost, edgeStart[n], costs[n].size);
+        }
+    }
+
+    // the entrances along a border of 'length' cells: (ax,ay) and (bx,by) face each other, stepping by (sx,sy)
+    private void entrances(IntList pairs, int ax, int ay, int bx, int by, int sx, int sy, int length) {
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean open = i < length && map.free(ax + i * sx, ay + i * sy) && map.free(bx + i * sx, by + i * sy);
+            if (open && runStart < 0) {
+                runStart = i;
+            } else if (!open && runStart >= 0) {
+                int runEnd = i - 1;
+                if (runEnd - runStart + 1 > LONG_ENTRANCE) {
+                    transition(pairs, ax, ay, bx, by, sx, sy, runStart);
+                    transition(pairs, ax, ay, bx, by, sx, sy, runEnd);
+                } else {
+                    transition(pairs, ax, ay, bx, by, sx, sy, (runStart + runEnd) >>> 1);
+                }
+                runStart = -1;
+            }
+        }
+    }
+
+    private void transition(IntList pairs, int ax, int ay, int bx, int by, int sx, int sy, int i) {
+        pairs.add(map.cell(ax + i * sx, ay + i * sy));
+        pairs.add(map.cell(bx + i * sx, by + i * sy));
+    }
+
+    int node(int cell) {
+        return nodeOfCell[cell];
+    }
+
+    int clusterOf(int cell) {
+        return (map.cellX(cell) - 1) / size * clustersY + (map.cellY(cell) - 1) / size;
+    }
+
+    /**
+     * Breadth-first distances from a cell to the cells of its cluster c, written to dist (which
+     * must be -1 everywhere in the cluster); the cells reached are listed in queue.
+     * With reservations, cells other agents hold are skipped (but 'keep' is always entered).
+     * @return the number of cells reached
+     */
+    int bfs(int from, int c, int[] dist, int[] queue, int keep, BfsFilter filter) {
+        int x0 = c / clustersY * size + 1, y0 = c % clustersY * size + 1;
+        int x1 = Math.min(map.width(), x0 + size - 1), y1 = Math.min(map.height(), y0 + size - 1);
+        int head = 0, tail = 0;
+        dist[from] = 0;
+        queue[tail++] = from;
+        while (head < tail) {
+            int cur = queue[head++];
+            int cx = map.cellX(cur), cy = map.cellY(cur);
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + Direction.DX[d], ny = cy + Direction.DY[d];
+                if (nx < x0 || nx > x1 || ny < y0 || ny > y1 || map.blocked(nx, ny)) continue;
+                int next = map.cell(nx, ny);
+                if (dist[next] >= 0) continue;
+                if (filter != null && next != keep && !filter.enter(next)) continue;
+                dist[next] = dist[cur] + 1;
+                queue[tail++] = next;
+            }
+        }
+        return tail;
+    }
+
+    /** Cells a search may enter besides the obstacles (the cells other agents hold). */
+    interface BfsFilter {
+        boolean enter(int cell);
+    }
+
+    // growable int array of the construction
+    private static final class IntList {
+        int[] data = new int[8];
+        int size;
+
+        void add(int v) {
+            if (size == data.length) data = java.util.Arrays.copyOf(data, 2 * size);
+            data[size++] = v;
+        }
+
+        int[] toArray() {
+            return java.util.Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package env;
+
+/**
+ * D* Lite (Koenig and Likhachev) toward a target that may move, for the approach action.
+ * The search runs backward from the target, so g(cell) is the distance from cell to the
+ * target and the agent moving only adds to the key modifier km. Changes are handled as edge
+ * cost changes, re-expanding only the cells whose distance changes:
+ * <ul>
+ * <li>a cell found held by another agent is blocked until {@link #unblockAll()};</li>
+ * <li>a target that moves to a cell at most RETARGET_RADIUS away is a change of the edges of
+ * a virtual goal linked to the target cell. A target farther away starts a fresh search.</li>
+ * </ul>
+ * The per-cell state is valid when its stamp equals the current search generation, so a
+ * fresh search clears nothing. Unit costs, Manhattan heuristic from the agent's cell.
+ *
+ * One instance per agent; not thread-safe.
+ */
+public class DStarLite {
+
+    private static final int INF = Integer.MAX_VALUE / 4;
+    private static final int RETARGET_RADIUS = 2;
+
+    private final GridMap map;
+
+    // per-cell search state, valid when stamp[cell] == generation
+    private final int[] stamp;
+    private final int[] g;
+    private final int[] rhs;
+    private int generation = 0;
+
+    // cells held by other agents, impassable until unblockAll()
+    private final boolean[] blocked;
+    private final int[] blockedList;
+    private int blockedCount = 0;
+
+    // indexed binary heap of inconsistent cells ordered by key [k1; k2] packed as k1 << 32 | k2
+    private final int[] heap;
+    private final int[] heapPos;   // -1 when not in heap
+    private final long[] key;
+    private int heapSize = 0;
+
+    private int goal = -1;
+    private int start = -1;
+    private int km = 0;
+    private int expanded = 0;
+
+    public DStarLite(GridMap map) {
+        this.map = map;
+        int cells = map.cells();
+        stamp = new int[cells];
+        g = new int[cells];
+        rhs = new int[cells];
+        blocked = new boolean[cells];
+        blockedList = new int[cells];
+        heap = new int[cells];
+        heapPos = new int[cells];
+        key = new long[cells];
+    }
+
+    /**
+     * Sets the target cell. Keeps the current search if the target is unchanged or moved
+     * close by, restarts it otherwise.
+     */
+    public void setTarget(int gx, int gy) {
+        int target = map.cell(gx, gy);
+        if (target == goal) return;
+        if (goal >= 0
+                && Math.abs(gx - map.cellX(goal)) + Math.abs(gy - map.cellY(goal)) <= RETARGET_RADIUS) {
+            int old = goal;
+            goal = target;
+            updateVertex(old);
+            updateVertex(target);
+            return;
+        }
+        goal = target;
+        restart();
+    }
+
+    /**
+     * First move of a shortest route from (sx,sy) to the target, repairing the search first.
+     * @return a {@link Direction}, NONE if the target is unreachable or already reached
+     */
+    public int next(int sx, int sy) {
+        int s = map.cell(sx, sy);
+        if (s == goal || goal < 0) return Direction.NONE;
+        if (start >= 0 && start != s) km += heuristic(start, s);
+        start = s;
+        computeShortestPath();
+        int best = Direction.NONE, bestCost = INF;
+        for (int d = 0; d < 4; d++) {
+            int nx = sx + Direction.DX[d], ny = sy + Direction.DY[d];
+            if (!map.inside(nx, ny)) continue;
+            int next = map.cell(nx, ny);
+            if (!passable(next)) continue;
+            int cost = 1 + g(next);
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    /** Length of the current route from the last {@link #next} cell, -1 if unreachable. */
+    public int distance() {
+        if (start < 0) return -1;
+        int d = Math.min(g(start), rhs(start));
+        return d >= INF ? -1 : d;
+    }
+
+    /** Makes a cell impassable (held by another agent); the target cell stays passable. */
+    public void block(int x, int y) {
+        int cell = map.cell(x, y);
+        if (blocked[cell] || cell == goal) return;
+        blocked[cell] = true;
+        blockedList[blockedCount++] = cell;
+        costsChanged(cell);
+    }
+
+    /** Clears every blocked cell. */
+    public void unblockAll() {
+        for (int i = 0; i < blockedCount; i++) {
+            blocked[blockedList[i]] = false;
+        }
+        for (int i = 0; i < blockedCount; i++) {
+            costsChanged(blockedList[i]);
+        }
+        blockedCount = 0;
+    }
+
+    /** Cells expanded since the last call. */
+    public int takeExpanded() {
+        int n = expanded;
+        expanded = 0;
+        return n;
+    }
+
+    // ----------- SEARCH -----------
+    private void restart() {
+        if (++generation == Integer.MAX_VALUE) {
+            java.util.Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        heapSize = 0;
+        km = 0;
+        touch(goal);
+        rhs[goal] = 0;
+        insert(goal, calculateKey(goal));
+    }
+
+    private void computeShortestPath() {
+        if (start < 0) return;
+        touch(start);
+        while (heapSize > 0 && (key[heap[0]] < calculateKey(start) || rhs[start] != g[start])) {
+            int u = heap[0];
+            long kOld = key[u];
+            long kNew = calculateKey(u);
+            expanded++;
+            if (kOld < kNew) {
+                update(u, kNew);
+            } else if (g[u] > rhs[u]) {
+                g[u] = rhs[u];
+                remove(u);
+                neighboursChanged(u);
+            } else {
+                g[u] = INF;
+                updateVertex(u);
+                neighboursChanged(u);
+            }
+        }
+    }
+
+    // the edges into and out of cell changed cost
+    private void costsChanged(int cell) {
+        if (stamp[cell] != generation) return;
+        updateVertex(cell);
+        neighboursChanged(cell);
+    }
+
+    private void neighboursChanged(int cell) {
+        int cx = map.cellX(cell), cy = map.cellY(cell);
+        for (int d = 0; d < 4; d++) {
+            int nx = cx + Direction.DX[d], ny = cy + Direction.DY[d];
+            if (map.inside(nx, ny)) updateVertex(map.cell(nx, ny));
+        }
+    }
+
+    private void updateVertex(int u) {
+        touch(u);
+        if (u != goal) {
+            int best = INF;
+            if (passable(u)) {
+                int cx = map.cellX(u), cy = map.cellY(u);
+                for (int d = 0; d < 4; d++) {
+                    int nx = cx + Direction.DX[d], ny = cy + Direction.DY[d];
+                    if (!map.inside(nx, ny)) continue;
+                    int next = map.cell(nx, ny);
+                    if (passable(next)) best = Math.min(best, 1 + g[touch(next)]);
+                }
+            }
+            rhs[u] = Math.min(best, INF);
+        } else {
+            rhs[u] = 0;
+        }
+        if (g[u] != rhs[u]) {
+            if (heapPos[u] >= 0) update(u, calculateKey(u)); else insert(u, calculateKey(u));
+        } else if (heapPos[u] >= 0) {
+            remove(u);
+        }
+    }
+
+    private boolean passable(int cell) {
+        return !map.blockedCell(cell) && !blocked[cell];
+    }
+
+    private long calculateKey(int u) {
+        int m = Math.min(g[u], rhs[u]);
+        int k1 = m >= INF ? INF : m + heuristic(start < 0 ? u : start, u) + km;
+        return ((long) k1 << 32) | m;
+    }
+
+    private int heuristic(int a, int b) {
+        return Math.abs(map.cellX(a) - map.cellX(b)) + Math.abs(map.cellY(a) - map.cellY(b));
+    }
+
+    private int g(int cell) {
+        return stamp[cell] == generation ? g[cell] : INF;
+    }
+
+    private int rhs(int cell) {
+        return stamp[cell] == generation ? rhs[cell] : INF;
+    }
+
+    // brings a cell into the current generation (g = rhs = infinity, not in the heap)
+    private int touch(int cell) {
+        if (stamp[cell] != generation) {
+            stamp[cell] = generation;
+            g[cell] = INF;
+            rhs[cell] = INF;
+            heapPos[cell] = -1;
+        }
+        return cell;
+    }
+
+    // ----------- binary heap -----------
+    private void insert(int cell, long k) {
+        key[cell] = k;
+        heap[heapSize] = cell;
+        heapPos[cell] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private void update(int cell, long k) {
+        long old = key[cell];
+        key[cell] = k;
+        if (k < old) siftUp(heapPos[cell]); else siftDown(heapPos[cell]);
+    }
+
+    private void remove(int cell) {
+        int i = heapPos[cell];
+        heapPos[cell] = -1;
+        int last = heap[--heapSize];
+        if (i < heapSize) {
+            heap[i] = last;
+            heapPos[last] = i;
+            siftUp(i);
+            siftDown(heapPos[last]);
+        }
+    }
+
+    private void siftUp(int i) {
+        int cell = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            int p = heap[parent];
+            if (key[p] <= key[cell]) break;
+            heap[i] = p;
+            heapPos[p] = i;
+            i = parent;
+        }
+        heap[i] = cell;
+        heapPos[cell] = i;
+    }
+
+    private void siftDown(int i) {
+        int cell = heap[i];
+        int half = heapSize >> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int c = heap[child];
+            int right = child + 1;
+            if (right < heapSize && key[heap[right]] < key[c]) {
+                child = right;
+                c = heap[child];
+            }
+            if (key[cell] <= key[c]) break;
+            heap[i] = c;
+            heapPos[c] = i;
+            i = child;
+        }
+        heap[i] = cell;
+        heapPos[cell] = i;
+    }
+}
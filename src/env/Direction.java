@@ -0,0 +1,50 @@
+package env;
+
+/**
+ * The four primitive move directions as small ints, so paths can be stored
+ * as byte arrays instead of lists of names. up/down change y, right/left change x.
+ */
+public final class Direction {
+
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int RIGHT = 2;
+    public static final int LEFT = 3;
+    public static final int NONE = -1;
+
+    public static final int[] DX = {0, 0, 1, -1};
+    public static final int[] DY = {1, -1, 0, 0};
+
+    private static final String[] NAMES = {"up", "down", "right", "left"};
+
+    private Direction() {}
+
+    public static String name(int dir) {
+        return NAMES[dir];
+    }
+
+    // direction for a move name, NONE if unknown
+    public static int parse(String name) {
+        switch (name) {
+            case "up": return UP;
+            case "down": return DOWN;
+            case "right": return RIGHT;
+            case "left": return LEFT;
+            default: return NONE;
+        }
+    }
+
+    public static int opposite(int dir) {
+        return dir ^ 1;
+    }
+
+    // "[right, up, ...]" for log output
+    public static String describe(byte[] path, int length) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(NAMES[path[i]]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,168 @@
+package env;
+
+import java.util.Random;
+
+/**
+ * Settings of one {@link EnvironmentExt} instance. The MAS reads them from the system
+ * properties ({@link #fromSystemProperties()}); a sweep creates many instances in one JVM,
+ * each without files, JMX or System.exit ({@link #isolated(long)}).
+ */
+public class EnvConfig {
+
+    private String mapFile = "";
+    private int episodes = 1;
+    private boolean autoExit = false;
+    private boolean simClock = false;
+    private long seed = new Random().nextLong();
+    private boolean seedGiven = false;
+    private int envThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private String resultsFile = null;
+    private String stepTraceFile = null;
+    private String traceFile = null;
+    private int senseRadius = 0;
+    // multi-step actions scheduled by Jason run as steps on the environment's scheduler
+    private boolean stepActions = true;
+    // lookahead_step: time budget of a decision and threads playing its rollouts
+    private long lookaheadMillis = 50;
+    private int lookaheadThreads = Runtime.getRuntime().availableProcessors();
+    // policy_step: solve the optimal policy table when the environment starts
+    private boolean policyTable = false;
+    // actions after which a running episode is ended (0: 100 per cell of the map)
+    private long episodeActions = 0;
+    // route search where no distance field is cached (large maps)
+    private PathService.Strategy pathSearch = PathService.Strategy.ASTAR;
+    private String summaryFile = null;
+    // the environment the MAS runs: registers its metrics MBean and its path service for the internal actions
+    private boolean shared = true;
+    // path service (and its map) shared by the isolated instances of a sweep, null to build one per instance
+    private PathService paths = null;
+
+    /**
+     * -Dmas.map, mas.episodes, mas.autoExit, mas.simClock, mas.seed, mas.envThreads, mas.results, mas.summary, mas.stepTrace,
+     * mas.trace, mas.senseRadius, mas.stepActions, mas.lookaheadMs, mas.lookaheadThreads, mas.policyTable,
+     * mas.episodeActions and mas.pathSearch.
+     */
+    public static EnvConfig fromSystemProperties() {
+        EnvConfig c = new EnvConfig();
+        c.mapFile = System.getProperty("mas.map", "");
+        c.episodes = Math.max(1, Integer.getInteger("mas.episodes", 1));
+        c.autoExit = Boolean.parseBoolean(System.getProperty("mas.autoExit", "false"));
+        c.simClock = Boolean.getBoolean("mas.simClock");
+        String seed = System.getProperty("mas.seed", "");
+        if (!seed.isEmpty()) c.setSeed(Long.parseLong(seed.trim()));
+        c.envThreads = Integer.getInteger("mas.envThreads", c.envThreads);
+        String results = System.getProperty("mas.results", "");
+        c.resultsFile = results.isEmpty() ? null : results;
+        String summary = System.getProperty("mas.summary", "");
+        c.summaryFile = summary.isEmpty() ? null : summary;
+        String stepTrace = System.getProperty("mas.stepTrace", "");
+        c.stepTraceFile = stepTrace.isEmpty() ? null : stepTrace;
+        String trace = System.getProperty("mas.trace", "");
+        c.traceFile = trace.isEmpty() ? null : trace;
+        c.senseRadius = Math.max(0, Integer.getInteger("mas.senseRadius", 0));
+        c.stepActions = Boolean.parseBoolean(System.getProperty("mas.stepActions", "true"));
+        c.lookaheadMillis = Math.max(1, Long.getLong("mas.lookaheadMs", c.lookaheadMillis));
+        c.lookaheadThreads = Math.max(1, Integer.getInteger("mas.lookaheadThreads", c.lookaheadThreads));
+        c.policyTable = Boolean.getBoolean("mas.policyTable");
+        c.episodeActions = Math.max(0, Long.getLong("mas.episodeActions", 0L));
+        String pathSearch = System.getProperty("mas.pathSearch", "");
+        if (!pathSearch.isEmpty()) c.pathSearch = PathService.Strategy.parse(pathSearch);
+        return c;
+    }
+
+    /** Virtual time, unlimited episodes, no files, no JMX, no exit: one instance of a sweep. */
+    public static EnvConfig isolated(long seed) {
+        EnvConfig c = new EnvConfig();
+        c.episodes = Integer.MAX_VALUE;
+        c.simClock = true;
+        c.setSeed(seed);
+        c.envThreads = 1;
+        c.resultsFile = null;
+        c.summaryFile = null;
+        c.shared = false;
+        c.stepActions = false;
+        return c;
+    }
+
+    /**
+     * Seed of episode k of a run with the given base seed (SplitMix64 of base + k), so any
+     * episode can be replayed on its own, whatever ran before it.
+     */
+    public static long episodeSeed(long base, int episode) {
+        long z = base + (episode + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public String mapFile() { return mapFile; }
+    public EnvConfig setMapFile(String mapFile) { this.mapFile = mapFile == null ? "" : mapFile; return this; }
+
+    public int episodes() { return episodes; }
+    public EnvConfig setEpisodes(int episodes) { this.episodes = Math.max(1, episodes); return this; }
+
+    public boolean autoExit() { return autoExit; }
+    public EnvConfig setAutoExit(boolean autoExit) { this.autoExit = autoExit; return this; }
+
+    public boolean simClock() { return simClock; }
+    public EnvConfig setSimClock(boolean simClock) { this.simClock = simClock; return this; }
+
+    public long seed() { return seed; }
+    /** true if the seed was set (-Dmas.seed) rather than drawn at random */
+    public boolean seedGiven() { return seedGiven; }
+    public EnvConfig setSeed(long seed) { this.seed = seed; this.seedGiven = true; return this; }
+
+    public int envThreads() { return envThreads; }
+    public EnvConfig setEnvThreads(int envThreads) { this.envThreads = Math.max(1, envThreads); return this; }
+
+    /** CSV with one line per episode, null for none */
+    public String resultsFile() { return resultsFile; }
+    public EnvConfig setResultsFile(String resultsFile) { this.resultsFile = resultsFile; return this; }
+
+    /** binary per-step reward components (with or without the results file), null for none */
+    public String stepTraceFile() { return stepTraceFile; }
+    public EnvConfig setStepTraceFile(String stepTraceFile) { this.stepTraceFile = stepTraceFile; return this; }
+
+    /** record-and-replay trace of the run (see {@link TraceRecorder}), null for none */
+    public String traceFile() { return traceFile; }
+    public EnvConfig setTraceFile(String traceFile) { this.traceFile = traceFile; return this; }
+
+    /** statistics written after the last episode, null for none */
+    public String summaryFile() { return summaryFile; }
+    public EnvConfig setSummaryFile(String summaryFile) { this.summaryFile = summaryFile; return this; }
+
+    /** objects and obstacles are perceived within this many cells only (square window), 0 for every object */
+    public int senseRadius() { return senseRadius; }
+    public EnvConfig setSenseRadius(int senseRadius) { this.senseRadius = Math.max(0, senseRadius); return this; }
+
+    /** path_to, goto_coord, approach and explore scheduled by Jason run one step per task (ActionScheduler) */
+    public boolean stepActions() { return stepActions; }
+    public EnvConfig setStepActions(boolean stepActions) { this.stepActions = stepActions; return this; }
+
+    /** time budget of a lookahead_step decision, in ms */
+    public long lookaheadMillis() { return lookaheadMillis; }
+    public EnvConfig setLookaheadMillis(long lookaheadMillis) { this.lookaheadMillis = Math.max(1, lookaheadMillis); return this; }
+
+    /** threads playing the rollouts of a lookahead_step decision */
+    public int lookaheadThreads() { return lookaheadThreads; }
+    public EnvConfig setLookaheadThreads(int lookaheadThreads) { this.lookaheadThreads = Math.max(1, lookaheadThreads); return this; }
+
+    /** the policy table of policy_step is solved in init (MdpSolver); without it policy_step fails */
+    public boolean policyTable() { return policyTable; }
+    public EnvConfig setPolicyTable(boolean policyTable) { this.policyTable = policyTable; return this; }
+
+    /** actions after which an episode whose goals are not done is ended, 0 for 100 per cell of the map */
+    public long episodeActions() { return episodeActions; }
+    public EnvConfig setEpisodeActions(long episodeActions) { this.episodeActions = Math.max(0, episodeActions); return this; }
+
+    /** route search where no distance field is cached: A*, jump points or HPA* */
+    public PathService.Strategy pathSearch() { return pathSearch; }
+    public EnvConfig setPathSearch(PathService.Strategy pathSearch) { this.pathSearch = pathSearch; return this; }
+
+    public boolean shared() { return shared; }
+    public EnvConfig setShared(boolean shared) { this.shared = shared; return this; }
+
+    /** path service whose map and distance fields the instance uses instead of loading its own, null for its own */
+    public PathService paths() { return paths; }
+    public EnvConfig setPaths(PathService paths) { this.paths = paths; return this; }
+}
@@ -0,0 +1,247 @@
+package env;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Leveled, asynchronous logging for the environment.
+ * Callers guard anything that builds a message with {@link #enabled(int)}, so a disabled
+ * level costs one int comparison. Enabled events are copied into a preallocated ring of
+ * mutable records (text, action and reward records keep their fields unformatted) and a
+ * daemon thread formats and writes them. When the ring is full, events are dropped and
+ * counted rather than blocking the environment.
+ *
+ * The level comes from -Dmas.log=TRACE|DEBUG|INFO|WARN|ERROR|OFF (default INFO).
+ */
+public final class EnvLog {
+
+    public static final int TRACE = 0;
+    public static final int DEBUG = 1;
+    public static final int INFO = 2;
+    public static final int WARN = 3;
+    public static final int ERROR = 4;
+    public static final int OFF = 5;
+
+    private static final String[] LEVEL_NAMES = {"TRACE", "DEBUG", "INFO", "WARN", "ERROR", "OFF"};
+
+    private static final int KIND_TEXT = 0;
+    private static final int KIND_ACTION = 1;
+    private static final int KIND_REWARD = 2;
+
+    private static final int RING_SIZE = 1 << 14;
+
+    private static volatile int level = parseLevel(System.getProperty("mas.log", "INFO"));
+
+    // a queued event; fields are reused, only the ones of its kind are meaningful
+    private static final class Record {
+        int level;
+        int kind;
+        String text;
+        String agent;
+        String action;
+        boolean ok;
+        int x, y;
+        boolean stepCost;
+        int carrying, incompatible;
+        double base, carry, incompat, goals, step, episode;
+    }
+
+    private static final Record[] ring = new Record[RING_SIZE];
+    private static long head = 0;   // next record to write out
+    private static long tail = 0;   // next free record
+    private static long dropped = 0;
+    private static final Object lock = new Object();
+    private static final Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+
+    static {
+        for (int i = 0; i < RING_SIZE; i++) ring[i] = new Record();
+        Thread appender = new Thread(EnvLog::drainLoop, "env-log");
+        appender.setDaemon(true);
+        appender.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(EnvLog::flush, "env-log-flush"));
+    }
+
+    private EnvLog() {}
+
+    public static int parseLevel(String name) {
+        for (int i = 0; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i].equalsIgnoreCase(name.trim())) return i;
+        }
+        return INFO;
+    }
+
+    public static void setLevel(int newLevel) {
+        level = newLevel;
+    }
+
+    public static int level() {
+        return level;
+    }
+
+    public static boolean enabled(int lvl) {
+        return lvl >= level;
+    }
+
+    // ----------- producers -----------
+
+    public static void log(int lvl, String text) {
+        if (lvl < level) return;
+        synchronized (lock) {
+            Record r = claim();
+            if (r == null) return;
+            r.level = lvl;
+            r.kind = KIND_TEXT;
+            r.text = text;
+            publish();
+        }
+    }
+
+    public static void debug(String text) {
+        log(DEBUG, text);
+    }
+
+    public static void info(String text) {
+        log(INFO, text);
+    }
+
+    public static void warn(String text) {
+        log(WARN, text);
+    }
+
+    public static void error(String text) {
+        log(ERROR, text);
+    }
+
+    /** Structured record of an executed action and the agent position after it. */
+    public static void action(int lvl, String agent, String action, boolean ok, int x, int y) {
+        if (lvl < level) return;
+        synchronized (lock) {
+            Record r = claim();
+            if (r == null) return;
+            r.level = lvl;
+            r.kind = KIND_ACTION;
+            r.agent = agent;
+            r.action = action;
+            r.ok = ok;
+            r.x = x;
+            r.y = y;
+            publish();
+        }
+    }
+
+    /** Structured record of the reward breakdown of one percept update. */
+    public static void reward(int lvl, boolean stepCost, double base, double carry, int carrying,
+                              double incompat, int incompatible, double goals, double step, double episode) {
+        if (lvl < level) return;
+        synchronized (lock) {
+            Record r = claim();
+            if (r == null) return;
+            r.level = lvl;
+            r.kind = KIND_REWARD;
+            r.stepCost = stepCost;
+            r.base = base;
+            r.carry = carry;
+            r.carrying = carrying;
+            r.incompat = incompat;
+            r.incompatible = incompatible;
+            r.goals = goals;
+            r.step = step;
+            r.episode = episode;
+            publish();
+        }
+    }
+
+    // called with lock held
+    private static Record claim() {
+        if (tail - head >= RING_SIZE) {
+            dropped++;
+            return null;
+        }
+        return ring[(int) (tail & (RING_SIZE - 1))];
+    }
+
+    // called with lock held
+    private static void publish() {
+        tail++;
+        lock.notify();
+    }
+
+    // ----------- appender -----------
+
+    private static void drainLoop() {
+        StringBuilder sb = new StringBuilder(256);
+        while (true) {
+            try {
+                drain(sb, true);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                // stdout is gone, nothing sensible left to do
+                return;
+            }
+        }
+    }
+
+    /** Writes out everything queued so far (also done at JVM shutdown). */
+    public static void flush() {
+        try {
+            drain(new StringBuilder(256), false);
+        } catch (InterruptedException | IOException e) {
+            // best effort
+        }
+    }
+
+    // single consumer at a time (appender thread or flush), serialized on out
+    private static void drain(StringBuilder sb, boolean wait) throws InterruptedException, IOException {
+        if (wait) {
+            synchronized (lock) {
+                while (head == tail) lock.wait();
+            }
+        }
+        synchronized (out) {
+            while (true) {
+                Record r;
+                long lost;
+                synchronized (lock) {
+                    if (head == tail) break;
+                    r = ring[(int) (head & (RING_SIZE - 1))];
+                    lost = dropped;
+                    dropped = 0;
+                }
+                // the slot is not reused before head moves past it, so format outside the lock
+                sb.setLength(0);
+                format(r, sb);
+                r.text = null;
+                synchronized (lock) {
+                    head++;
+                }
+                if (lost > 0) out.write("[ENV] (" + lost + " log records dropped)\n");
+                out.append(sb).append('\n');
+            }
+            out.flush();
+        }
+    }
+
+    private static void format(Record r, StringBuilder sb) {
+        sb.append("[ENV]");
+        if (r.level >= WARN) sb.append(' ').append(LEVEL_NAMES[r.level]);
+        sb.append(' ');
+        switch (r.kind) {
+            case KIND_ACTION:
+                sb.append("action agent=").append(r.agent).append(" act=").append(r.action)
+                  .append(" result=").append(r.ok ? "ok" : "failed")
+                  .append(" pos=(").append(r.x).append(',').append(r.y).append(')');
+                break;
+            case KIND_REWARD:
+                sb.append(String.format(Locale.ROOT,
+                    "step reward breakdown: applyStepCost=%b, base=%.3f, carry=%.3f (#carry=%d), incompatible=%.3f (#incompat=%d), goals_awarded=%.3f => step=%.3f, episode=%.3f",
+                    r.stepCost, r.base, r.carry, r.carrying, r.incompat, r.incompatible, r.goals, r.step, r.episode));
+                break;
+            default:
+                sb.append(r.text);
+        }
+    }
+}
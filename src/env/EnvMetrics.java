@@ -0,0 +1,212 @@
+package env;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of the environment: per action type (latency of the whole
+ * executeAction call including percept publication, successes, failures), A* nodes expanded
+ * and path lengths of the routes, percept changes published and completed episodes.
+ * Registered as a platform MBean so long runs can be watched with jconsole/VisualVM;
+ * {@link #snapshot()} and {@link #dump(String)} give the same numbers as text.
+ */
+public class EnvMetrics implements EnvMetricsMBean {
+
+    // action types, indexes of the per-action arrays
+    public static final int MOVE = 0;
+    public static final int PICKUP = 1;
+    public static final int DROP = 2;
+    public static final int PAINT = 3;
+    public static final int OPEN = 4;
+    public static final int PATH_TO = 5;
+    public static final int GOTO_COORD = 6;
+    public static final int EXPLORE = 7;
+    public static final int RESET_EPISODE = 8;
+    public static final int APPROACH = 9;
+    public static final int POLICY_STEP = 10;
+    public static final int LOOKAHEAD_STEP = 11;
+    public static final int CANCEL_ACTION = 12;
+    private static final String[] ACTION_NAMES =
+        {"move", "pickup", "drop", "paint", "open", "path_to", "goto_coord", "explore", "reset_episode", "approach",
+         "policy_step", "lookahead_step", "cancel_action"};
+
+    private final Log2Histogram[] latency = new Log2Histogram[ACTION_NAMES.length];
+    private final AtomicLong[] failures = new AtomicLong[ACTION_NAMES.length];
+    private final Log2Histogram nodesExpanded = new Log2Histogram();
+    private final Log2Histogram pathLength = new Log2Histogram();
+    private final AtomicLong perceptsPublished = new AtomicLong();
+    private final AtomicLong episodes = new AtomicLong();
+    private volatile long startNanos = System.nanoTime();
+    private ObjectName name;
+
+    public EnvMetrics() {
+        for (int i = 0; i < ACTION_NAMES.length; i++) {
+            latency[i] = new Log2Histogram();
+            failures[i] = new AtomicLong();
+        }
+    }
+
+    /** Registers as env:type=EnvMetrics (env:type=EnvMetrics,id=N if that name is taken). */
+    public EnvMetrics register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName candidate = new ObjectName("env:type=EnvMetrics");
+            for (int id = 2; server.isRegistered(candidate); id++) {
+                candidate = new ObjectName("env:type=EnvMetrics,id=" + id);
+            }
+            server.registerMBean(this, candidate);
+            name = candidate;
+        } catch (JMException | SecurityException e) {
+            if (EnvLog.enabled(EnvLog.WARN)) EnvLog.warn("Metrics not registered with JMX: " + e.getMessage());
+        }
+        return this;
+    }
+
+    public void unregister() {
+        if (name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            // already gone
+        }
+        name = null;
+    }
+
+    // ----------- RECORDING -----------
+    public void action(int type, boolean ok, long nanos) {
+        latency[type].record(nanos);
+        if (!ok) failures[type].incrementAndGet();
+    }
+
+    // one route query: length -1 if unreachable, expanded 0 when a cached distance field was walked
+    public void route(int length, int expanded) {
+        nodesExpanded.record(expanded);
+        if (length >= 0) pathLength.record(length);
+    }
+
+    public void perceptsPublished(long changes) {
+        perceptsPublished.addAndGet(changes);
+    }
+
+    public void episodeCompleted() {
+        episodes.incrementAndGet();
+    }
+
+    // ----------- MBEAN -----------
+    @Override
+    public long getActions() {
+        long n = 0;
+        for (Log2Histogram h : latency) n += h.count();
+        return n;
+    }
+
+    @Override
+    public long getEpisodes() {
+        return episodes.get();
+    }
+
+    @Override
+    public double getEpisodesPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? episodes.get() / seconds : 0.0;
+    }
+
+    @Override
+    public long getPerceptsPublished() {
+        return perceptsPublished.get();
+    }
+
+    @Override
+    public long getPathSearches() {
+        return nodesExpanded.count();
+    }
+
+    @Override
+    public double getMeanNodesExpanded() {
+        return nodesExpanded.mean();
+    }
+
+    @Override
+    public double getMeanPathLength() {
+        return pathLength.mean();
+    }
+
+    @Override
+    public String[] getActionSummary() {
+        String[] lines = new String[ACTION_NAMES.length];
+        for (int i = 0; i < lines.length; i++) {
+            Log2Histogram h = latency[i];
+            long n = h.count(), failed = failures[i].get();
+            lines[i] = String.format(Locale.ROOT, "%-13s n=%d ok=%d failed=%d mean=%.1fus p50<=%.1fus p99<=%.1fus max=%.1fus",
+                ACTION_NAMES[i], n, n - failed, failed, h.mean() / 1e3, h.quantile(0.5) / 1e3,
+                h.quantile(0.99) / 1e3, h.max() / 1e3);
+        }
+        return lines;
+    }
+
+    @Override
+    public long getCount(String action) {
+        int i = index(action);
+        return i < 0 ? 0 : latency[i].count();
+    }
+
+    @Override
+    public long getFailures(String action) {
+        int i = index(action);
+        return i < 0 ? 0 : failures[i].get();
+    }
+
+    @Override
+    public double getLatencyMicros(String action, double quantile) {
+        int i = index(action);
+        return i < 0 ? 0.0 : latency[i].quantile(quantile) / 1e3;
+    }
+
+    @Override
+    public String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "episodes=%d (%.2f/s) actions=%d percepts=%d%n",
+            getEpisodes(), getEpisodesPerSecond(), getActions(), getPerceptsPublished()));
+        sb.append(String.format(Locale.ROOT, "routes=%d nodes expanded mean=%.1f p99<=%d max=%d, path length mean=%.1f p99<=%d max=%d%n",
+            nodesExpanded.count(), nodesExpanded.mean(), nodesExpanded.quantile(0.99), nodesExpanded.max(),
+            pathLength.mean(), pathLength.quantile(0.99), pathLength.max()));
+        for (String line : getActionSummary()) sb.append(line).append(System.lineSeparator());
+        return sb.toString();
+    }
+
+    @Override
+    public void dump(String file) {
+        try (FileWriter fw = new FileWriter(file, false)) {
+            fw.write(snapshot());
+        } catch (IOException e) {
+            if (EnvLog.enabled(EnvLog.ERROR)) EnvLog.error("Failed to write metrics snapshot: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < ACTION_NAMES.length; i++) {
+            latency[i].reset();
+            failures[i].set(0);
+        }
+        nodesExpanded.reset();
+        pathLength.reset();
+        perceptsPublished.set(0);
+        episodes.set(0);
+        startNanos = System.nanoTime();
+    }
+
+    private static int index(String action) {
+        for (int i = 0; i < ACTION_NAMES.length; i++) {
+            if (ACTION_NAMES[i].equals(action)) return i;
+        }
+        return -1;
+    }
+}
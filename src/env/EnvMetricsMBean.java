@@ -0,0 +1,39 @@
+package env;
+
+/**
+ * JMX view of {@link EnvMetrics} (registered as env:type=EnvMetrics).
+ * Latencies are in microseconds.
+ */
+public interface EnvMetricsMBean {
+
+    long getActions();
+
+    long getEpisodes();
+
+    double getEpisodesPerSecond();
+
+    long getPerceptsPublished();
+
+    long getPathSearches();
+
+    double getMeanNodesExpanded();
+
+    double getMeanPathLength();
+
+    /** One line per action type: count, ok/failed, mean/p50/p99/max latency. */
+    String[] getActionSummary();
+
+    long getCount(String action);
+
+    long getFailures(String action);
+
+    double getLatencyMicros(String action, double quantile);
+
+    /** Everything above as text. */
+    String snapshot();
+
+    /** Writes {@link #snapshot()} to a file (relative to the working directory). */
+    void dump(String file);
+
+    void reset();
+}
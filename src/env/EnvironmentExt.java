@@ -1,720 +1,1144 @@
 package env;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.io.FileWriter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.io.IOException;
 
-import jason.asSyntax.ASSyntax;
 import jason.asSyntax.Literal;
 import jason.asSyntax.Structure;
 import jason.environment.Environment;
 
+/**
+ * Jason environment over a {@link SimKernel}: the kernel holds the rules (moves, tools, paint
+ * and open, object moves, rewards); this class parses the actions, adds the navigation actions
+ * built on primitive moves, publishes percepts and runs the episodes of a MAS launch.
+ */
 public class EnvironmentExt extends Environment {
 
     // ----------- GRID & STATE -----------
-    private int agentX = 1;
-    private int agentY = 1;
-    private int capacity = 3;
-    private int carrying = 0;
-    private Random random = new Random();
-    private int episode = 0;
-    
-    // Grid boundaries
-    private static final int GRID_SIZE = 6; // 1-5 usable, 0-based array
-    
-    // Obstacles in the grid
-    private boolean[][] obstacle = new boolean[GRID_SIZE][GRID_SIZE];
-    
-    // Object → (x,y)
-    private Map<String, int[]> objects = new HashMap<>();
-    
-    // Object → whether it is already used/picked up (carried)
-    private Map<String, Boolean> used = new HashMap<>();
-
-    // Tracks colored/open state
-    private Map<String, Boolean> colored = new HashMap<>();
-    private boolean doorOpened = false;
-    
-    // Reward tracking
-    private double episodeReward = 0.0;
-    private Map<String, Boolean> awarded = new HashMap<>();
-    // episode control
+    private final EnvConfig config;
+    // the rules and the world state; episode k reseeds its random with EnvConfig.episodeSeed(base
+    // seed, k) (-Dmas.seed=S gives the base), so its layout and object moves can be reproduced on their own
+    private SimKernel kernel;
+    // -Dmas.trace=FILE records the actions, their results and the random draws (TraceRecorder);
+    // TraceReplayer attaches itself here to re-drive a recorded run
+    private EpisodeTrace trace;
+
+    // Grid dimensions, obstacles (bitset) and initial placements: loaded from the map
+    // file given as environment argument or -Dmas.map, the built-in 5x5 map otherwise
+    private GridMap map;
+
+    // AGENTS: per-agent position, inventory, rewards and percepts, registered when an agent
+    // first perceives or acts. They start on the map's start cell and the nearest free cells
+    private final Map<String, AgentState> agents = new ConcurrentHashMap<>();
+    private final List<AgentState> agentList = new ArrayList<>();
+    // cells held by agents: where they stand and the next cells of their routes (the kernel's)
+    private ReservationTable reservations;
+    // actions of different agents run in parallel (Jason's environment threads, -Dmas.envThreads=N):
+    // they share the read side, reset_episode and agent registration take the write side
+    private final ReentrantReadWriteLock episodeLock = new ReentrantReadWriteLock();
+    // global percepts, dirty objects and episode completion
+    private final Object worldLock = new Object();
+
+    // Objects by integer id: position and carried/colored/awarded flags, with an occupancy index (the kernel's)
+    private ObjectRegistry objects;
+    private int idT, idCh, idD;
+    // objects whose global percepts must be refreshed on the next publishPercepts; the count is
+    // volatile so that an action with nothing to refresh skips worldLock
+    private boolean[] dirty;
+    private int[] dirtyList;
+    private volatile int dirtyCount = 0;
+
+    // episode control: set via system property -Dmas.episodes=N (default 1).
+    // With N > 1 the MAS stays alive and the agent restarts !start after each episode
     private int episodesRun = 0;
-    private final int episodesToRun = 100;
+    private final int episodesToRun;
     private java.util.List<Double> episodeHistory = new java.util.ArrayList<>();
-    
-    // Auto-exit control: set via system property -Dmas.autoExit=true/false
-    // Default is true (for benchmark scripts), set to false to keep window open
-    private boolean autoExitOnComplete = Boolean.parseBoolean(System.getProperty("mas.autoExit", "false"));
-    
-    // For dynamic environment: track if objects can move
-    private boolean dynamicObjects = true;
-    private int moveCounter = 0;
-    // count agent-level actions (used to trigger object moves every 3 actions)
-    private int actionCounter = 0;
-    // track if this action executed any primitive move (so we don't overwrite step rewards)
-    private boolean movedThisAction = false;
-    // Track primitive steps per episode for debugging
-    private int stepCount = 0;
-
-    // A* PATHFINDING
-    class Node implements Comparable<Node> {
-        int x, y, g, h;
-        Node parent;
-
-        Node(int x, int y, int g, int h, Node parent) {
-            this.x = x;
-            this.y = y;
-            this.g = g;
-            this.h = h;
-            this.parent = parent;
-        }
-
-        int f() { return g + h; }
+    // set when the goals of the current episode are achieved, cleared by resetEpisode()
+    private volatile boolean episodeDone = false;
+    // an episode still running after this many actions (clock ticks) is ended, so a stuck agent
+    // cannot hold up a run: every action but reset_episode then fails and episode_timeout is
+    // perceived until the reset (-Dmas.episodeActions, 100 per cell of the map by default)
+    private long episodeActions;
+    private volatile boolean episodeTimedOut = false;
 
-        @Override
-        public int compareTo(Node o) {
-            return Integer.compare(this.f(), o.f());
-        }
+    // Auto-exit control: set via system property -Dmas.autoExit=true/false
+    // Default is false, set to true (benchmarks) to exit once all episodes are done
+    private final boolean autoExitOnComplete;
+
+    // logical clock: ticks once per agent-level action (objects move every SimKernel.DYNAMIC_PERIOD ticks).
+    // -Dmas.simClock=true replaces the move/explore sleeps with virtual time (benchmarks)
+    private final SimClock clock;
+    private static final long MOVE_DELAY_MS = 300;
+    private static final long EXPLORE_DELAY_MS = 500;
+    // explore without a sensing radius: a fixed loop around the agent
+    private static final int[] EXPLORATION_PATTERN = {Direction.RIGHT, Direction.RIGHT, Direction.DOWN, Direction.DOWN,
+                                                      Direction.LEFT, Direction.LEFT, Direction.UP, Direction.UP};
+    // cells of a route held ahead of the agent, and replans when another agent is in the way
+    private static final int RESERVATION_WINDOW = 4;
+    private static final int MAX_REPLANS = 3;
+    // per-episode records (-Dmas.results) and/or per-step reward components (-Dmas.stepTrace), null without either
+    private ResultsSink results;
+    private long episodeStartNanos;
+    // positions of t, ch and d at the start of the episode
+    private int startTx, startTy, startChx, startChy, startDx, startDy;
+
+    // Incremental percepts: every percept lives in a slot and is only re-published when it changes.
+    // Per agent: own position, inventory, rewards and the obstacles around it
+    private static final int SLOT_POSITION = 0;
+    private static final int SLOT_CARRY_COUNT = 1;
+    private static final int SLOT_CAPACITY = 2;
+    private static final int SLOT_STEP_REWARD = 3;
+    private static final int SLOT_EPISODE_REWARD = 4;
+    private static final int SLOT_CARRYING = 5;     // 1 slot per object, then the obstacle cells
+    // Global: objects and episode control
+    private static final int SLOT_MORE_EPISODES = 0;
+    private static final int SLOT_EPISODE_TIMEOUT = 1;
+    private static final int SLOT_OBJECTS = 2;      // 3 slots per object: location, colored, open
+    private static final int SLOTS_PER_OBJECT = 3;
+    private static final int OBSTACLE_RADIUS = 2;
+    // -Dmas.senseRadius=R: locations of the objects within R cells only, obstacles within R too
+    // (0: every object, obstacles within OBSTACLE_RADIUS)
+    private final int senseRadius;
+    private final int obstacleRadius;
+    // side of the obstacle window; its cells get slots by (x mod side, y mod side), which differ
+    // inside any window, so an agent has side * side obstacle slots whatever the size of the map
+    private final int obstacleSide;
+    private PerceptLiterals lits;
+    private PerceptEngine percepts;
+
+    // PATHFINDING: distance fields / routes over the static obstacles, created once they are set
+    private PathService paths;
+    // optimal policy of the single-agent game (MdpSolver), solved in init with -Dmas.policyTable, null without
+    private MdpPolicy mdp;
+    private volatile boolean mdpMissingLogged;
+    // multi-step actions scheduled by Jason run one step per task here (-Dmas.stepActions, on by default)
+    private ActionScheduler scheduler;
+    // Monte Carlo lookahead of lookahead_step, created on its first use
+    private volatile RolloutPlanner lookahead;
+    private final Object lookaheadLock = new Object();
+
+    // per-action latencies and counters, also served over JMX (env:type=EnvMetrics)
+    private EnvMetrics metrics;
+
+    public EnvironmentExt() {
+        this(EnvConfig.fromSystemProperties());
     }
 
-    private java.util.List<String> AStar(int sx, int sy, int gx, int gy) {
-        java.util.PriorityQueue<Node> open = new java.util.PriorityQueue<>();
-        boolean[][] closed = new boolean[GRID_SIZE][GRID_SIZE];
-
-        open.add(new Node(sx, sy, 0, heuristic(sx, sy, gx, gy), null));
-
-        while (!open.isEmpty()) {
-            Node current = open.poll();
+    public EnvironmentExt(EnvConfig config) {
+        super(config.envThreads());
+        this.config = config;
+        this.episodesToRun = config.episodes();
+        this.autoExitOnComplete = config.autoExit();
+        this.clock = new SimClock(config.simClock());
+        this.senseRadius = config.senseRadius();
+        this.obstacleRadius = senseRadius > 0 ? senseRadius : OBSTACLE_RADIUS;
+        this.obstacleSide = 2 * obstacleRadius + 1;
+    }
 
-            if (current.x == gx && current.y == gy) {
-                return reconstructPath(current);
+    @Override
+    public void init(String[] args) {
+        String mapFile = args != null && args.length > 0 ? args[0].replace("\"", "") : config.mapFile();
+        if (config.paths() != null) {
+            // an instance of a sweep: the map and distance fields are built once for all of them
+            map = config.paths().map();
+        } else if (mapFile == null || mapFile.isEmpty()) {
+            map = GridMap.defaultMap();
+        } else {
+            try {
+                map = MapLoader.load(mapFile);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot load map " + mapFile + ": " + e.getMessage(), e);
             }
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Loaded map " + mapFile + " (" + map.width() + "x" + map.height() + ", " + map.objectNames().size() + " objects)");
+        }
 
-            closed[current.x][current.y] = true;
-
-            int[][] dirs = {{1,0}, {-1,0}, {0,1}, {0,-1}};
-
-            for (int[] d : dirs) {
-                int nx = current.x + d[0];
-                int ny = current.y + d[1];
-
-                if (nx < 1 || nx >= GRID_SIZE || ny < 1 || ny >= GRID_SIZE)
-                    continue;
-
-                if (obstacle[nx][ny])
-                    continue;
+        episodeActions = config.episodeActions() > 0 ? config.episodeActions() : 100L * map.cells();
+
+        // the rules over the map; t,ch,d are randomized per episode below
+        kernel = new SimKernel(map, config.seed(), clock);
+        objects = kernel.objects();
+        reservations = kernel.reservations();
+        idT = objects.id("t"); idCh = objects.id("ch"); idD = objects.id("d");
+        int n = objects.size();
+        dirty = new boolean[n];
+        dirtyList = new int[n];
+        kernel.setChanges((obj, agent) -> {
+            markDirty(obj);
+            if (agent != null) ((AgentState) agent).markDirty(obj);
+        });
+
+        paths = config.paths() != null ? config.paths() : new PathService(map, config.pathSearch());
+        if (config.shared()) PathService.setCurrent(paths);
+        if (config.policyTable()) mdp = solvePolicy();
+
+        metrics = new EnvMetrics();
+        if (config.shared()) metrics.register();
+        if (config.stepActions()) {
+            scheduler = new ActionScheduler(new ActionScheduler.Host() {
+                @Override
+                public int step(ActionScheduler.Run r) {
+                    return scheduledStep(r);
+                }
 
-                if (closed[nx][ny])
-                    continue;
+                @Override
+                public void finish(ActionScheduler.Run r, boolean result, boolean cancelled) {
+                    scheduledEnd(r, result, cancelled);
+                }
+            }, config.envThreads(), clock.isVirtual());
+        }
 
-                int newG = current.g + 1;
-                int newH = heuristic(nx, ny, gx, gy);
+        lits = new PerceptLiterals(objects.names(), map);
+        percepts = new PerceptEngine(this, SLOT_OBJECTS + SLOTS_PER_OBJECT * n);
+        clearPercepts();
 
-                open.add(new Node(nx, ny, newG, newH, current));
+        if (config.resultsFile() != null || config.stepTraceFile() != null) {
+            try {
+                results = new ResultsSink(config.resultsFile(), config.stepTraceFile());
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open results file: " + e.getMessage(), e);
+            }
+        }
+        if (trace == null && config.traceFile() != null) {
+            try {
+                trace = new TraceRecorder(config.traceFile(), config.seed(), episodesToRun, mapFile);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open trace file: " + e.getMessage(), e);
             }
         }
+        if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Base seed " + config.seed() + (config.seedGiven() ? "" : " (random, -Dmas.seed=" + config.seed() + " reproduces this run)"));
 
-        return null; // no path
+        // Randomize positions for the first episode for t,ch,d
+        kernel.setDraws(trace);
+        kernel.resetEpisode(0);
+        episodeStarted();
+
+        refreshWorld();
     }
 
-    private int heuristic(int x, int y, int gx, int gy) {
-        return Math.abs(x - gx) + Math.abs(y - gy);
+    // replaces the recorder: set before init
+    void setTrace(EpisodeTrace trace) {
+        this.trace = trace;
     }
 
-    private java.util.List<String> reconstructPath(Node goal) {
-        java.util.LinkedList<String> moves = new java.util.LinkedList<>();
+    // ----------- AGENTS -----------
+    // state of an agent, registered on first use
+    AgentState agent(String agName) {
+        AgentState a = agents.get(agName);
+        return a != null ? a : register(agName);
+    }
 
-        Node cur = goal;
+    private AgentState register(String agName) {
+        episodeLock.writeLock().lock();
+        try {
+            AgentState a = agents.get(agName);
+            if (a != null) return a;
+            int id = agentList.size();
+            if (trace != null) trace.agent(id, agName);
+            int window = obstacleSide * obstacleSide;
+            a = new AgentState(agName, id, objects.size(), window,
+                               new PerceptEngine(this, agName, sensedSlot(objects.size())),
+                               new Planner(map, paths, reservations, id));
+            if (senseRadius > 0) a.seen = new boolean[map.cells()];
+            kernel.add(a);
+            agentList.add(a);
+            agents.put(agName, a);
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Agent " + agName + " starts at (" + a.x + "," + a.y + ")");
+            a.markAllDirty();
+            publishPercepts(a, false);
+            return a;
+        } finally {
+            episodeLock.writeLock().unlock();
+        }
+    }
 
-        while (cur.parent != null) {
-            int dx = cur.x - cur.parent.x;
-            int dy = cur.y - cur.parent.y;
+    @Override
+    public Collection<Literal> getPercepts(String agName) {
+        agent(agName);
+        return super.getPercepts(agName);
+    }
 
-            if (dx == 1) moves.addFirst("right");
-            else if (dx == -1) moves.addFirst("left");
-            else if (dy == 1) moves.addFirst("up");
-            else if (dy == -1) moves.addFirst("down");
+    // ----------- DYNAMIC ENVIRONMENT METHODS -----------
+    // Update environment state (called when the clock tick is a multiple of SimKernel.DYNAMIC_PERIOD)
+    public void updateEnvironment() {
+        kernel.moveObjects();
+    }
 
-            cur = cur.parent;
+    private void markDirty(int obj) {
+        synchronized (worldLock) {
+            if (!dirty[obj]) {
+                dirty[obj] = true;
+                dirtyList[dirtyCount++] = obj;
+            }
         }
+    }
 
-        return moves;
+    void markAllDirty() {
+        for (int i = 0; i < objects.size(); i++) markDirty(i);
     }
 
-    @Override
-    public void init(String[] args) {
-        // Initialize object positions (some defaults, will randomize episode ones below)
-        objects.put("b", new int[]{1,5});
-        objects.put("cl", new int[]{5,5});
-        objects.put("k", new int[]{1,4});
-        objects.put("cd", new int[]{3,5});
-        objects.put("t", new int[]{5,1});
-        objects.put("ch", new int[]{4,2});
-        objects.put("d", new int[]{3,1});
+    // ----------- UPDATE PERCEPTS -----------
+    // percepts of agent a, then the global ones
+    void publishPercepts(AgentState a, boolean applyStepCost) {
+        PerceptEngine own = a.percepts;
+        long ownChanges = own.changes();
+        // Agent's own state
+        own.set(SLOT_POSITION, lits.position(a.x, a.y));
+        // expose carry_count (agent expects carry_count(N))
+        own.set(SLOT_CARRY_COUNT, lits.carryCount(a.carrying));
+        own.set(SLOT_CAPACITY, lits.capacity(a.capacity));
+
+        // carried objects, only for the objects picked or dropped since the last call
+        int[] changed = a.dirtyList();
+        for (int k = 0, n = a.drainDirty(); k < n; k++) {
+            int i = changed[k];
+            own.set(SLOT_CARRYING + i, kernel.holder(i) == a.id ? lits.carrying(i) : null);
+        }
 
-        // Set obstacles
-        obstacle[2][1] = true;
-        obstacle[2][2] = true;
-        obstacle[4][4] = true;
-        obstacle[4][5] = true;
+        // Compute rewards for this step: step cost of a primitive move, goals awarded once
+        // (to the agent whose percept update sees them first)
+        double stepReward = kernel.reward(a, applyStepCost);
+        if (results != null && results.tracesSteps()) results.step(kernel.episode(), a.stepCount, a.x, a.y, a.baseCost, a.carryCost, a.incompatibleCost, a.goalReward, stepReward);
 
-        // Initialize usage states
-        for(String key : objects.keySet()) {
-            used.put(key, false);
-            colored.put(key, false);
-            awarded.put(key, false);
-        }
-        doorOpened = false;
+        // debug print of reward breakdown
+        EnvLog.reward(EnvLog.INFO, applyStepCost, a.baseCost, a.carryCost, a.carrying, a.incompatibleCost, a.incompatibleCarried, a.goalReward, stepReward, a.episodeReward);
+
+        // expose reward percepts
+        own.set(SLOT_STEP_REWARD, lits.stepReward(stepReward));
+        own.set(SLOT_EPISODE_REWARD, lits.episodeReward(a.episodeReward));
 
-        // Randomize positions for the first episode for t,ch,d 
-        randomizeEpisodePositions();
+        publishObstacles(a);
+        if (senseRadius > 0) publishSensed(a);
+        metrics.perceptsPublished(own.changes() - ownChanges);
 
-        publishPercepts(false);
+        publishWorld();
     }
 
-    // ----------- DYNAMIC ENVIRONMENT METHODS -----------
-    private void moveObjectRandomly(String obj) {
-        if (!objects.containsKey(obj) || used.getOrDefault(obj, false)) {
-            return;
-        }
+    // object percepts, episode completion and more_episodes; most actions change none of them
+    // and only read the dirty count and the goal flags, without taking worldLock
+    private void publishWorld() {
+        if (dirtyCount == 0 && (episodeDone || !kernel.goalsAwarded())) return;
+        refreshWorld();
+    }
 
-        int attempts = 0;
-        int[] pos = objects.get(obj);
-        int newX = pos[0], newY = pos[1];
-        
-        // Try to find a valid new position
-        while (attempts < 10) {
-            int[][] directions = {{1,0}, {-1,0}, {0,1}, {0,-1}};
-            int[] dir = directions[random.nextInt(4)];
-            
-            newX = pos[0] + dir[0];
-            newY = pos[1] + dir[1];
-            
-            // Check bounds, obstacles, and avoid other objects
-            if (newX >= 1 && newX < GRID_SIZE && newY >= 1 && newY < GRID_SIZE &&
-                !obstacle[newX][newY] && !isObjectAt(newX, newY)) {
-                break;
+    private void refreshWorld() {
+        synchronized (worldLock) {
+            long changes = percepts.changes();
+            // object locations (if not carried, and each agent's own with a sensing radius)
+            // and colored/open state, only for the objects that changed since the last call
+            for (int k = 0; k < dirtyCount; k++) {
+                int i = dirtyList[k];
+                dirty[i] = false;
+                int slot = SLOT_OBJECTS + SLOTS_PER_OBJECT * i;
+                boolean carried = objects.has(i, ObjectRegistry.CARRIED);
+                percepts.set(slot, carried || senseRadius > 0 ? null : lits.location(i, objects.x(i), objects.y(i)));
+                percepts.set(slot + 1, objects.has(i, ObjectRegistry.COLORED) ? lits.colored(i) : null);
+                percepts.set(slot + 2, kernel.doorOpened() && i == idD ? lits.open(i) : null);
             }
-            attempts++;
-        }
-        
-        if (attempts < 10) {
-            objects.put(obj, new int[]{newX, newY});
-            System.out.println("[ENV] Object " + obj + " moved to (" + newX + "," + newY + ")");
-        }
-    }
+            dirtyCount = 0;
 
-    private boolean isObjectAt(int x, int y) {
-        for (int[] pos : objects.values()) {
-            if (pos[0] == x && pos[1] == y) {
-                return true;
+            // Check if episode goals achieved (and their rewards handed out)
+            if (!episodeDone && kernel.goalsAwarded()) {
+                completeEpisode();
             }
+
+            // tell the agents whether they should start another episode once this one is done
+            percepts.set(SLOT_MORE_EPISODES, episodesRun < episodesToRun ? PerceptLiterals.MORE_EPISODES : null);
+            percepts.set(SLOT_EPISODE_TIMEOUT, episodeTimedOut ? PerceptLiterals.EPISODE_TIMEOUT : null);
+            metrics.perceptsPublished(percepts.changes() - changes);
         }
-        return false;
     }
 
-    // Update environment state (called when actionCounter % 3 == 0)
-    public void updateEnvironment() {
-        if (!dynamicObjects) return;
-
-        // Always move t, ch, d if not carried
-        String[] critical = {"t", "ch", "d"};
-        for (String obj : critical) {
-            if (objects.containsKey(obj) && !used.getOrDefault(obj, false)) {
-                moveObjectRandomly(obj);
-            }
+    // the action limit of the episode is reached before its goals: it ends with the reward so far
+    private void timeOutEpisode() {
+        synchronized (worldLock) {
+            if (episodeDone) return;
+            if (EnvLog.enabled(EnvLog.WARN)) EnvLog.warn("Episode " + kernel.episode() + " ended after " + clock.ticks() + " actions without its goals");
+            episodeTimedOut = true;
+            completeEpisode();
         }
+        refreshWorld();
     }
 
-    // ----------- UPDATE PERCEPTS -----------
-    private void publishPercepts(boolean applyStepCost) {
-        clearPercepts();
-
-        // Agent's own state
-        addPercept(Literal.parseLiteral("position(" + agentX + "," + agentY + ")"));
-        // expose carry_count (agent expects carry_count(N))
-        addPercept(Literal.parseLiteral("carry_count(" + carrying + ")"));
-        addPercept(Literal.parseLiteral("capacity(" + capacity + ")"));
-
-        // Add percepts for carried objects
-        for (Map.Entry<String, Boolean> entry : used.entrySet()) {
-            if (entry.getValue()) {
-                addPercept(Literal.parseLiteral("carrying(" + entry.getKey() + ")"));
-            }
+    // called under worldLock
+    private void completeEpisode() {
+        episodeDone = true;
+        double episodeReward = episodeReward();
+        int steps = 0;
+        for (AgentState a : agentList) steps += a.stepCount;
+        // record episode reward
+        if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Episode completed with reward: " + episodeReward + ", steps=" + steps + ", simTime=" + clock.simMillis() + "ms, positions: " + describeEpisodeObjects());
+
+        // one line per episode, flushed so external scripts can tail the file
+        if (results != null) {
+            results.episode(kernel.episode(), kernel.episodeSeed(), episodeReward, steps, clock.ticks(),
+                            clock.simMillis(), (System.nanoTime() - episodeStartNanos) / 1_000_000L,
+                            startTx, startTy, startChx, startChy, startDx, startDy);
         }
 
-        // Add percepts for object locations (if not carried)
-        for (Map.Entry<String, int[]> entry : objects.entrySet()) {
-            String obj = entry.getKey();
-            if (!used.getOrDefault(obj, false)) {
-                int[] pos = entry.getValue();
-                addPercept(Literal.parseLiteral("location(" + obj + "," + pos[0] + "," + pos[1] + ")"));
-            }
-        }
+        if (trace != null) trace.episode(kernel.episode(), kernel.episodeSeed(), episodeReward, steps);
 
-        // Add colored/open percepts
-        for (Map.Entry<String, Boolean> e : colored.entrySet()) {
-            if (e.getValue()) addPercept(Literal.parseLiteral("colored(" + e.getKey() + ")"));
-        }
-        if (doorOpened) addPercept(Literal.parseLiteral("open(d)"));
+        episodeHistory.add(episodeReward);
+        episodesRun++;
+        metrics.episodeCompleted();
 
-        // Compute rewards for this step (detailed breakdown for debugging)
-        double stepReward = 0.0;
-        double baseCost = 0.0;
-        double carryCost = 0.0;
-        double incompatibleCost = 0.0;
-        double goalsAwardedThisStep = 0.0;
-        int incompatible = 0;
+        if (episodesRun >= episodesToRun) {
+            // print summary
+            double sum = 0.0;
+            for (double r : episodeHistory) sum += r;
+            double avg = sum / episodeHistory.size();
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Completed " + episodesRun + " episodes. Average episode reward: " + avg);
+            if (config.summaryFile() != null) BenchmarkSummary.write(config.summaryFile(), episodeHistory, episodesToRun);
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Metrics:\n" + metrics.snapshot());
+            // stop dynamic changes
+            kernel.stopObjects();
 
-        if (applyStepCost) {
-            // increment step counter (each time we apply step cost it's a primitive move)
-            stepCount++;
-            if (carrying == 0) {
-                baseCost = -0.01;
+            // Exit after the last episode completes if autoExit is enabled
+            if (autoExitOnComplete) {
+                EnvLog.info("All episodes done, exiting (autoExit=true)...");
+                if (results != null) results.close();
+                if (trace != null) trace.close();
+                EnvLog.flush();
+                System.exit(0);
             } else {
-                carryCost = -0.02 * carrying;
-                // count incompatible items (not among tools b,cl,k,cd)
-                for (String obj : used.keySet()) {
-                    if (used.getOrDefault(obj, false)) {
-                        if (!(obj.equals("b") || obj.equals("cl") || obj.equals("k") || obj.equals("cd"))) {
-                            incompatible++;
-                        }
-                    }
-                }
-                incompatibleCost = -0.03 * incompatible;
+                EnvLog.info("All episodes done. Window stays open (autoExit=false).");
             }
-            stepReward += baseCost + carryCost + incompatibleCost;
+        } else {
+            // the agent finishes its plans, calls reset_episode and restarts !start (see agent.asl)
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Episode " + episodesRun + "/" + episodesToRun + " done, waiting for reset_episode");
         }
+    }
 
-        // Add goal rewards once when achieved (applies even if no step cost)
-        if (colored.getOrDefault("t", false) && !awarded.getOrDefault("t", false)) {
-            stepReward += 1.0; awarded.put("t", true); goalsAwardedThisStep += 1.0;
-        }
-        if (colored.getOrDefault("ch", false) && !awarded.getOrDefault("ch", false)) {
-            stepReward += 1.0; awarded.put("ch", true); goalsAwardedThisStep += 1.0;
-        }
-        if (doorOpened && !awarded.getOrDefault("d", false)) {
-            stepReward += 0.8; awarded.put("d", true); goalsAwardedThisStep += 0.8;
+    // Obstacle percepts in the vicinity of the agent: obstacles never change,
+    // so only the cells entering or leaving the window are added/removed
+    private void publishObstacles(AgentState a) {
+        PerceptEngine own = a.percepts;
+        int minX = Math.max(1, a.x-obstacleRadius), maxX = Math.min(map.width(), a.x+obstacleRadius);
+        int minY = Math.max(1, a.y-obstacleRadius), maxY = Math.min(map.height(), a.y+obstacleRadius);
+
+        int[] shown = a.shownObstacles;
+        for (int i = 0; i < a.shownObstacleCount; i++) {
+            int x = map.cellX(shown[i]), y = map.cellY(shown[i]);
+            if (x < minX || x > maxX || y < minY || y > maxY) {
+                own.set(obstacleSlot(x, y), null);
+            }
         }
-
-        episodeReward += stepReward;
-
-        // debug print of reward breakdown
-        System.out.println(String.format("[ENV] step reward breakdown: applyStepCost=%b, base=%.3f, carry=%.3f (#carry=%d), incompatible=%.3f (#incompat=%d), goals_awarded=%.3f => step=%.3f, episode=%.3f",
-            applyStepCost, baseCost, carryCost, carrying, incompatibleCost, incompatible, goalsAwardedThisStep, stepReward, episodeReward));
-
-        // expose reward percepts
-        addPercept(Literal.parseLiteral("step_reward(" + stepReward + ")"));
-        addPercept(Literal.parseLiteral("episode_reward(" + episodeReward + ")"));
-
-        // Add obstacle percepts in vicinity
-        for (int x = Math.max(1, agentX-2); x <= Math.min(GRID_SIZE-1, agentX+2); x++) {
-            for (int y = Math.max(1, agentY-2); y <= Math.min(GRID_SIZE-1, agentY+2); y++) {
-                if (obstacle[x][y]) {
-                    addPercept(Literal.parseLiteral("obstacle(" + x + "," + y + ")"));
+        a.shownObstacleCount = 0;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                if (map.blocked(x, y)) {
+                    int cell = map.cell(x, y);
+                    own.set(obstacleSlot(x, y), lits.obstacle(x, y));
+                    shown[a.shownObstacleCount++] = cell;
                 }
             }
         }
+    }
 
-        // Check if episode goals achieved
-        if (colored.getOrDefault("t", false) && colored.getOrDefault("ch", false) && doorOpened) {
-            // record episode reward
-            System.out.println("[ENV] Episode completed with reward: " + episodeReward + ", steps=" + stepCount + ", positions: t@(" + objects.get("t")[0] + "," + objects.get("t")[1] + "), ch@(" + objects.get("ch")[0] + "," + objects.get("ch")[1] + "), d@(" + objects.get("d")[0] + "," + objects.get("d")[1] + ")");
-            
-            // Write reward to file for external script to read (append mode)
-            try (FileWriter fw = new FileWriter("episode_rewards.txt", true)) {
-                fw.write(episodeReward + "\n");
-            } catch (IOException e) {
-                System.err.println("[ENV] Failed to write reward file: " + e.getMessage());
-            }
-            
-            // Exit after episode completes if autoExit is enabled
-            if (autoExitOnComplete) {
-                System.out.println("[ENV] Episode done, exiting (autoExit=true)...");
-                System.exit(0);
+    // Locations of the objects within senseRadius of the agent, found through the cell index of
+    // the registry: the work per step depends on the radius, not on the map or the object count.
+    // An object that leaves the window (or is picked up) is taken out of the agent's percepts
+    private void publishSensed(AgentState a) {
+        PerceptEngine own = a.percepts;
+        int minX = Math.max(1, a.x-senseRadius), maxX = Math.min(map.width(), a.x+senseRadius);
+        int minY = Math.max(1, a.y-senseRadius), maxY = Math.min(map.height(), a.y+senseRadius);
+
+        int[] shown = a.shownObjects;
+        int kept = 0;
+        for (int k = 0; k < a.shownObjectCount; k++) {
+            int i = shown[k];
+            int x = objects.x(i), y = objects.y(i);
+            if (objects.has(i, ObjectRegistry.CARRIED) || x < minX || x > maxX || y < minY || y > maxY) {
+                own.set(sensedSlot(i), null);
             } else {
-                System.out.println("[ENV] Episode done. Window stays open (autoExit=false).");
+                shown[kept++] = i;
             }
-            
-            episodeHistory.add(episodeReward);
-            episodesRun++;
-
-            if (episodesRun >= episodesToRun) {
-                // print summary
-                double sum = 0.0;
-                for (double r : episodeHistory) sum += r;
-                double avg = sum / episodeHistory.size();
-                System.out.println("[ENV] Completed " + episodesRun + " episodes. Average episode reward: " + avg);
-                // stop dynamic changes
-                dynamicObjects = false;
-            } else {
-                // reset for next episode
-                resetEpisode();
+        }
+        a.shownObjectCount = kept;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                a.seen[map.cell(x, y)] = true;
+                for (int i = objects.firstAt(x, y); i >= 0; i = objects.nextAt(i)) {
+                    if (objects.has(i, ObjectRegistry.CARRIED)) continue;
+                    if (own.get(sensedSlot(i)) == null) shown[a.shownObjectCount++] = i;
+                    own.set(sensedSlot(i), lits.location(i, x, y));
+                }
             }
         }
     }
 
+    // per-agent slot of an obstacle cell in the window (after the carrying slots)
+    private int obstacleSlot(int x, int y) {
+        return SLOT_CARRYING + objects.size() + x % obstacleSide * obstacleSide + y % obstacleSide;
+    }
+
+    // per-agent slot of the location of object i (after the carrying and obstacle slots)
+    private int sensedSlot(int i) {
+        return SLOT_CARRYING + objects.size() + obstacleSide * obstacleSide + i;
+    }
+
     // ----------- MAIN ACTION HANDLER -----------
     @Override
     public boolean executeAction(String agName, Structure action) {
+        long start = System.nanoTime();
+        AgentState a = agent(agName);
         String act = action.getFunctor();
-        System.out.println("[ENV] Received action: " + action);
-
-        // reset per-action moved flag
-        movedThisAction = false;
-
+        // reset_episode changes every agent: it runs alone, everything else in parallel
+        // (except while tracing: the trace needs one order of actions and draws); lookahead_step
+        // runs alone too, so its snapshot of the kernel is not torn by other agents' steps
+        Lock lock = act.equals("reset_episode") || act.equals("lookahead_step") || trace != null
+                ? episodeLock.writeLock() : episodeLock.readLock();
+        lock.lock();
         boolean result = false;
-        switch (act) {
-            case "move":
-                result = doMove(action);
-                break;
-            case "pickup":
-                result = doPickup(action);
-                break;
-            case "drop":
-                result = doDrop(action);
-                break;
-            case "paint":
-                result = doPaint(action);
-                break;
-            case "open":
-                result = doOpen(action);
-                break;
-            case "path_to":
-                result = doPathTo(action);
-                break;
-            case "goto_coord":
-                result = doGotoCoord(action);
-                break;
-            case "explore":
-                result = doExplore(action);  // Will never happen because objects are always known
-                break;
-            case "reset_episode":
-                resetEpisode();
-                result = true;
-                break;
-            default:
-                System.out.println("[ENV] Unknown action: " + action);
+        int type;
+        try {
+            if (trace != null) trace.action(a.id, action);
+            // reset per-action moved flag
+            a.movedThisAction = false;
+            if (episodeTimedOut && !act.equals("reset_episode")) {
+                if (trace != null) trace.result(false, a.x, a.y, a.episodeReward);
                 return false;
-        }
+            }
+
+            switch (act) {
+                case "move":
+                    type = EnvMetrics.MOVE;
+                    result = doMove(a, action);
+                    break;
+                case "pickup":
+                    type = EnvMetrics.PICKUP;
+                    result = doPickup(a, action);
+                    break;
+                case "drop":
+                    type = EnvMetrics.DROP;
+                    result = doDrop(a, action);
+                    break;
+                case "paint":
+                    type = EnvMetrics.PAINT;
+                    result = doPaint(a, action);
+                    break;
+                case "open":
+                    type = EnvMetrics.OPEN;
+                    result = doOpen(a, action);
+                    break;
+                case "path_to":
+                    type = EnvMetrics.PATH_TO;
+                    result = runSteps(startSteps(a, type, action));
+                    break;
+                case "goto_coord":
+                    type = EnvMetrics.GOTO_COORD;
+                    result = runSteps(startSteps(a, type, action));
+                    break;
+                case "approach":
+                    type = EnvMetrics.APPROACH;
+                    result = runSteps(startSteps(a, type, action));
+                    break;
+                case "explore":
+                    type = EnvMetrics.EXPLORE;
+                    result = runSteps(startSteps(a, type, action));
+                    break;
+                case "policy_step":
+                    type = EnvMetrics.POLICY_STEP;
+                    result = doPolicyStep(a);
+                    break;
+                case "lookahead_step":
+                    type = EnvMetrics.LOOKAHEAD_STEP;
+                    result = doLookaheadStep(a, action);
+                    break;
+                case "cancel_action":
+                    // the agent's scheduled action, if any, was cancelled when this one was scheduled
+                    type = EnvMetrics.CANCEL_ACTION;
+                    result = true;
+                    break;
+                case "reset_episode":
+                    type = EnvMetrics.RESET_EPISODE;
+                    // with several agents each one asks; only the first request after the goals resets
+                    if (episodeDone || agentList.size() == 1) resetEpisode(kernel.episode() + 1);
+                    result = true;
+                    break;
+                default:
+                    if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Unknown action: " + action);
+                    if (trace != null) trace.result(false, a.x, a.y, a.episodeReward);
+                    return false;
+            }
 
-        // increment action counter and trigger dynamic moves every 3 actions
-        actionCounter++;
-        if (dynamicObjects && actionCounter % 3 == 0) {
-            updateEnvironment();
+            actionDone(a, action, type, result);
+        } finally {
+            lock.unlock();
         }
 
+        metrics.action(type, result, System.nanoTime() - start);
+        return result;
+    }
+
+    // end of an agent-level action (under episodeLock): log line, clock tick and percepts
+    private void actionDone(AgentState a, Structure action, int type, boolean result) {
+        if (EnvLog.enabled(EnvLog.INFO)) EnvLog.action(EnvLog.INFO, a.name, action.toString(), result, a.x, a.y);
+
+        // advance the logical clock and trigger dynamic moves every SimKernel.DYNAMIC_PERIOD ticks
+        // (reset_episode starts a new episode at tick 0 rather than being one of its actions)
+        if (type != EnvMetrics.RESET_EPISODE) kernel.tick();
+        if (!episodeDone && clock.ticks() >= episodeActions) timeOutEpisode();
+
         // After the action, publish percepts.
         // If any primitive move occurred during the action, doMove already published step-cost percepts,
         // so avoid calling publishPercepts(false) which would overwrite them.
-        if (!act.equals("move") && !movedThisAction) {
-            publishPercepts(false);
+        if (type != EnvMetrics.MOVE && !a.movedThisAction) {
+            publishPercepts(a, false);
         }
+        if (trace != null) trace.result(result, a.x, a.y, a.episodeReward);
+    }
 
-        return result;
+    // ----------- SCHEDULED ACTIONS -----------
+    // Jason hands every action over here. The multi-step ones (path_to, goto_coord, approach,
+    // explore) run one step per task on the scheduler, with percepts after every move, and are
+    // reported through actionExecuted when they end: no thread waits for the moves of an agent,
+    // and the agent can change its mind half way, as any action of an agent cancels the one it
+    // had running (cancel_action does only that). The other actions, and all of them while
+    // tracing (the trace needs one order of actions), run as executeAction on Jason's threads
+    @Override
+    public void scheduleAction(String agName, Structure action, Object infraData) {
+        if (scheduler == null || trace != null || getEnvironmentInfraTier() == null || episodeTimedOut) {
+            super.scheduleAction(agName, action, infraData);
+            return;
+        }
+        AgentState a = agent(agName);
+        scheduler.cancel(a);
+        int type = multiStepType(action.getFunctor());
+        if (type < 0) {
+            if (action.getFunctor().equals("reset_episode")) scheduler.cancelAll();
+            super.scheduleAction(agName, action, infraData);
+            return;
+        }
+        long start = System.nanoTime();
+        int episode;
+        MultiStepAction steps;
+        Lock lock = episodeLock.readLock();
+        lock.lock();
+        try {
+            a.movedThisAction = false;
+            episode = kernel.episode();
+            steps = startSteps(a, type, action);
+        } finally {
+            lock.unlock();
+        }
+        scheduler.start(scheduler.run(a, action, type, infraData, start, episode, steps));
     }
 
-    // ----------- ACTION IMPLEMENTATIONS -----------
-    private boolean doMove(Structure action) {
-        String dir = action.getTerm(0).toString();
-        System.out.println("[ENV] Moving: " + dir);
-        
-        int newX = agentX;
-        int newY = agentY;
+    private static int multiStepType(String act) {
+        switch (act) {
+            case "path_to": return EnvMetrics.PATH_TO;
+            case "goto_coord": return EnvMetrics.GOTO_COORD;
+            case "approach": return EnvMetrics.APPROACH;
+            case "explore": return EnvMetrics.EXPLORE;
+            default: return -1;
+        }
+    }
 
-        switch (dir) {
-            case "up":
-                if (agentY < GRID_SIZE-1) newY++;
-                break;
-            case "down":
-                if (agentY > 1) newY--;
-                break;
-            case "right":
-                if (agentX < GRID_SIZE-1) newX++;
-                break;
-            case "left":
-                if (agentX > 1) newX--;
-                break;
-            default:
-                System.out.println("[ENV] Unknown direction: " + dir);
-                return false;
+    // the next step of a scheduled action, paced on the clock without sleeping (the scheduler
+    // waits before the next one); fails if the episode was reset under it
+    private int scheduledStep(ActionScheduler.Run r) {
+        Lock lock = episodeLock.readLock();
+        lock.lock();
+        try {
+            if (kernel.episode() != r.episode) return MultiStepAction.FAILED;
+            int status = r.steps.step();
+            if (r.steps.delay > 0) clock.elapse(r.steps.delay);
+            return status;
+        } finally {
+            lock.unlock();
         }
+    }
+
+    private void scheduledEnd(ActionScheduler.Run r, boolean result, boolean cancelled) {
+        Lock lock = episodeLock.readLock();
+        lock.lock();
+        try {
+            if (cancelled) {
+                r.steps.cancel();
+                if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Cancelled: " + r.action);
+            }
+            if (kernel.episode() == r.episode) actionDone(r.agent, r.action, r.type, result);
+        } finally {
+            lock.unlock();
+        }
+        metrics.action(r.type, result, System.nanoTime() - r.startNanos);
+        getEnvironmentInfraTier().actionExecuted(r.agent.name, r.action, result, r.infraData);
+    }
+
+    // the steps of a multi-step action, planned from where the agent stands
+    private MultiStepAction startSteps(AgentState a, int type, Structure action) {
+        switch (type) {
+            case EnvMetrics.PATH_TO: return startPathTo(a, action);
+            case EnvMetrics.GOTO_COORD: return startGotoCoord(a, action);
+            case EnvMetrics.APPROACH: return startApproach(a, action);
+            default: return startExplore(a);
+        }
+    }
 
-        // Check obstacles
-        if (obstacle[newX][newY]) {
-            System.out.println("[ENV] Obstacle at (" + newX + "," + newY + ")");
+    // executeAction: every step in the calling thread, the moves paced on the clock (sleeps in real time)
+    private boolean runSteps(MultiStepAction steps) {
+        int status;
+        do {
+            status = steps.step();
+            if (steps.delay > 0) clock.advance(steps.delay);
+        } while (status == MultiStepAction.RUNNING);
+        return status == MultiStepAction.SUCCEEDED;
+    }
+
+    // ----------- ACTION IMPLEMENTATIONS -----------
+    private boolean doMove(AgentState a, Structure action) {
+        String dir = action.getTerm(0).toString();
+        int d = Direction.parse(dir);
+        if (d == Direction.NONE) {
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Unknown direction: " + dir);
             return false;
         }
+        return moveAgent(a, d);
+    }
 
-        agentX = newX;
-        agentY = newY;
-        System.out.println("[ENV] New position: (" + agentX + "," + agentY + ")");
+    // primitive move of agent a one cell in direction d
+    private boolean moveAgent(AgentState a, int d) {
+        if (!kernel.move(a, d)) return false;
 
         // mark that a primitive move occurred in this action
-        movedThisAction = true;
+        a.movedThisAction = true;
 
         // moving is primitive: publish percepts and apply step cost for this primitive move
-        publishPercepts(true);
+        publishPercepts(a, true);
 
         // moving is primitive: updateEnvironment is triggered per-action centrally in executeAction
 
         return true;
     }
 
-    private boolean doPickup(Structure action) {
-        String obj = action.getTerm(0).toString();
-        System.out.println("[ENV] Pickup attempt: " + obj);
+    // Follows a planned route to (gx,gy) one move per step, keeping the cells of the next
+    // RESERVATION_WINDOW moves held so other agents plan around them; replans when another
+    // agent is in the way
+    private final class RouteWalk extends MultiStepAction {
+        private final AgentState a;
+        private final int gx, gy;
+        private byte[] path;
+        private int len;
+        private int i = 0;
+        private int held = 0;       // moves of the route whose target cell is held, counted from step i
+        private int replans = 0;
+
+        RouteWalk(AgentState a, int len, int gx, int gy) {
+            this.a = a;
+            this.len = len;
+            this.gx = gx;
+            this.gy = gy;
+            this.path = a.planner.path();
+        }
 
-        if (!objects.containsKey(obj)) {
-            System.out.println("[ENV] Unknown object: " + obj);
-            return false;
+        @Override
+        int step() {
+            delay = 0;
+            if (i >= len) return SUCCEEDED;
+            held = holdAhead(a, path, i, len, held);
+            int d = path[i];
+            if (!moveAgent(a, d)) {
+                releaseAhead(a, path, i, held);
+                held = 0;
+                if (!reservations.heldByOther(map.cell(a.x + Direction.DX[d], a.y + Direction.DY[d]), a.id)
+                        || replans++ >= MAX_REPLANS) {
+                    if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Move failed: " + Direction.name(d));
+                    return FAILED;
+                }
+                len = a.planner.plan(a.x, a.y, gx, gy);
+                metrics.route(len, a.planner.lastExpanded());
+                if (len < 0) return FAILED;
+                path = a.planner.path();
+                i = 0;
+                return RUNNING;
+            }
+            held = Math.max(0, held - 1);
+            delay = MOVE_DELAY_MS;
+            return ++i < len ? RUNNING : SUCCEEDED;
         }
 
-        if (carrying >= capacity) {
-            System.out.println("[ENV] Capacity full: " + carrying + "/" + capacity);
-            return false;
+        @Override
+        void cancel() {
+            releaseAhead(a, path, i, held);
         }
+    }
 
-        int[] pos = objects.get(obj);
+    // holds the target cells of moves from..from+RESERVATION_WINDOW-1 (the first 'held' already are)
+    private int holdAhead(AgentState a, byte[] path, int from, int len, int held) {
+        int end = Math.min(len, from + RESERVATION_WINDOW);
+        int x = a.x, y = a.y;
+        for (int k = from; k < end; k++) {
+            x += Direction.DX[path[k]];
+            y += Direction.DY[path[k]];
+            if (k - from < held) continue;
+            if (!reservations.reserve(map.cell(x, y), a.id)) break;
+            held++;
+        }
+        return held;
+    }
 
-        if (pos[0] == agentX && pos[1] == agentY) {
-            carrying++;
-            used.put(obj, true);
-            System.out.println("[ENV] Picked up " + obj + ". Now carrying: " + carrying);
-            return true;
-        } else {
-            System.out.println("[ENV] Object not at agent position. Object at (" + 
-                             pos[0] + "," + pos[1] + "), Agent at (" + agentX + "," + agentY + ")");
+    private void releaseAhead(AgentState a, byte[] path, int from, int held) {
+        int x = a.x, y = a.y;
+        for (int k = from; k < from + held; k++) {
+            x += Direction.DX[path[k]];
+            y += Direction.DY[path[k]];
+            if (x != a.x || y != a.y) reservations.release(map.cell(x, y), a.id);
+        }
+    }
+
+    private boolean doPickup(AgentState a, Structure action) {
+        String name = action.getTerm(0).toString();
+        if (EnvLog.enabled(EnvLog.DEBUG)) EnvLog.debug("Pickup attempt: " + name);
+
+        int obj = objects.id(name);
+        if (obj < 0) {
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Unknown object: " + name);
             return false;
         }
+        return kernel.pickup(a, obj);
     }
 
-    private boolean doDrop(Structure action) {
-        String obj = action.getTerm(0).toString();
-        System.out.println("[ENV] Drop attempt: " + obj);
+    private boolean doDrop(AgentState a, Structure action) {
+        String name = action.getTerm(0).toString();
+        if (EnvLog.enabled(EnvLog.DEBUG)) EnvLog.debug("Drop attempt: " + name);
 
-        if (!used.getOrDefault(obj, false)) {
-            System.out.println("[ENV] Not carrying: " + obj);
+        int obj = objects.id(name);
+        if (obj < 0) {
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Not carrying: " + name);
             return false;
         }
+        return kernel.drop(a, obj);
+    }
 
-        // Drop object at current position
-        carrying--;
-        used.put(obj, false);
-        objects.put(obj, new int[]{agentX, agentY});
-        
-        System.out.println("[ENV] Dropped " + obj + " at (" + agentX + "," + agentY + "). Now carrying: " + carrying);
-        return true;
+    private boolean doPaint(AgentState a, Structure action) {
+        return kernel.paint(a, objects.id(action.getTerm(0).toString()));
     }
 
-    private boolean doPaint(Structure action) {
+    private boolean doOpen(AgentState a, Structure action) {
+        return kernel.open(a, objects.id(action.getTerm(0).toString()));
+    }
+
+    private MultiStepAction startPathTo(AgentState a, Structure action) {
         String obj = action.getTerm(0).toString();
+        if (EnvLog.enabled(EnvLog.DEBUG)) EnvLog.debug("Path finding to: " + obj);
 
-        if (!obj.equals("t") && !obj.equals("ch")) {
-            System.out.println("[ENV] Can only paint t or ch");
-            return false;
+        int id = objects.id(obj);
+        if (id < 0) {
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Object not found: " + obj);
+            return MultiStepAction.FAILED_NOW;
         }
 
-        if (!used.getOrDefault("b", false) || !used.getOrDefault("cl", false)) {
-            System.out.println("[ENV] Need brush (b) and color (cl) to paint");
-            return false;
-        }
+        int gx = objects.x(id);
+        int gy = objects.y(id);
 
-        int[] pos = objects.get(obj);
-        
-        // Υπολογισμός απόστασης (Manhattan): |x1-x2| + |y1-y2|
-        int dist = Math.abs(pos[0] - agentX) + Math.abs(pos[1] - agentY);
+        int len = a.planner.plan(a.x, a.y, gx, gy);
+        metrics.route(len, a.planner.lastExpanded());
 
-        // Αν είμαστε πάνω στο αντικείμενο (0) ή δίπλα του (1), το βάφουμε
-        if (dist <= 1) {
-            // mark colored without affecting carrying state
-            colored.put(obj, true);
-            System.out.println("[ENV] Painted: " + obj);
-            return true;
-        } else {
-            System.out.println("[ENV] Paint failed. Agent at (" + agentX + "," + agentY + ") but Object at (" + pos[0] + "," + pos[1] + ")");
-            return false;
+        if (len < 0) {
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("No path found to " + obj);
+            return MultiStepAction.FAILED_NOW;
         }
+
+        if (EnvLog.enabled(EnvLog.DEBUG)) EnvLog.debug("Found path with " + len + " steps: " + Direction.describe(a.planner.path(), len));
+
+        // Execute moves
+        return new RouteWalk(a, len, gx, gy);
     }
 
-    private boolean doOpen(Structure action) {
-        String obj = action.getTerm(0).toString();
+    private MultiStepAction startGotoCoord(AgentState a, Structure action) {
+        try {
+            int targetX = Integer.parseInt(action.getTerm(0).toString());
+            int targetY = Integer.parseInt(action.getTerm(1).toString());
 
-        if (!obj.equals("d")) {
-            System.out.println("[ENV] Can only open door (d)");
-            return false;
-        }
+            if (EnvLog.enabled(EnvLog.DEBUG)) EnvLog.debug("Going to coordinates: (" + targetX + "," + targetY + ")");
 
-        if (!used.getOrDefault("k", false) || !used.getOrDefault("cd", false)) {
-            System.out.println("[ENV] Need key (k) and card (cd) to open door");
-            return false;
-        }
+            if (!map.inside(targetX, targetY)) {
+                EnvLog.info("Coordinates out of bounds");
+                return MultiStepAction.FAILED_NOW;
+            }
 
-        int[] pos = objects.get(obj);
-        
-        // Ίδια λογική απόστασης και για την πόρτα
-        int dist = Math.abs(pos[0] - agentX) + Math.abs(pos[1] - agentY);
+            int len = a.planner.plan(a.x, a.y, targetX, targetY);
+            metrics.route(len, a.planner.lastExpanded());
 
-        if (dist <= 1) {
-            doorOpened = true;
-            System.out.println("[ENV] Door opened!");
-            return true;
-        } else {
-            System.out.println("[ENV] Open failed. Agent at (" + agentX + "," + agentY + ") but Door at (" + pos[0] + "," + pos[1] + ")");
-            return false;
+            if (len < 0) {
+                EnvLog.info("No path to coordinates");
+                return MultiStepAction.FAILED_NOW;
+            }
+
+            if (EnvLog.enabled(EnvLog.DEBUG)) EnvLog.debug("Found path with " + len + " steps");
+
+            return new RouteWalk(a, len, targetX, targetY);
+        } catch (Exception e) {
+            if (EnvLog.enabled(EnvLog.ERROR)) EnvLog.error("Error in goto_coord: " + e.getMessage());
+            return MultiStepAction.FAILED_NOW;
         }
     }
 
-    private boolean doPathTo(Structure action) {
+    // approach(Obj): walks to the cell the object is on, following it when it moves on the way
+    // (other agents' actions move it) and going around cells held by other agents. Consecutive
+    // calls reuse the agent's D* Lite search: a target that moved a cell or two is repaired,
+    // not searched again
+    private MultiStepAction startApproach(AgentState a, Structure action) {
         String obj = action.getTerm(0).toString();
-        System.out.println("[ENV] Path finding to: " + obj);
+        int id = objects.id(obj);
+        if (id < 0) {
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Object not found: " + obj);
+            return MultiStepAction.FAILED_NOW;
+        }
+        if (a.approach == null) a.approach = new DStarLite(map);
+        a.approach.unblockAll();
+        return new Approach(a, id, obj);
+    }
 
-        if (!objects.containsKey(obj)) {
-            System.out.println("[ENV] Object not found: " + obj);
-            return false;
+    // the moves of approach(Obj), one per step, towards where the object is at that step
+    private final class Approach extends MultiStepAction {
+        private final AgentState a;
+        private final int id;
+        private final String obj;
+        private final DStarLite nav;
+        private int steps = 0, blocks = 0;
+
+        Approach(AgentState a, int id, String obj) {
+            this.a = a;
+            this.id = id;
+            this.obj = obj;
+            this.nav = a.approach;
         }
 
-        int[] goal = objects.get(obj);
-        int gx = goal[0];
-        int gy = goal[1];
+        @Override
+        int step() {
+            delay = 0;
+            if (steps >= map.cells() || objects.has(id, ObjectRegistry.CARRIED)) return end(false);
+            int gx = objects.x(id), gy = objects.y(id);
+            if (a.x == gx && a.y == gy) return end(true);
+            nav.setTarget(gx, gy);
+            int d = nav.next(a.x, a.y);
+            if (d == Direction.NONE) {
+                if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("No path to " + obj);
+                return end(false);
+            }
+            int nx = a.x + Direction.DX[d], ny = a.y + Direction.DY[d];
+            if (!moveAgent(a, d)) {
+                // another agent is in the way: route around it
+                if (!reservations.heldByOther(map.cell(nx, ny), a.id) || blocks++ >= MAX_REPLANS) return end(false);
+                nav.block(nx, ny);
+                return RUNNING;
+            }
+            steps++;
+            delay = MOVE_DELAY_MS;
+            return RUNNING;
+        }
 
-        java.util.List<String> path = AStar(agentX, agentY, gx, gy);
+        private int end(boolean reached) {
+            metrics.route(reached ? steps : -1, nav.takeExpanded());
+            return reached ? SUCCEEDED : FAILED;
+        }
 
-        if (path == null) {
-            System.out.println("[ENV] No path found to " + obj);
-            return false;
+        @Override
+        void cancel() {
+            end(false);
         }
+    }
 
-        System.out.println("[ENV] Found path with " + path.size() + " steps: " + path);
+    // policy_step: the primitive action of the optimal policy table for the current state,
+    // one O(1) lookup; a WAIT (or a state outside the model) only lets the clock tick.
+    // Fails without a table: solving one takes up to minutes, too long for a step
+    private boolean doPolicyStep(AgentState a) {
+        MdpPolicy policy = mdp;
+        if (policy == null) {
+            if (!mdpMissingLogged) {
+                mdpMissingLogged = true;
+                EnvLog.error("policy_step: no policy table (solved at start with -Dmas.policyTable=true)");
+            }
+            return false;
+        }
+        int action = policy.lookup(kernel, a);
+        if (action < MdpPolicy.WAIT) return action != MdpPolicy.NONE && moveAgent(a, action);
+        if (action == MdpPolicy.WAIT) return true;
+        int obj = policy.object(action);
+        if (action < MdpPolicy.DROP) return kernel.pickup(a, obj);
+        if (action < MdpPolicy.PAINT_T) return kernel.drop(a, obj);
+        return action == MdpPolicy.OPEN_D ? kernel.open(a, obj) : kernel.paint(a, obj);
+    }
 
-        // Execute moves
-        for (String dir : path) {
-            Structure moveAction = ASSyntax.createStructure("move", ASSyntax.createAtom(dir));
-            if (!doMove(moveAction)) {
-                System.out.println("[ENV] Move failed: " + dir);
+    // lookahead_step / lookahead_step(Ms): the primitive action chosen by rollouts from a snapshot
+    // of the current state, within Ms milliseconds (-Dmas.lookaheadMs by default); runs under
+    // the write side of episodeLock, the other agents wait for the decision
+    private boolean doLookaheadStep(AgentState a, Structure action) {
+        long millis = config.lookaheadMillis();
+        if (action.getArity() > 0) {
+            try {
+                millis = Math.max(1, Long.parseLong(action.getTerm(0).toString()));
+            } catch (NumberFormatException e) {
+                if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Invalid time budget: " + action.getTerm(0));
                 return false;
             }
-            try {
-                Thread.sleep(300);
-            } catch (InterruptedException e) {}
         }
+        RolloutPlanner planner = lookahead();
+        int step = planner.decide(kernel, a, millis * 1_000_000L);
+        if (EnvLog.enabled(EnvLog.DEBUG)) EnvLog.debug("Lookahead: " + planner.lastRollouts() + " rollouts, value " + planner.lastValue());
+        int arg = SimKernel.arg(step);
+        switch (SimKernel.op(step)) {
+            case SimKernel.MOVE: return moveAgent(a, arg);
+            case SimKernel.PICKUP: return kernel.pickup(a, arg);
+            case SimKernel.DROP: return kernel.drop(a, arg);
+            case SimKernel.PAINT: return kernel.paint(a, arg);
+            case SimKernel.OPEN: return kernel.open(a, arg);
+            default: return true;
+        }
+    }
 
-        return true;
+    private RolloutPlanner lookahead() {
+        if (lookahead != null) return lookahead;
+        synchronized (lookaheadLock) {
+            if (lookahead == null) lookahead = new RolloutPlanner(map, paths, config.seed(), config.lookaheadThreads());
+            return lookahead;
+        }
     }
 
-    private boolean doGotoCoord(Structure action) {
+    // the optimal policy table of the map, null if the map is too large for one
+    private MdpPolicy solvePolicy() {
+        long start = System.nanoTime();
+        MdpPolicy policy;
         try {
-            int targetX = Integer.parseInt(action.getTerm(0).toString());
-            int targetY = Integer.parseInt(action.getTerm(1).toString());
-            
-            System.out.println("[ENV] Going to coordinates: (" + targetX + "," + targetY + ")");
-            
-            if (targetX < 1 || targetX >= GRID_SIZE || targetY < 1 || targetY >= GRID_SIZE) {
-                System.out.println("[ENV] Coordinates out of bounds");
-                return false;
-            }
-            
-            java.util.List<String> path = AStar(agentX, agentY, targetX, targetY);
-            
-            if (path == null) {
-                System.out.println("[ENV] No path to coordinates");
-                return false;
-            }
-            
-            System.out.println("[ENV] Found path with " + path.size() + " steps");
-            
-            for (String dir : path) {
-                Structure moveAction = ASSyntax.createStructure("move", ASSyntax.createAtom(dir));
-                if (!doMove(moveAction)) {
-                    return false;
-                }
-                try {
-                    Thread.sleep(300);
-                } catch (InterruptedException e) {}
-            }
-            
-            return true;
-        } catch (Exception e) {
-            System.out.println("[ENV] Error in goto_coord: " + e.getMessage());
-            return false;
+            policy = MdpSolver.solve(map, Runtime.getRuntime().availableProcessors());
+        } catch (IllegalStateException e) {
+            EnvLog.error("No policy table: " + e.getMessage());
+            return null;
         }
+        if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Policy table: " + policy.states() + " states solved in "
+                + (System.nanoTime() - start) / 1_000_000L + " ms, expected optimal episode reward " + policy.expectedReward());
+        return policy;
     }
 
-    private boolean doExplore(Structure action) {   // Will never happen because objects are always known
-        System.out.println("[ENV] Exploration mode");
-        
-        // Simple exploration: move in a pattern to discover objects
-        String[] explorationPattern = {"right", "right", "down", "down", "left", "left", "up", "up"};
-        
-        for (String dir : explorationPattern) {
-            Structure moveAction = ASSyntax.createStructure("move", ASSyntax.createAtom(dir));
-            if (!doMove(moveAction)) {
-                // Try alternative direction if blocked
-                String altDir = getAlternativeDirection(dir);
-                moveAction = ASSyntax.createStructure("move", ASSyntax.createAtom(altDir));
-                if (!doMove(moveAction)) {
-                    System.out.println("[ENV] Exploration blocked");
-                    break;
-                }
+    // without a sensing radius every object is always known and explore walks a fixed loop;
+    // with one it heads for the nearest cell not yet in range this episode
+    private MultiStepAction startExplore(AgentState a) {
+        EnvLog.debug("Exploration mode");
+        if (a.seen != null) return exploreFrontier(a);
+        return new PatternExplore(a);
+    }
+
+    // Simple exploration: move in a pattern to discover objects, one move per step
+    private final class PatternExplore extends MultiStepAction {
+        private final AgentState a;
+        private int i = 0;
+
+        PatternExplore(AgentState a) {
+            this.a = a;
+        }
+
+        @Override
+        int step() {
+            delay = 0;
+            int dir = EXPLORATION_PATTERN[i++];
+            // Try alternative direction if blocked
+            if (!moveAgent(a, dir) && !moveAgent(a, getAlternativeDirection(dir))) {
+                EnvLog.info("Exploration blocked");
+                return SUCCEEDED;
             }
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {}
+            delay = EXPLORE_DELAY_MS;
+            return i < EXPLORATION_PATTERN.length ? RUNNING : SUCCEEDED;
         }
-        
-        return true;
     }
 
-    private String getAlternativeDirection(String dir) {
+    // walks to the nearest free cell the agent has not had in range (distances from the agent's
+    // distance field); once every cell has been seen, starts over, as the objects move
+    private MultiStepAction exploreFrontier(AgentState a) {
+        int[] field = paths.field(a.x, a.y);
+        if (field == null) return MultiStepAction.FAILED_NOW;
+        int target = nearestUnseen(a, field);
+        if (target < 0) {
+            java.util.Arrays.fill(a.seen, false);
+            publishSensed(a);
+            target = nearestUnseen(a, field);
+            if (target < 0) return MultiStepAction.SUCCEEDED_NOW;
+        }
+        int tx = map.cellX(target), ty = map.cellY(target);
+        int len = a.planner.plan(a.x, a.y, tx, ty);
+        metrics.route(len, a.planner.lastExpanded());
+        if (len < 0) return MultiStepAction.FAILED_NOW;
+        if (EnvLog.enabled(EnvLog.DEBUG)) EnvLog.debug("Exploring towards (" + tx + "," + ty + ")");
+        return new RouteWalk(a, len, tx, ty);
+    }
+
+    private int nearestUnseen(AgentState a, int[] field) {
+        int best = -1;
+        for (int cell = 0; cell < field.length; cell++) {
+            if (a.seen[cell] || field[cell] <= 0) continue;
+            if (best < 0 || field[cell] < field[best]) best = cell;
+        }
+        return best;
+    }
+
+    private int getAlternativeDirection(int dir) {
         switch (dir) {
-            case "up": return "right";
-            case "down": return "left";
-            case "right": return "down";
-            case "left": return "up";
-            default: return "right";
-        }
-    }
-
-    // New helper to randomize positions for t,ch,d each episode
-    private void randomizeEpisodePositions() {
-        // place t, ch, d randomly on free cells (not obstacles, not overlapping, not at agent start)
-        String[] epis = {"t","ch","d"};
-        for (String obj : epis) {
-            int attempts = 0;
-            while (attempts < 50) {
-                int x = 1 + random.nextInt(GRID_SIZE-1);
-                int y = 1 + random.nextInt(GRID_SIZE-1);
-                if (!obstacle[x][y] && !isObjectAt(x,y) && !(x==1 && y==1)) {
-                    objects.put(obj, new int[]{x,y});
-                    break;
-                }
-                attempts++;
-            }
+            case Direction.UP: return Direction.RIGHT;
+            case Direction.DOWN: return Direction.LEFT;
+            case Direction.RIGHT: return Direction.DOWN;
+            case Direction.LEFT: return Direction.UP;
+            default: return Direction.RIGHT;
+        }
+    }
+
+    // start positions of t, ch, d for the results file, once the kernel placed them
+    private void episodeStarted() {
+        startTx = objects.x(idT); startTy = objects.y(idT);
+        startChx = objects.x(idCh); startChy = objects.y(idCh);
+        startDx = objects.x(idD); startDy = objects.y(idD);
+        episodeStartNanos = System.nanoTime();
+    }
+
+    // "t@(x,y), ch@(x,y), d@(x,y)" for log output
+    private String describeEpisodeObjects() {
+        return kernel.describeEpisodeObjects();
+    }
+
+    // Reset environment to start episode 'index' (holds the write side of episodeLock, or runs alone)
+    void resetEpisode(int index) {
+        if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Resetting episode " + index);
+        episodeDone = false;
+        episodeTimedOut = false;
+        // objects back on their map cells with their flags cleared, agents back on the start cells
+        // empty-handed, t,ch,d randomized, clock at tick 0 (see SimKernel.resetEpisode)
+        kernel.resetEpisode(index);
+        for (AgentState a : agentList) {
+            a.markAllDirty();
+            if (a.seen != null) java.util.Arrays.fill(a.seen, false);
         }
-        System.out.println("[ENV] Episode positions randomized: t@(" + objects.get("t")[0] + "," + objects.get("t")[1] + "), ch@(" + objects.get("ch")[0] + "," + objects.get("ch")[1] + "), d@(" + objects.get("d")[0] + "," + objects.get("d")[1] + ")");
-    }
-
-    // Reset environment to start a new episode
-    private void resetEpisode() {
-        episode++;
-        System.out.println("[ENV] Resetting episode " + episode);
-        // reset agent
-        agentX = 1; agentY = 1; carrying = 0; moveCounter = 0; doorOpened = false;
-        // reset step counter
-        stepCount = 0;
-         // reset carried/used flags
-         for (String k : used.keySet()) used.put(k, false);
-         // reset colored flags
-         for (String k : colored.keySet()) colored.put(k, false);
-         // reset awarded flags and episode reward
-         for (String k : awarded.keySet()) awarded.put(k, false);
-         episodeReward = 0.0;
-         // randomize episode objects t,ch,d
-         randomizeEpisodePositions();
-         publishPercepts(false);
+        episodeStarted();
+        for (AgentState a : agentList) publishPercepts(a, false);
+        refreshWorld();
+    }
+
+    // ----------- STATE ACCESS (scripted agent, benchmarks) -----------
+    ObjectRegistry objects() { return objects; }
+    PathService paths() { return paths; }
+    SimKernel kernel() { return kernel; }
+    boolean carries(AgentState a, int obj) { return kernel.carries(a, obj); }
+    // reward of the current episode, summed over the agents
+    double episodeReward() {
+        double sum = 0.0;
+        for (AgentState a : agentList) sum += a.episodeReward;
+        return sum;
+    }
+    boolean episodeDone() { return episodeDone; }
+    boolean moreEpisodes() { return episodesRun < episodesToRun; }
+
+    @Override
+    public void stop() {
+        if (results != null) results.close();
+        if (trace != null) trace.close();
+        if (metrics != null) metrics.unregister();
+        if (lookahead != null) lookahead.shutdown();
+        if (scheduler != null) scheduler.shutdown();
+        super.stop();
     }
 
  }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package env;
+
+import java.util.Random;
+
+import jason.asSyntax.Structure;
+
+/**
+ * Hooks through which {@link EnvironmentExt} records a run ({@link TraceRecorder}) or is
+ * checked against a recorded one ({@link TraceReplayer}). While a trace is attached the
+ * actions run one at a time, so the calls come in one total order.
+ */
+interface EpisodeTrace extends SimKernel.Draws {
+
+    /** An agent registered (agent ids are given in registration order). */
+    void agent(int id, String name);
+
+    /** An action starts. */
+    void action(int agent, Structure action);
+
+    /** Every random draw of the environment: object placement and object moves. */
+    @Override
+    int draw(Random random, int bound);
+
+    /** The action ended: its result, the agent's position and episode reward afterwards. */
+    void result(boolean ok, int x, int y, double episodeReward);
+
+    /** The goals of an episode were achieved. */
+    void episode(int episode, long seed, double reward, int steps);
+
+    void close();
+}
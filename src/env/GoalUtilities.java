@@ -0,0 +1,101 @@
+package env;
+
+import static env.MissionState.OPEN_DOOR;
+import static env.MissionState.PAINT_TABLE;
+
+/**
+ * Expected utility of the three goals of agent.asl: reward - cost of the route there.
+ * The route runs from the agent through the tools it is missing (both orders are tried)
+ * to the target, with true path distances. Each leg is charged the environment's step cost
+ * for what is carried on it: 0.01 per step empty-handed, 0.02 per carried object and 0.03
+ * per carried non-tool otherwise. The tools of the other task are dropped first (as agent.asl
+ * does). Unknown locations fall back to agent.asl's estimates. Done and unreachable goals get
+ * {@link #DONE}.
+ *
+ * Used by {@link best_goal} and {@link ScriptedAgent}.
+ */
+public final class GoalUtilities {
+
+    public static final double DONE = -9999;
+
+    // agent.asl's estimates: unknown target, unknown tool
+    private static final double UNKNOWN_TARGET_COST = 0.5;
+    private static final double UNKNOWN_TOOL_COST = 0.2;
+
+    private final PathService paths;
+
+    public GoalUtilities(PathService paths) {
+        this.paths = paths;
+    }
+
+    /** Goal with the highest utility, the first one on ties (as agent.asl's select_max_utility). */
+    public int best(MissionState s) {
+        int best = 0;
+        double bestUtility = utility(s, 0);
+        for (int g = 1; g < MissionState.GOALS.length; g++) {
+            double u = utility(s, g);
+            if (u > bestUtility) {
+                best = g;
+                bestUtility = u;
+            }
+        }
+        return best;
+    }
+
+    public double utility(MissionState s, int goal) {
+        if (s.completed[goal]) return DONE;
+        int target = MissionState.TARGET[goal];
+        if (!s.known[target]) return s.reward[goal] - UNKNOWN_TARGET_COST;
+
+        int first = -1, second = -1;
+        boolean fetch = false;
+        double extra = 0.0;
+        for (int t : MissionState.TOOLS[goal]) {
+            if (s.carried[t]) continue;
+            fetch = true;
+            if (!s.known[t]) {
+                extra += UNKNOWN_TOOL_COST;
+            } else if (first < 0) {
+                first = t;
+            } else {
+                second = t;
+            }
+        }
+        // before fetching tools the other task's tools are dropped
+        int carrying = s.carryCount;
+        if (fetch) {
+            for (int t : MissionState.TOOLS[goal == OPEN_DOOR ? PAINT_TABLE : OPEN_DOOR]) {
+                if (s.carried[t]) carrying--;
+            }
+        }
+
+        double cost = routeCost(s, first, second, target, carrying);
+        if (second >= 0) cost = Math.min(cost, routeCost(s, second, first, target, carrying));
+        if (cost == Double.POSITIVE_INFINITY) return DONE;
+        return s.reward[goal] - cost - extra;
+    }
+
+    // step cost of (x,y) -> first -> second -> target (first/second -1 when not needed),
+    // one more object carried after each tool
+    private double routeCost(MissionState s, int first, int second, int target, int carrying) {
+        double cost = 0.0;
+        int cx = s.x, cy = s.y;
+        if (first >= 0) {
+            int dist = paths.distance(cx, cy, s.ox[first], s.oy[first]);
+            if (dist < 0) return Double.POSITIVE_INFINITY;
+            cost += dist * MissionState.stepCost(carrying++, s.otherCount);
+            cx = s.ox[first];
+            cy = s.oy[first];
+        }
+        if (second >= 0) {
+            int dist = paths.distance(cx, cy, s.ox[second], s.oy[second]);
+            if (dist < 0) return Double.POSITIVE_INFINITY;
+            cost += dist * MissionState.stepCost(carrying++, s.otherCount);
+            cx = s.ox[second];
+            cy = s.oy[second];
+        }
+        int dist = paths.distance(cx, cy, s.ox[target], s.oy[target]);
+        if (dist < 0) return Double.POSITIVE_INFINITY;
+        return cost + dist * MissionState.stepCost(carrying, s.otherCount);
+    }
+}
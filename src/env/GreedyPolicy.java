@@ -0,0 +1,155 @@
+package env;
+
+import java.util.Random;
+
+/**
+ * Fast heuristic player of a {@link SimKernel}, the default policy of the rollouts of
+ * {@link RolloutPlanner}: drops the tools whose goals are done, works on the pending goal whose
+ * two tools it holds (walks next to the nearest target and paints or opens it), and otherwise
+ * fetches the closest missing tool of the task it is furthest into. With probability epsilon
+ * it moves in a random direction instead, so the rollouts spread over the ways an episode can go.
+ *
+ * Holds per-instance state (distance fields copied from the {@link PathService}, the random
+ * generator): one instance per thread.
+ */
+public class GreedyPolicy implements Policy {
+
+    private static final int WAIT = SimKernel.action(SimKernel.WAIT, 0);
+
+    private final GridMap map;
+    private final PathService paths;
+    private final Random random;
+    private final double epsilon;
+    private final int idB, idCl, idK, idCd, idT, idCh, idD;
+    // distance fields by target cell, taken from the path service on first use
+    private final int[][] fields;
+
+    /**
+     * @param random  source of the exploration moves and of the tie-breaks between equally
+     *                short moves (reseed it to replay a rollout)
+     * @param epsilon probability of a random move at each step
+     */
+    public GreedyPolicy(GridMap map, PathService paths, Random random, double epsilon) {
+        this.map = map;
+        this.paths = paths;
+        this.random = random;
+        this.epsilon = epsilon;
+        // object ids of a kernel follow the map's object order
+        idB = map.objectNames().indexOf("b"); idCl = map.objectNames().indexOf("cl");
+        idK = map.objectNames().indexOf("k"); idCd = map.objectNames().indexOf("cd");
+        idT = map.objectNames().indexOf("t"); idCh = map.objectNames().indexOf("ch");
+        idD = map.objectNames().indexOf("d");
+        fields = new int[map.cells()][];
+    }
+
+    @Override
+    public int act(SimKernel sim, SimAgent self) {
+        ObjectRegistry objects = sim.objects();
+        boolean paintDone = objects.has(idT, ObjectRegistry.COLORED) && objects.has(idCh, ObjectRegistry.COLORED);
+        boolean doorDone = sim.doorOpened();
+
+        // tools no longer needed (and anything else) only cost per step
+        for (int i = 0; i < objects.size(); i++) {
+            if (!sim.carries(self, i)) continue;
+            boolean needed = (i == idB || i == idCl) ? !paintDone : (i == idK || i == idCd) && !doorDone;
+            if (!needed) return SimKernel.action(SimKernel.DROP, i);
+        }
+        if (paintDone && doorDone) return WAIT;
+        if (random.nextDouble() < epsilon) return SimKernel.action(SimKernel.MOVE, random.nextInt(4));
+
+        // a goal whose tools are in hand: the nearest of its targets
+        boolean paintReady = !paintDone && sim.carries(self, idB) && sim.carries(self, idCl);
+        boolean doorReady = !doorDone && sim.carries(self, idK) && sim.carries(self, idCd);
+        if (paintReady || doorReady) {
+            int target = -1, best = Integer.MAX_VALUE;
+            if (paintReady) {
+                if (!objects.has(idT, ObjectRegistry.COLORED)) {
+                    int d = distance(self, objects.x(idT), objects.y(idT));
+                    if (d >= 0 && d < best) { best = d; target = idT; }
+                }
+                if (!objects.has(idCh, ObjectRegistry.COLORED)) {
+                    int d = distance(self, objects.x(idCh), objects.y(idCh));
+                    if (d >= 0 && d < best) { best = d; target = idCh; }
+                }
+            }
+            if (doorReady) {
+                int d = distance(self, objects.x(idD), objects.y(idD));
+                if (d >= 0 && d < best) target = idD;
+            }
+            if (target < 0) return WAIT;
+            int x = objects.x(target), y = objects.y(target);
+            if (Math.abs(x - self.x) + Math.abs(y - self.y) <= 1) {
+                return SimKernel.action(target == idD ? SimKernel.OPEN : SimKernel.PAINT, target);
+            }
+            return stepToward(self, x, y);
+        }
+
+        // otherwise the task with more of its tools in hand (the nearer missing tool on a tie)
+        int paintHeld = (sim.carries(self, idB) ? 1 : 0) + (sim.carries(self, idCl) ? 1 : 0);
+        int doorHeld = (sim.carries(self, idK) ? 1 : 0) + (sim.carries(self, idCd) ? 1 : 0);
+        int paintTool = paintDone ? -1 : nearestMissing(sim, self, idB, idCl);
+        int doorTool = doorDone ? -1 : nearestMissing(sim, self, idK, idCd);
+        int tool;
+        if (paintTool < 0 || doorTool < 0) {
+            tool = Math.max(paintTool, doorTool);
+        } else if (paintHeld != doorHeld) {
+            tool = paintHeld > doorHeld ? paintTool : doorTool;
+        } else {
+            tool = toolDistance(self, objects, paintTool) <= toolDistance(self, objects, doorTool) ? paintTool : doorTool;
+        }
+        if (tool < 0) return WAIT;
+        int x = objects.x(tool), y = objects.y(tool);
+        if (x != self.x || y != self.y) return stepToward(self, x, y);
+        if (self.carrying < self.capacity) return SimKernel.action(SimKernel.PICKUP, tool);
+        // full: make room with a tool of the other task
+        boolean paintTask = tool == idB || tool == idCl;
+        int other1 = paintTask ? idK : idB, other2 = paintTask ? idCd : idCl;
+        if (sim.carries(self, other1)) return SimKernel.action(SimKernel.DROP, other1);
+        if (sim.carries(self, other2)) return SimKernel.action(SimKernel.DROP, other2);
+        return WAIT;
+    }
+
+    // of the two tools of a task, the one not in hand and free that is closest; -1 if none
+    private int nearestMissing(SimKernel sim, SimAgent self, int first, int second) {
+        int d1 = sim.holder(first) < 0 ? toolDistance(self, sim.objects(), first) : -1;
+        int d2 = sim.holder(second) < 0 ? toolDistance(self, sim.objects(), second) : -1;
+        if (d1 < 0) return d2 < 0 ? -1 : second;
+        return d2 < 0 || d1 <= d2 ? first : second;
+    }
+
+    private int toolDistance(SimAgent self, ObjectRegistry objects, int tool) {
+        return distance(self, objects.x(tool), objects.y(tool));
+    }
+
+    private int distance(SimAgent self, int x, int y) {
+        int[] f = field(x, y);
+        return f == null ? -1 : f[map.cell(self.x, self.y)];
+    }
+
+    // a move that gets one cell closer, a random one among the equally good
+    private int stepToward(SimAgent self, int x, int y) {
+        int[] f = field(x, y);
+        if (f == null) return WAIT;
+        int here = f[map.cell(self.x, self.y)];
+        int first = random.nextInt(4);
+        for (int k = 0; k < 4; k++) {
+            int d = (first + k) & 3;
+            int nx = self.x + Direction.DX[d], ny = self.y + Direction.DY[d];
+            if (!map.free(nx, ny)) continue;
+            int there = f[map.cell(nx, ny)];
+            if (there >= 0 && there < here) return SimKernel.action(SimKernel.MOVE, d);
+        }
+        return WAIT;
+    }
+
+    private int[] field(int x, int y) {
+        if (!map.free(x, y)) return null;
+        int cell = map.cell(x, y);
+        int[] f = fields[cell];
+        if (f == null) {
+            f = paths.field(x, y);
+            fields[cell] = f;
+        }
+        return f;
+    }
+}
@@ -0,0 +1,173 @@
+package env;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static layout of the grid: dimensions, obstacles and initial object placements.
+ * Usable cells are x in 1..width and y in 1..height (row/column 0 is unused, as in
+ * the original 6x6 arrays). Cells are packed as x * stride + y with stride = height + 1.
+ * Obstacles are stored one bit per cell. Objects may have a {@link MovementModel}.
+ */
+public class GridMap {
+
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final long[] obstacles;
+
+    private int startX = 1;
+    private int startY = 1;
+    private int capacity = 3;
+    private final List<String> objectNames = new ArrayList<>();
+    private final List<int[]> objectPositions = new ArrayList<>();
+    private final Map<String, Integer> objectIndex = new HashMap<>();
+    // movement of the i-th object, null if the map gives none
+    private final List<MovementModel> movements = new ArrayList<>();
+
+    public GridMap(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Invalid grid size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.stride = height + 1;
+        this.obstacles = new long[(cells() + 63) >>> 6];
+    }
+
+    /** The 5x5 map the project always used. */
+    public static GridMap defaultMap() {
+        GridMap m = new GridMap(5, 5);
+        m.addObject("b", 1, 5);
+        m.addObject("cl", 5, 5);
+        m.addObject("k", 1, 4);
+        m.addObject("cd", 3, 5);
+        m.addObject("t", 5, 1);
+        m.addObject("ch", 4, 2);
+        m.addObject("d", 3, 1);
+        m.setObstacle(2, 1, true);
+        m.setObstacle(2, 2, true);
+        m.setObstacle(4, 4, true);
+        m.setObstacle(4, 5, true);
+        return m;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    // number of packed cell indices (including the unused row/column 0)
+    public int cells() {
+        return (width + 1) * stride;
+    }
+
+    public int cell(int x, int y) {
+        return x * stride + y;
+    }
+
+    public int cellX(int cell) {
+        return cell / stride;
+    }
+
+    public int cellY(int cell) {
+        return cell % stride;
+    }
+
+    public boolean inside(int x, int y) {
+        return x >= 1 && x <= width && y >= 1 && y <= height;
+    }
+
+    public boolean blocked(int x, int y) {
+        int c = x * stride + y;
+        return (obstacles[c >>> 6] & (1L << c)) != 0;
+    }
+
+    public boolean blockedCell(int cell) {
+        return (obstacles[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    // inside the map and not an obstacle
+    public boolean free(int x, int y) {
+        return inside(x, y) && !blocked(x, y);
+    }
+
+    public void setObstacle(int x, int y, boolean blocked) {
+        if (!inside(x, y)) {
+            throw new IllegalArgumentException("Obstacle outside the map: (" + x + "," + y + ")");
+        }
+        int c = x * stride + y;
+        if (blocked) obstacles[c >>> 6] |= 1L << c;
+        else obstacles[c >>> 6] &= ~(1L << c);
+    }
+
+    public int startX() {
+        return startX;
+    }
+
+    public int startY() {
+        return startY;
+    }
+
+    public void setStart(int x, int y) {
+        if (!inside(x, y)) {
+            throw new IllegalArgumentException("Agent start outside the map: (" + x + "," + y + ")");
+        }
+        startX = x;
+        startY = y;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void addObject(String name, int x, int y) {
+        if (!inside(x, y)) {
+            throw new IllegalArgumentException("Object " + name + " outside the map: (" + x + "," + y + ")");
+        }
+        if (objectIndex.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate object " + name);
+        }
+        objectIndex.put(name, objectNames.size());
+        objectNames.add(name);
+        objectPositions.add(new int[]{x, y});
+        movements.add(null);
+    }
+
+    public void setMovement(String name, MovementModel model) {
+        Integer i = objectIndex.get(name);
+        if (i == null) {
+            throw new IllegalArgumentException("Movement of an unknown object " + name);
+        }
+        for (int k = 0; k < model.waypoints(); k++) {
+            if (!inside(model.waypointX(k), model.waypointY(k))) {
+                throw new IllegalArgumentException("Waypoint of " + name + " outside the map: ("
+                        + model.waypointX(k) + "," + model.waypointY(k) + ")");
+            }
+        }
+        movements.set(i, model);
+    }
+
+    // movement of the i-th object, null if the map gives none
+    public MovementModel movement(int i) {
+        return movements.get(i);
+    }
+
+    public List<String> objectNames() {
+        return objectNames;
+    }
+
+    // initial (x,y) of the i-th object
+    public int[] objectPosition(int i) {
+        return objectPositions.get(i);
+    }
+}
@@ -0,0 +1,26 @@
+package env;
+
+/**
+ * A shortest-path search between two cells of a {@link GridMap} with buffers reused by every
+ * query; the moves of the last route are in a direction buffer (see {@link Direction}).
+ * {@link PathService#newSearch()} gives one for the strategy the service was built with:
+ * A* ({@link PathFinder}), jump point search ({@link JumpPointSearch}) or the hierarchical
+ * search over cluster entrances ({@link HierarchicalSearch}).
+ *
+ * Not thread-safe: one instance per thread.
+ */
+public interface GridSearch {
+
+    /** @return the number of moves, or -1 if there is no path; the moves are in {@link #path()} */
+    int search(int sx, int sy, int gx, int gy);
+
+    /** Same, also treating the cells other agents hold in reservations as blocked (except the goal). */
+    int search(int sx, int sy, int gx, int gy, ReservationTable reservations, int agent);
+
+    byte[] path();
+
+    int pathLength();
+
+    /** Nodes expanded by the last search. */
+    int expanded();
+}
@@ -0,0 +1,273 @@
+package env;
+
+/**
+ * HPA* over the {@link ClusterGraph} of a {@link PathService}: the start and the goal are tied
+ * to the transitions of their clusters by a BFS inside each cluster, A* (ties broken by h) runs
+ * on the abstract graph, and every leg of the abstract route is refined into moves, by a BFS
+ * inside the leg's cluster or a single move across a border. A query costs a few cluster-sized
+ * BFS plus a search over the transitions, whatever the size of the map.
+ *
+ * Routes are near-optimal rather than shortest: a leg goes through the transitions chosen for
+ * the entrances, which can add a few moves where the best crossing is elsewhere on a border.
+ * Cells held by other agents are avoided when tying the ends and refining the legs, and held
+ * transitions are skipped by the abstract search; if a leg is cut off that way the search
+ * fails (the caller retries without reservations).
+ *
+ * Not thread-safe: use one instance per thread.
+ */
+public class HierarchicalSearch implements GridSearch {
+
+    private final PathService service;
+    private final GridMap map;
+    private ClusterGraph graph;
+
+    // abstract search over the nodes of the graph, plus START and GOAL
+    private int start, goal;
+    private int[] stamp, g, f, parent;
+    private boolean[] closed;
+    private CellHeap open;
+    private int generation = 0;
+    // edges of START, and the cost of reaching the goal from the nodes of its cluster
+    private int[] startNodes, startCosts;
+    private int startEdges;
+    private int[] goalCost;
+    private int direct;
+
+    // BFS inside a cluster: distances valid where >= 0, reset after each use
+    private final int[] dist;
+    private int[] queue;
+
+    private ReservationTable reservations;
+    private int agent;
+    private final ClusterGraph.BfsFilter unheld = cell -> !reservations.heldByOther(cell, agent);
+
+    private byte[] path = new byte[16];
+    private int pathLength = 0;
+    private int expanded = 0;
+
+    public HierarchicalSearch(PathService service, GridMap map) {
+        this.service = service;
+        this.map = map;
+        this.dist = new int[map.cells()];
+        java.util.Arrays.fill(dist, -1);
+    }
+
+    @Override
+    public int search(int sx, int sy, int gx, int gy) {
+        return search(sx, sy, gx, gy, null, ReservationTable.FREE);
+    }
+
+    @Override
+    public int search(int sx, int sy, int gx, int gy, ReservationTable reservations, int agent) {
+        pathLength = 0;
+        expanded = 0;
+        if (!map.free(sx, sy) || !map.free(gx, gy)) return -1;
+        refreshGraph();
+        this.reservations = reservations;
+        this.agent = agent;
+        try {
+            int len = searchAbstract(map.cell(sx, sy), map.cell(gx, gy));
+            return len < 0 ? -1 : refine(map.cell(sx, sy), map.cell(gx, gy));
+        } finally {
+            this.reservations = null;
+        }
+    }
+
+    private void refreshGraph() {
+        if (graph != null) return;
+        graph = service.clusterGraph();
+        int n = graph.nodes + 2;
+        start = graph.nodes;
+        goal = graph.nodes + 1;
+        stamp = new int[n];
+        g = new int[n];
+        f = new int[n];
+        parent = new int[n];
+        closed = new boolean[n];
+        open = new CellHeap(n, f, g);
+        goalCost = new int[n];
+        int most = 0;
+        for (int c = 0; c + 1 < graph.clusterStart.length; c++) {
+            most = Math.max(most, graph.clusterStart[c + 1] - graph.clusterStart[c]);
+        }
+        startNodes = new int[most];
+        startCosts = new int[most];
+        queue = new int[graph.size * graph.size];
+        generation = 0;
+    }
+
+    // A* from START to GOAL over the transitions; the cost, -1 if the goal is not reached
+    private int searchAbstract(int from, int to) {
+        if (++generation == Integer.MAX_VALUE) {
+            java.util.Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        open.clear();
+        int gx = map.cellX(to), gy = map.cellY(to);
+
+        // the goal's cluster: which transitions reach the goal, and at what cost
+        int goalCluster = graph.clusterOf(to);
+        int reached = graph.bfs(to, goalCluster, dist, queue, from, filter());
+        expanded += reached;
+        for (int i = graph.clusterStart[goalCluster]; i < graph.clusterStart[goalCluster + 1]; i++) {
+            int n = graph.clusterNodes[i];
+            goalCost[n] = dist[graph.nodeCell[n]];
+        }
+        // in the same cluster the direct way counts too
+        direct = dist[from];
+        resetDist(reached);
+        // the start's cluster: the transitions it reaches
+        int startCluster = graph.clusterOf(from);
+        reached = graph.bfs(from, startCluster, dist, queue, to, filter());
+        expanded += reached;
+        startEdges = 0;
+        for (int i = graph.clusterStart[startCluster]; i < graph.clusterStart[startCluster + 1]; i++) {
+            int n = graph.clusterNodes[i];
+            int d = dist[graph.nodeCell[n]];
+            if (d >= 0) {
+                startNodes[startEdges] = n;
+                startCosts[startEdges++] = d;
+            }
+        }
+        resetDist(reached);
+
+        touch(start, 0, Math.abs(map.cellX(from) - gx) + Math.abs(map.cellY(from) - gy), -1);
+        open.push(start);
+        while (!open.isEmpty()) {
+            int cur = open.pop();
+            if (cur == goal) return g[goal];
+            closed[cur] = true;
+            expanded++;
+            if (cur == start) {
+                for (int i = 0; i < startEdges; i++) relax(cur, startNodes[i], startCosts[i], gx, gy);
+                if (direct >= 0) relax(cur, goal, direct, gx, gy);
+                continue;
+            }
+            for (int e = graph.edgeStart[cur]; e < graph.edgeStart[cur + 1]; e++) {
+                relax(cur, graph.edgeTarget[e], graph.edgeCost[e], gx, gy);
+            }
+            if (graph.clusterOf(graph.nodeCell[cur]) == goalCluster && goalCost[cur] >= 0) {
+                relax(cur, goal, goalCost[cur], gx, gy);
+            }
+        }
+        return -1;
+    }
+
+    private void relax(int cur, int next, int cost, int gx, int gy) {
+        if (next != goal && reservations != null && reservations.heldByOther(graph.nodeCell[next], agent)) return;
+        int newG = g[cur] + cost;
+        if (stamp[next] != generation) {
+            int h = 0;
+            if (next != goal) {
+                int cell = graph.nodeCell[next];
+                h = Math.abs(map.cellX(cell) - gx) + Math.abs(map.cellY(cell) - gy);
+            }
+            touch(next, newG, newG + h, cur);
+            open.push(next);
+        } else if (!closed[next] && newG < g[next]) {
+            f[next] -= g[next] - newG;
+            g[next] = newG;
+            parent[next] = cur;
+            open.decreased(next);
+        }
+    }
+
+    private void touch(int node, int gv, int fv, int from) {
+        stamp[node] = generation;
+        g[node] = gv;
+        f[node] = fv;
+        parent[node] = from;
+        closed[node] = false;
+        open.forget(node);
+    }
+
+    // the moves of the abstract route, leg by leg from the start; -1 if a leg is cut off
+    private int refine(int from, int to) {
+        // the route's nodes in order, reusing parent as the forward links
+        int next = -1;
+        for (int cur = goal; cur >= 0; ) {
+            int p = parent[cur];
+            parent[cur] = next;
+            next = cur;
+            cur = p;
+        }
+        int len = 0;
+        int at = from;
+        for (int node = parent[start]; node >= 0; node = parent[node]) {
+            int cell = node == goal ? to : graph.nodeCell[node];
+            if (graph.clusterOf(at) != graph.clusterOf(cell)) {
+                // across a border: the one move between the two cells of a transition
+                ensurePath(len + 1);
+                path[len++] = (byte) direction(at, cell);
+            } else {
+                len = leg(at, cell, len);
+                if (len < 0) return -1;
+            }
+            at = cell;
+        }
+        pathLength = len;
+        return len;
+    }
+
+    // moves from a to b inside their cluster appended at len: BFS from b, then downhill from a
+    private int leg(int a, int b, int len) {
+        if (a == b) return len;
+        int reached = graph.bfs(b, graph.clusterOf(b), dist, queue, a, filter());
+        expanded += reached;
+        int d = dist[a];
+        if (d < 0) {
+            resetDist(reached);
+            return -1;
+        }
+        ensurePath(len + d);
+        int cur = a;
+        for (int i = 0; i < d; i++) {
+            int cx = map.cellX(cur), cy = map.cellY(cur);
+            for (int dir = 0; dir < 4; dir++) {
+                int nx = cx + Direction.DX[dir], ny = cy + Direction.DY[dir];
+                if (!map.inside(nx, ny)) continue;
+                int n = map.cell(nx, ny);
+                if (dist[n] == dist[cur] - 1 && dist[n] >= 0) {
+                    path[len++] = (byte) dir;
+                    cur = n;
+                    break;
+                }
+            }
+        }
+        resetDist(reached);
+        return len;
+    }
+
+    private int direction(int a, int b) {
+        int dx = map.cellX(b) - map.cellX(a), dy = map.cellY(b) - map.cellY(a);
+        return dx > 0 ? Direction.RIGHT : dx < 0 ? Direction.LEFT : dy > 0 ? Direction.UP : Direction.DOWN;
+    }
+
+    private ClusterGraph.BfsFilter filter() {
+        return reservations == null ? null : unheld;
+    }
+
+    private void resetDist(int reached) {
+        for (int i = 0; i < reached; i++) dist[queue[i]] = -1;
+    }
+
+    private void ensurePath(int len) {
+        if (path.length < len) path = java.util.Arrays.copyOf(path, Math.max(len, path.length * 2));
+    }
+
+    @Override
+    public byte[] path() {
+        return path;
+    }
+
+    @Override
+    public int pathLength() {
+        return pathLength;
+    }
+
+    // abstract nodes expanded plus cells visited by the cluster searches
+    @Override
+    public int expanded() {
+        return expanded;
+    }
+}
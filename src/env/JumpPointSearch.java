@@ -0,0 +1,235 @@
+package env;
+
+/**
+ * Jump point search for 4-connected grids: A* whose successors are not the neighbouring cells
+ * but the next jump points in each direction, found by scanning straight lines. A horizontal
+ * scan stops at the goal and where an obstacle ends beside the line (a cell above or below
+ * that only this line reaches first: a forced neighbour); a vertical scan also stops where a
+ * horizontal scan from it would stop. Shortest paths of every other shape are pruned as
+ * symmetric to one of these, so across open ground a search expands a handful of jump points
+ * where A* would expand every cell of the route. Routes are as short as A*'s.
+ *
+ * The scans over the static obstacles come from the path service's {@link JumpTable} in O(1).
+ * With reservations the search first runs on the static obstacles and keeps the route if no
+ * other agent holds a cell of it; otherwise it searches again scanning cell by cell, with the
+ * held cells as obstacles.
+ *
+ * Buffers are allocated once, per-cell state is valid when its stamp equals the current
+ * generation, as in {@link PathFinder}. Not thread-safe: use one instance per thread.
+ */
+public class JumpPointSearch implements GridSearch {
+
+    private final PathService service;
+    private final GridMap map;
+    private JumpTable table;
+
+    // per-cell search state, valid when stamp[cell] == generation
+    private final int[] stamp;
+    private final int[] g;
+    private final int[] f;
+    private final int[] parent;    // previous jump point, -1 at the start
+    private final boolean[] closed;
+    private int generation = 0;
+    private final CellHeap open;
+
+    // the query in progress; scanning cell by cell (with reservations) or from the table
+    private int goal, gx, gy;
+    private boolean scanning;
+    private ReservationTable reservations;
+    private int agent;
+
+    private byte[] path = new byte[16];
+    private int pathLength = 0;
+    private int expanded = 0;
+
+    public JumpPointSearch(PathService service, GridMap map) {
+        this.service = service;
+        this.map = map;
+        int cells = map.cells();
+        stamp = new int[cells];
+        g = new int[cells];
+        f = new int[cells];
+        parent = new int[cells];
+        closed = new boolean[cells];
+        open = new CellHeap(cells, f, g);
+    }
+
+    @Override
+    public int search(int sx, int sy, int gx, int gy) {
+        return search(sx, sy, gx, gy, null, ReservationTable.FREE);
+    }
+
+    @Override
+    public int search(int sx, int sy, int gx, int gy, ReservationTable reservations, int agent) {
+        if (table == null) table = service.jumpTable();
+        int len = search(sx, sy, gx, gy, null, ReservationTable.FREE, false);
+        if (len <= 0 || reservations == null || !crossesHeld(sx, sy, len, reservations, agent)) return len;
+        int staticExpanded = expanded;
+        len = search(sx, sy, gx, gy, reservations, agent, true);
+        expanded += staticExpanded;
+        return len;
+    }
+
+    // whether a cell of the route found, before the goal, is held by another agent
+    private boolean crossesHeld(int x, int y, int len, ReservationTable reservations, int agent) {
+        for (int i = 0; i < len - 1; i++) {
+            x += Direction.DX[path[i]];
+            y += Direction.DY[path[i]];
+            if (reservations.heldByOther(map.cell(x, y), agent)) return true;
+        }
+        return false;
+    }
+
+    private int search(int sx, int sy, int gx, int gy, ReservationTable reservations, int agent, boolean scanning) {
+        pathLength = 0;
+        expanded = 0;
+        if (!map.free(gx, gy)) return -1;
+        if (++generation == Integer.MAX_VALUE) {
+            java.util.Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        open.clear();
+        this.goal = map.cell(gx, gy);
+        this.gx = gx;
+        this.gy = gy;
+        this.reservations = reservations;
+        this.agent = agent;
+        this.scanning = scanning;
+
+        int start = map.cell(sx, sy);
+        touch(start, 0, heuristic(sx, sy), -1);
+        open.push(start);
+        while (!open.isEmpty()) {
+            int cur = open.pop();
+            if (cur == goal) {
+                this.reservations = null;
+                return reconstruct(goal);
+            }
+            closed[cur] = true;
+            expanded++;
+            int cx = map.cellX(cur), cy = map.cellY(cur);
+            int p = parent[cur];
+            if (p < 0) {
+                for (int d = 0; d < 4; d++) successor(cur, cx, cy, Direction.DX[d], Direction.DY[d]);
+            } else {
+                // straight on and both sides, never back
+                int dx = Integer.signum(cx - map.cellX(p)), dy = Integer.signum(cy - map.cellY(p));
+                successor(cur, cx, cy, dx, dy);
+                successor(cur, cx, cy, dy, dx);
+                successor(cur, cx, cy, -dy, -dx);
+            }
+        }
+        this.reservations = null;
+        return -1;
+    }
+
+    private void successor(int cur, int cx, int cy, int dx, int dy) {
+        int jp = !scanning ? jump(cur, cx, cy, dx, dy) : dx != 0 ? jumpHorizontal(cx, cy, dx) : jumpVertical(cx, cy, dy);
+        if (jp < 0) return;
+        int jx = map.cellX(jp), jy = map.cellY(jp);
+        int newG = g[cur] + Math.abs(jx - cx) + Math.abs(jy - cy);
+        if (stamp[jp] != generation) {
+            touch(jp, newG, newG + heuristic(jx, jy), cur);
+            open.push(jp);
+        } else if (!closed[jp] && newG < g[jp]) {
+            f[jp] -= g[jp] - newG;
+            g[jp] = newG;
+            parent[jp] = cur;
+            open.decreased(jp);
+        }
+    }
+
+    // next jump point from the table: the goal if it lies on the line before the stop; a vertical
+    // scan also stops on the goal's row (one jump point more than needed, never one less)
+    private int jump(int cell, int x, int y, int dx, int dy) {
+        int dir = dx > 0 ? Direction.RIGHT : dx < 0 ? Direction.LEFT : dy > 0 ? Direction.UP : Direction.DOWN;
+        int v = table.jump(dir, cell);
+        int reach = Math.abs(v);
+        if (dx != 0) {
+            int ahead = (gx - x) * dx;
+            if (y == gy && ahead > 0 && ahead <= reach) return goal;
+            return v > 0 ? map.cell(x + dx * v, y) : -1;
+        }
+        int ahead = (gy - y) * dy;
+        if (ahead > 0 && ahead <= reach) return map.cell(x, gy);
+        return v > 0 ? map.cell(x, y + dy * v) : -1;
+    }
+
+    // next jump point from (x,y) moving along x, -1 if the line runs into an obstacle
+    private int jumpHorizontal(int x, int y, int dx) {
+        while (true) {
+            x += dx;
+            if (!passable(x, y)) return -1;
+            if (x == gx && y == gy) return goal;
+            if (passable(x, y - 1) && !passable(x - dx, y - 1)
+                    || passable(x, y + 1) && !passable(x - dx, y + 1)) {
+                return map.cell(x, y);
+            }
+        }
+    }
+
+    // next jump point from (x,y) moving along y: a forced neighbour, or a horizontal jump point
+    private int jumpVertical(int x, int y, int dy) {
+        while (true) {
+            y += dy;
+            if (!passable(x, y)) return -1;
+            if (x == gx && y == gy) return goal;
+            if (passable(x - 1, y) && !passable(x - 1, y - dy)
+                    || passable(x + 1, y) && !passable(x + 1, y - dy)
+                    || jumpHorizontal(x, y, 1) >= 0 || jumpHorizontal(x, y, -1) >= 0) {
+                return map.cell(x, y);
+            }
+        }
+    }
+
+    private boolean passable(int x, int y) {
+        if (!map.free(x, y)) return false;
+        if (reservations == null) return true;
+        int cell = map.cell(x, y);
+        return cell == goal || !reservations.heldByOther(cell, agent);
+    }
+
+    private int heuristic(int x, int y) {
+        return Math.abs(x - gx) + Math.abs(y - gy);
+    }
+
+    private void touch(int cell, int gv, int fv, int from) {
+        stamp[cell] = generation;
+        g[cell] = gv;
+        f[cell] = fv;
+        parent[cell] = from;
+        closed[cell] = false;
+        open.forget(cell);
+    }
+
+    // the straight legs between the jump points, back from the goal
+    private int reconstruct(int goal) {
+        int len = g[goal];
+        if (path.length < len) path = new byte[Math.max(len, path.length * 2)];
+        int i = len;
+        for (int cur = goal; parent[cur] >= 0; cur = parent[cur]) {
+            int p = parent[cur];
+            int dx = map.cellX(cur) - map.cellX(p), dy = map.cellY(cur) - map.cellY(p);
+            byte d = (byte) (dx > 0 ? Direction.RIGHT : dx < 0 ? Direction.LEFT : dy > 0 ? Direction.UP : Direction.DOWN);
+            for (int k = Math.abs(dx) + Math.abs(dy); k > 0; k--) path[--i] = d;
+        }
+        pathLength = len;
+        return len;
+    }
+
+    @Override
+    public byte[] path() {
+        return path;
+    }
+
+    @Override
+    public int pathLength() {
+        return pathLength;
+    }
+
+    // jump points expanded by the last search
+    @Override
+    public int expanded() {
+        return expanded;
+    }
+}
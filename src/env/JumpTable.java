@@ -0,0 +1,76 @@
+package env;
+
+/**
+ * Precomputed jumps of {@link JumpPointSearch} over the static obstacles (as in JPS+): for
+ * every free cell and direction, how far the straight scan of the search goes before it stops.
+ * A positive entry d means the scan finds a jump point d cells away; an entry -d means it runs
+ * into an obstacle or the border after d free cells. Built in one sweep per direction and
+ * read-only afterwards, so the searches of every thread share it; a jump then costs O(1)
+ * instead of a scan, and only the goal (which can lie on any line) is checked at query time.
+ */
+final class JumpTable {
+
+    private final GridMap map;
+    // jumps[dir][cell], dir as in Direction
+    private final int[][] jumps = new int[4][];
+
+    JumpTable(GridMap map) {
+        this.map = map;
+        int cells = map.cells();
+        for (int d = 0; d < 4; d++) jumps[d] = new int[cells];
+        // horizontal scans first: a vertical scan stops where one of them finds a jump point
+        for (int y = 1; y <= map.height(); y++) {
+            sweep(Direction.RIGHT, map.width(), 1, -1, y, true);
+            sweep(Direction.LEFT, 1, map.width(), 1, y, true);
+        }
+        for (int x = 1; x <= map.width(); x++) {
+            sweep(Direction.UP, map.height(), 1, -1, x, false);
+            sweep(Direction.DOWN, 1, map.height(), 1, x, false);
+        }
+    }
+
+    // one line of cells, from the far end back toward the scan's origin
+    private void sweep(int dir, int from, int to, int step, int line, boolean horizontal) {
+        int[] table = jumps[dir];
+        int dx = Direction.DX[dir], dy = Direction.DY[dir];
+        int ahead = 0;      // the entry of the cell one step further on
+        boolean aheadFree = false, aheadStops = false;
+        for (int i = from; i != to + step; i += step) {
+            int x = horizontal ? i : line, y = horizontal ? line : i;
+            if (!map.free(x, y)) {
+                aheadFree = false;
+                continue;
+            }
+            int cell = map.cell(x, y);
+            if (!aheadFree) {
+                table[cell] = 0;
+            } else if (aheadStops) {
+                table[cell] = 1;
+            } else {
+                table[cell] = ahead > 0 ? ahead + 1 : ahead - 1;
+            }
+            ahead = table[cell];
+            aheadFree = true;
+            // does a scan coming from behind stop on this cell?
+            aheadStops = horizontal ? forcedHorizontal(x, y, dx) : forcedVertical(x, y, dy) || stopsHorizontally(cell);
+        }
+    }
+
+    // a cell above or below that is free while the one behind it is not
+    private boolean forcedHorizontal(int x, int y, int dx) {
+        return map.free(x, y - 1) && !map.free(x - dx, y - 1) || map.free(x, y + 1) && !map.free(x - dx, y + 1);
+    }
+
+    private boolean forcedVertical(int x, int y, int dy) {
+        return map.free(x - 1, y) && !map.free(x - 1, y - dy) || map.free(x + 1, y) && !map.free(x + 1, y - dy);
+    }
+
+    private boolean stopsHorizontally(int cell) {
+        return jumps[Direction.RIGHT][cell] > 0 || jumps[Direction.LEFT][cell] > 0;
+    }
+
+    /** The entry of a free cell for a direction (see the class comment). */
+    int jump(int dir, int cell) {
+        return jumps[dir][cell];
+    }
+}
@@ -0,0 +1,63 @@
+package env;
+
+/**
+ * The state of a {@link SimKernel} at one point of an episode in a few primitive arrays:
+ * one packed long per object (position, flags, holder) and per agent (position, inventory),
+ * the agents' step counts and rewards, the clock, the goal flags and the waypoints the
+ * patrolling objects head for. Taken with {@link SimKernel#snapshot(KernelSnapshot)} and put
+ * back with {@link SimKernel#restore}, in this kernel or in another one over the same map:
+ * a copy costs a few hundred bytes and allocates nothing once the arrays have their size,
+ * so a planner can branch the state thousands of times per decision.
+ *
+ * Not part of it: the random generator (a restored kernel draws its own object moves) and
+ * the cells agents hold ahead on their routes (after a restore each agent holds its own cell).
+ */
+public final class KernelSnapshot {
+
+    // objects: x | y << 16 | flags << 32 | (holder + 1) << 48
+    long[] objects = new long[0];
+    // agents: x | y << 16 | carrying << 32 | incompatibleCarried << 48
+    long[] agents = new long[0];
+    int[] stepCounts = new int[0];
+    double[] rewards = new double[0];
+    long ticks, simMillis;
+    int episode;
+    long episodeSeed;
+    boolean doorOpened, dynamicObjects;
+    // waypoint each patrolling object is heading for
+    int[] patrols = new int[0];
+
+    void size(int objectCount, int agentCount) {
+        if (objects.length != objectCount) objects = new long[objectCount];
+        if (agents.length != agentCount) {
+            agents = new long[agentCount];
+            stepCounts = new int[agentCount];
+            rewards = new double[agentCount];
+        }
+    }
+
+    static long packObject(int x, int y, int flags, int holder) {
+        return (x & 0xFFFFL) | (y & 0xFFFFL) << 16 | (flags & 0xFFFFL) << 32 | (long) (holder + 1) << 48;
+    }
+
+    static long packAgent(int x, int y, int carrying, int incompatible) {
+        return (x & 0xFFFFL) | (y & 0xFFFFL) << 16 | (carrying & 0xFFFFL) << 32 | (long) incompatible << 48;
+    }
+
+    // the 16-bit field of a packed long at bit 'shift'
+    static int field(long packed, int shift) {
+        return (int) (packed >>> shift) & 0xFFFF;
+    }
+
+    public int agents() {
+        return agents.length;
+    }
+
+    public long ticks() {
+        return ticks;
+    }
+
+    public int episode() {
+        return episode;
+    }
+}
@@ -0,0 +1,204 @@
+package env;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Loads a {@link GridMap} from a map file. The file is memory-mapped and parsed in
+ * place, so large maps are not copied into strings first. Format (one entry per line,
+ * '#' at the start of a line is a comment):
+ *
+ * <pre>
+ * size W H            grid of W x H usable cells (required, first entry)
+ * agent X Y           agent start cell (default 1 1)
+ * capacity N          agent carrying capacity (default 3)
+ * object NAME X Y     initial position of an object
+ * obstacle X Y        a single obstacle
+ * move NAME walk [stay P]
+ *                     the object (declared above) takes a random step when objects move,
+ *                     sitting out a move with probability P (default 0)
+ * move NAME patrol X1 Y1 ... Xn Yn [stay P]
+ *                     the object walks the waypoints in a loop, a step per move
+ * move NAME still     the object never moves (t, ch and d walk unless told otherwise)
+ * grid                followed by H rows of W characters, top row is y = H:
+ *                     '#' or 'X' obstacle, anything else free
+ * </pre>
+ */
+public class MapLoader {
+
+    private final MappedByteBuffer buf;
+    private final String file;
+    private int line = 1;
+
+    private MapLoader(MappedByteBuffer buf, String file) {
+        this.buf = buf;
+        this.file = file;
+    }
+
+    public static GridMap load(String file) throws IOException {
+        Path path = Paths.get(file);
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new MapLoader(buf, file).parse();
+        }
+    }
+
+    private GridMap parse() throws IOException {
+        try {
+            return parseEntries();
+        } catch (IllegalArgumentException e) {
+            throw error(e.getMessage());
+        }
+    }
+
+    private GridMap parseEntries() throws IOException {
+        GridMap map = null;
+        while (buf.hasRemaining()) {
+            skipBlanks();
+            if (!buf.hasRemaining()) break;
+            byte b = buf.get(buf.position());
+            if (b == '\n' || b == '\r') {
+                nextLine();
+                continue;
+            }
+            if (b == '#') {
+                skipLine();
+                continue;
+            }
+            String key = word();
+            if (key.equals("size")) {
+                if (map != null) throw error("size given twice");
+                map = new GridMap(number(), number());
+            } else if (map == null) {
+                throw error("the first entry must be 'size W H'");
+            } else if (key.equals("agent")) {
+                map.setStart(number(), number());
+            } else if (key.equals("capacity")) {
+                map.setCapacity(number());
+            } else if (key.equals("object")) {
+                map.addObject(word(), number(), number());
+            } else if (key.equals("move")) {
+                String name = word();
+                map.setMovement(name, movement());
+            } else if (key.equals("obstacle")) {
+                map.setObstacle(number(), number(), true);
+            } else if (key.equals("grid")) {
+                skipLine();
+                readGrid(map);
+                continue;
+            } else {
+                throw error("unknown entry '" + key + "'");
+            }
+            skipLine();
+        }
+        if (map == null) throw error("empty map");
+        return map;
+    }
+
+    // the rest of a 'move' entry after the object name
+    private MovementModel movement() throws IOException {
+        String kind = word();
+        if (kind.equals("still")) return MovementModel.NONE;
+        if (!kind.equals("walk") && !kind.equals("patrol")) throw error("unknown movement '" + kind + "'");
+        int[] xy = new int[8];
+        int n = 0;
+        double stay = 0.0;
+        while (moreOnLine()) {
+            String w = word();
+            if (w.equals("stay")) {
+                stay = probability();
+                break;
+            }
+            if (!kind.equals("patrol")) throw error("unexpected '" + w + "'");
+            if (n == xy.length) xy = java.util.Arrays.copyOf(xy, 2 * n);
+            xy[n++] = parseNumber(w);
+        }
+        return kind.equals("walk") ? MovementModel.walk(stay) : MovementModel.patrol(stay, java.util.Arrays.copyOf(xy, n));
+    }
+
+    private void readGrid(GridMap map) throws IOException {
+        for (int y = map.height(); y >= 1; y--) {
+            for (int x = 1; x <= map.width(); x++) {
+                if (!buf.hasRemaining()) throw error("grid has fewer than " + map.height() + " rows");
+                byte b = buf.get();
+                if (b == '\n' || b == '\r') throw error("grid row shorter than " + map.width());
+                if (b == '#' || b == 'X') map.setObstacle(x, y, true);
+            }
+            skipLine();
+        }
+    }
+
+    private void skipBlanks() {
+        while (buf.hasRemaining()) {
+            byte b = buf.get(buf.position());
+            if (b != ' ' && b != '\t') break;
+            buf.get();
+        }
+    }
+
+    // consume up to and including the end of the current line
+    private void skipLine() {
+        while (buf.hasRemaining()) {
+            byte b = buf.get();
+            if (b == '\n') {
+                line++;
+                return;
+            }
+        }
+    }
+
+    private void nextLine() {
+        byte b = buf.get();
+        if (b == '\r' && buf.hasRemaining() && buf.get(buf.position()) == '\n') buf.get();
+        line++;
+    }
+
+    private String word() throws IOException {
+        skipBlanks();
+        StringBuilder sb = new StringBuilder();
+        while (buf.hasRemaining()) {
+            byte b = buf.get(buf.position());
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r') break;
+            sb.append((char) buf.get());
+        }
+        if (sb.length() == 0) throw error("missing value");
+        return sb.toString();
+    }
+
+    // more words before the end of the line
+    private boolean moreOnLine() {
+        skipBlanks();
+        if (!buf.hasRemaining()) return false;
+        byte b = buf.get(buf.position());
+        return b != '\n' && b != '\r';
+    }
+
+    private int number() throws IOException {
+        return parseNumber(word());
+    }
+
+    private int parseNumber(String w) throws IOException {
+        try {
+            return Integer.parseInt(w);
+        } catch (NumberFormatException e) {
+            throw error("expected a number, found '" + w + "'");
+        }
+    }
+
+    private double probability() throws IOException {
+        String w = word();
+        try {
+            return Double.parseDouble(w);
+        } catch (NumberFormatException e) {
+            throw error("expected a probability, found '" + w + "'");
+        }
+    }
+
+    private IOException error(String msg) {
+        return new IOException(file + ":" + line + ": " + msg);
+    }
+}
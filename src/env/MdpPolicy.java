@@ -0,0 +1,273 @@
+package env;
+
+import java.util.Arrays;
+
+/**
+ * Optimal policy of the single-agent game of {@link SimKernel} played one primitive action at
+ * a time, computed by {@link MdpSolver}: the best action of every state, looked up in O(1).
+ *
+ * A state is the agent's cell, the status of each tool (on its map cell, carried, or dropped
+ * for good once its goals are done), the goals done, the cells of the targets not done yet and
+ * the clock phase (t, ch and d move when the tick after the action is a multiple of
+ * SimKernel.DYNAMIC_PERIOD, each to a random free neighbour as in moveObjectRandomly).
+ * The model leaves out what would multiply the state space: targets that are done, and
+ * dropped tools, do not block target moves, and the targets do not block each other. Tool
+ * home cells always block them, so a target that walks onto the cell of a tool carried away
+ * is outside the model: lookup gives NONE and act waits for it to move on.
+ */
+public class MdpPolicy implements Policy {
+
+    // actions of the table: 0..3 move in that Direction, then WAIT (any action that fails
+    // costs nothing and only lets the clock tick), PICKUP/DROP + tool, PAINT t/ch, OPEN d
+    static final int WAIT = 4;
+    static final int PICKUP = 5;
+    static final int DROP = PICKUP + 4;
+    static final int PAINT_T = DROP + 4;
+    static final int PAINT_CH = PAINT_T + 1;
+    static final int OPEN_D = PAINT_CH + 1;
+    static final int NONE = -1;
+
+    // tool status, 2 bits per tool (b, cl, k, cd) in a mode key, the goals done above them
+    static final int HOME = 0;
+    static final int CARRIED = 1;
+    static final int GONE = 2;
+    static final int TOOLS = 4;
+    static final int GOALS_SHIFT = 2 * TOOLS;
+    static final int ALL_GOALS = 7;
+    static final int PHASES = SimKernel.DYNAMIC_PERIOD;
+
+    final GridMap map;
+    final int capacity;
+    // object ids (registry order = map order) of b, cl, k, cd and of t, ch, d
+    final int[] toolIds = new int[TOOLS];
+    final int[] targetIds = new int[3];
+    final int[] toolCell = new int[TOOLS];
+    // dense indices of the cells the agent can stand on and of the cells a target can be on
+    // (free cells without a tool home cell), -1 elsewhere
+    final int[] agentIndex, agentCells;
+    final int[] targetIndex, targetCells;
+
+    // modes: tool statuses and goals reachable from the start, without the terminal ones
+    final int[] modeOf = new int[1 << (GOALS_SHIFT + 3)];
+    final int[] modeKey;
+    // targets still to be done (0 t, 1 ch, 2 d): the digits of the target part of a state index
+    final int[][] pending;
+    // tools carried; number of target configurations (targetCells^pending)
+    final int[] carried;
+    final int[] configs;
+
+    // per mode: value and best action of state ((phase * agentCells + agent) * configs + targets)
+    final double[][] values;
+    final byte[][] actions;
+    int sweeps;
+    double expectedReward;
+
+    MdpPolicy(GridMap map) {
+        this.map = map;
+        this.capacity = map.capacity();
+        String[] tools = {"b", "cl", "k", "cd"};
+        String[] targets = {"t", "ch", "d"};
+        for (int i = 0; i < TOOLS; i++) {
+            toolIds[i] = map.objectNames().indexOf(tools[i]);
+            int[] pos = map.objectPosition(toolIds[i]);
+            toolCell[i] = map.cell(pos[0], pos[1]);
+        }
+        for (int j = 0; j < 3; j++) targetIds[j] = map.objectNames().indexOf(targets[j]);
+
+        agentIndex = new int[map.cells()];
+        targetIndex = new int[map.cells()];
+        Arrays.fill(agentIndex, -1);
+        Arrays.fill(targetIndex, -1);
+        int a = 0, t = 0;
+        for (int x = 1; x <= map.width(); x++) {
+            for (int y = 1; y <= map.height(); y++) {
+                if (map.blocked(x, y)) continue;
+                int cell = map.cell(x, y);
+                agentIndex[cell] = a++;
+                if (!isToolCell(cell)) targetIndex[cell] = t++;
+            }
+        }
+        agentCells = new int[a];
+        targetCells = new int[t];
+        for (int cell = 0; cell < map.cells(); cell++) {
+            if (agentIndex[cell] >= 0) agentCells[agentIndex[cell]] = cell;
+            if (targetIndex[cell] >= 0) targetCells[targetIndex[cell]] = cell;
+        }
+
+        // modes reachable from "all tools home, no goal done" (depth first over the key space)
+        Arrays.fill(modeOf, NONE);
+        int[] keys = new int[modeOf.length];
+        int count = 0;
+        int[] stack = new int[modeOf.length];
+        int top = 0;
+        stack[top++] = 0;
+        modeOf[0] = count;
+        keys[count++] = 0;
+        while (top > 0) {
+            int key = stack[--top];
+            for (int action = PICKUP; action <= OPEN_D; action++) {
+                int next = nextKey(key, action);
+                if (next < 0 || goals(next) == ALL_GOALS || modeOf[next] != NONE) continue;
+                modeOf[next] = count;
+                keys[count++] = next;
+                stack[top++] = next;
+            }
+        }
+        modeKey = Arrays.copyOf(keys, count);
+        pending = new int[count][];
+        carried = new int[count];
+        configs = new int[count];
+        for (int m = 0; m < count; m++) {
+            int key = modeKey[m], k = 0;
+            int[] p = new int[3];
+            for (int j = 0; j < 3; j++) {
+                if ((goals(key) & (1 << j)) == 0) p[k++] = j;
+            }
+            pending[m] = Arrays.copyOf(p, k);
+            for (int i = 0; i < TOOLS; i++) {
+                if (status(key, i) == CARRIED) carried[m]++;
+            }
+            long size = 1;
+            for (int j = 0; j < k; j++) size *= targetCells.length;
+            configs[m] = (int) Math.min(size, Integer.MAX_VALUE);
+        }
+        values = new double[count][];
+        actions = new byte[count][];
+    }
+
+    private boolean isToolCell(int cell) {
+        for (int c : toolCell) {
+            if (c == cell) return true;
+        }
+        return false;
+    }
+
+    static int status(int key, int tool) {
+        return (key >>> (2 * tool)) & 3;
+    }
+
+    static int goals(int key) {
+        return key >>> GOALS_SHIFT;
+    }
+
+    // tools b, cl serve the paint goals (bits 0, 1), k, cd the door (bit 2)
+    private static int goalsOf(int tool) {
+        return tool < 2 ? 3 : 4;
+    }
+
+    /**
+     * Mode key after a tool or goal action, regardless of where the agent and the targets are;
+     * -1 if the action is not possible in that mode. A tool is only dropped once its goals are done.
+     */
+    int nextKey(int key, int action) {
+        int goals = goals(key);
+        if (action >= PICKUP && action < DROP) {
+            int tool = action - PICKUP;
+            int n = 0;
+            for (int i = 0; i < TOOLS; i++) {
+                if (status(key, i) == CARRIED) n++;
+            }
+            if (status(key, tool) != HOME || n >= capacity) return -1;
+            return key | CARRIED << (2 * tool);
+        }
+        if (action >= DROP && action < PAINT_T) {
+            int tool = action - DROP;
+            if (status(key, tool) != CARRIED || (goals & goalsOf(tool)) != goalsOf(tool)) return -1;
+            return (key & ~(3 << (2 * tool))) | GONE << (2 * tool);
+        }
+        if (action == PAINT_T || action == PAINT_CH) {
+            int goal = action - PAINT_T;
+            if (status(key, 0) != CARRIED || status(key, 1) != CARRIED || (goals & (1 << goal)) != 0) return -1;
+            return key | 1 << (GOALS_SHIFT + goal);
+        }
+        if (action == OPEN_D) {
+            if (status(key, 2) != CARRIED || status(key, 3) != CARRIED || (goals & 4) != 0) return -1;
+            return key | 4 << GOALS_SHIFT;
+        }
+        return -1;
+    }
+
+    /** Number of states of the model. */
+    public long states() {
+        long n = 0;
+        for (int m = 0; m < modeKey.length; m++) n += (long) PHASES * agentCells.length * configs[m];
+        return n;
+    }
+
+    public int modes() {
+        return modeKey.length;
+    }
+
+    /** Sweeps value iteration needed, over all modes. */
+    public int sweeps() {
+        return sweeps;
+    }
+
+    /**
+     * Expected reward of an episode played with this policy from the start of an episode
+     * (agent on the start cell, t, ch and d placed as SimKernel.resetEpisode places them): no
+     * policy acting through primitive actions does better in expectation on this model.
+     */
+    public double expectedReward() {
+        return expectedReward;
+    }
+
+    // ----------- LOOKUP -----------
+    /** Table action for agent self in the kernel's current state, NONE if the state is outside the model. */
+    int lookup(SimKernel sim, SimAgent self) {
+        ObjectRegistry objects = sim.objects();
+        int goals = 0;
+        if (objects.has(targetIds[0], ObjectRegistry.COLORED)) goals |= 1;
+        if (objects.has(targetIds[1], ObjectRegistry.COLORED)) goals |= 2;
+        if (sim.doorOpened()) goals |= 4;
+        int key = goals << GOALS_SHIFT, n = 0;
+        for (int i = 0; i < TOOLS; i++) {
+            int id = toolIds[i], holder = sim.holder(id);
+            int status;
+            if (holder == self.id) {
+                status = CARRIED;
+                n++;
+            } else if (holder >= 0) {
+                return NONE;
+            } else if ((goals & goalsOf(i)) == goalsOf(i)) {
+                // not needed any more, wherever it lies
+                status = GONE;
+            } else {
+                status = map.cell(objects.x(id), objects.y(id)) == toolCell[i] ? HOME : GONE;
+            }
+            key |= status << (2 * i);
+        }
+        if (n != self.carrying) return NONE;
+        int m = modeOf[key];
+        int agent = agentIndex[map.cell(self.x, self.y)];
+        if (m == NONE || agent < 0) return NONE;
+        int config = 0, weight = 1;
+        for (int j : pending[m]) {
+            int id = targetIds[j];
+            int t = targetIndex[map.cell(objects.x(id), objects.y(id))];
+            if (t < 0) return NONE;
+            config += t * weight;
+            weight *= targetCells.length;
+        }
+        int phase = (int) (sim.clock().ticks() % PHASES);
+        return actions[m][(phase * agentCells.length + agent) * configs[m] + config];
+    }
+
+    /** Object id of the tool or target a table action works on. */
+    int object(int action) {
+        if (action >= PICKUP && action < DROP) return toolIds[action - PICKUP];
+        if (action >= DROP && action < PAINT_T) return toolIds[action - DROP];
+        return targetIds[action - PAINT_T];
+    }
+
+    @Override
+    public int act(SimKernel sim, SimAgent self) {
+        int action = lookup(sim, self);
+        if (action == NONE || action == WAIT) return SimKernel.action(SimKernel.WAIT, 0);
+        if (action < WAIT) return SimKernel.action(SimKernel.MOVE, action);
+        if (action < DROP) return SimKernel.action(SimKernel.PICKUP, object(action));
+        if (action < PAINT_T) return SimKernel.action(SimKernel.DROP, object(action));
+        if (action == OPEN_D) return SimKernel.action(SimKernel.OPEN, object(action));
+        return SimKernel.action(SimKernel.PAINT, object(action));
+    }
+}
@@ -0,0 +1,389 @@
+package env;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.DoubleAccumulator;
+
+/**
+ * Value iteration for the {@link MdpPolicy} model. Modes (tool statuses and goals done) only
+ * ever move forward, so they are solved one at a time, the later ones first: within a mode
+ * every action ticks the clock, so the values of one phase only depend on the next phase (or,
+ * after the object moves, on the expected values of phase 0) and all states of a phase are
+ * updated in parallel on a fork-join pool, split by agent cell. The expectation over the moves
+ * of the targets is taken one target at a time (they move independently), 5 terms per target
+ * instead of 5^3 per state.
+ *
+ * Values start below every optimal value and rise to it: a failed action costs nothing, so
+ * starting from above would leave "wait forever" at any value.
+ *
+ * gradle solveMdp [-Pmas.map=FILE] [-Pmdp.threads=N] [-Pmdp.episodes=N] prints the model size,
+ * the expected optimal episode reward and the mean reward of simulated episodes.
+ */
+public final class MdpSolver {
+
+    // largest model solved (states over all modes)
+    static final long STATE_LIMIT = 60_000_000L;
+    static final double EPSILON = 1e-9;
+    private static final int MAX_SWEEPS = 100_000;
+    // an action earlier in the preference order keeps its place unless a later one is better by this
+    private static final double TIE = 1e-7;
+    private static final double UNSOLVED = -1e3;
+    // preference order of the tool and goal actions; the moves come after them, WAIT last
+    private static final int[] ORDER = {MdpPolicy.PAINT_T, MdpPolicy.PAINT_CH, MdpPolicy.OPEN_D,
+        MdpPolicy.PICKUP, MdpPolicy.PICKUP + 1, MdpPolicy.PICKUP + 2, MdpPolicy.PICKUP + 3,
+        MdpPolicy.DROP, MdpPolicy.DROP + 1, MdpPolicy.DROP + 2, MdpPolicy.DROP + 3};
+    // agent cells per fork-join leaf task
+    private static final int CHUNK = 2;
+
+    private final MdpPolicy p;
+    private final GridMap map;
+    private final int agents, cells;
+    // expected phase-0 values of each solved mode after the targets moved: [agent * configs + targets]
+    private final double[][] moved;
+    // target moves: up to 5 destinations (target cell indices) with their probabilities per cell
+    private final int[][] moveTo;
+    private final double[][] moveP;
+    // agent moves: destination agent cell per Direction (the same cell at the border, -1 into an
+    // obstacle, which fails like WAIT); target cells on or next to each agent cell
+    private final int[][] moveDest;
+    private final boolean[][] adjacent;
+    private final ForkJoinPool pool;
+
+    private MdpSolver(MdpPolicy p, int threads) {
+        this.p = p;
+        this.map = p.map;
+        this.agents = p.agentCells.length;
+        this.cells = p.targetCells.length;
+        this.moved = new double[p.modes()][];
+        this.pool = new ForkJoinPool(threads);
+        moveTo = new int[cells][];
+        moveP = new double[cells][];
+        int[] dirs = {Direction.RIGHT, Direction.LEFT, Direction.UP, Direction.DOWN};
+        for (int t = 0; t < cells; t++) {
+            int cell = p.targetCells[t], x = map.cellX(cell), y = map.cellY(cell);
+            int[] to = new int[5];
+            int n = 0;
+            for (int d : dirs) {
+                int nx = x + Direction.DX[d], ny = y + Direction.DY[d];
+                if (map.free(nx, ny) && p.targetIndex[map.cell(nx, ny)] >= 0) to[n++] = p.targetIndex[map.cell(nx, ny)];
+            }
+            // moveObjectRandomly draws up to 10 directions and keeps the first valid one
+            double stay = Math.pow((4 - n) / 4.0, 10);
+            moveTo[t] = Arrays.copyOf(to, n + (stay > 0 ? 1 : 0));
+            moveP[t] = new double[moveTo[t].length];
+            for (int k = 0; k < n; k++) moveP[t][k] = (1 - stay) / n;
+            if (stay > 0) {
+                moveTo[t][n] = t;
+                moveP[t][n] = stay;
+            }
+        }
+        moveDest = new int[agents][4];
+        adjacent = new boolean[agents][cells];
+        for (int a = 0; a < agents; a++) {
+            int cell = p.agentCells[a], x = map.cellX(cell), y = map.cellY(cell);
+            for (int d = 0; d < 4; d++) {
+                int nx = x + Direction.DX[d], ny = y + Direction.DY[d];
+                if (!map.inside(nx, ny)) moveDest[a][d] = a;
+                else moveDest[a][d] = map.blocked(nx, ny) ? -1 : p.agentIndex[map.cell(nx, ny)];
+            }
+            for (int t = 0; t < cells; t++) {
+                int target = p.targetCells[t];
+                adjacent[a][t] = Math.abs(map.cellX(target) - x) + Math.abs(map.cellY(target) - y) <= 1;
+            }
+        }
+    }
+
+    /**
+     * Solves the model of the map on 'threads' threads.
+     * @throws IllegalStateException if the map has more than STATE_LIMIT states
+     */
+    public static MdpPolicy solve(GridMap map, int threads) {
+        MdpPolicy p = new MdpPolicy(map);
+        if (p.states() > STATE_LIMIT) {
+            throw new IllegalStateException("MDP of a " + map.width() + "x" + map.height() + " map has "
+                    + p.states() + " states, more than " + STATE_LIMIT);
+        }
+        MdpSolver solver = new MdpSolver(p, threads);
+        try {
+            Integer[] order = new Integer[p.modes()];
+            for (int m = 0; m < order.length; m++) order[m] = m;
+            // later modes first: a mode only leads to modes with more tools taken or goals done
+            Arrays.sort(order, (a, b) -> Integer.compare(progress(p.modeKey[b]), progress(p.modeKey[a])));
+            for (int m : order) solver.solveMode(m);
+            p.expectedReward = solver.startValue();
+        } finally {
+            solver.pool.shutdown();
+        }
+        return p;
+    }
+
+    private static int progress(int key) {
+        int n = Integer.bitCount(MdpPolicy.goals(key));
+        for (int i = 0; i < MdpPolicy.TOOLS; i++) n += MdpPolicy.status(key, i);
+        return n;
+    }
+
+    private void solveMode(int m) {
+        int size = agents * p.configs[m];
+        p.values[m] = new double[MdpPolicy.PHASES * size];
+        p.actions[m] = new byte[MdpPolicy.PHASES * size];
+        Arrays.fill(p.values[m], UNSOLVED);
+        moved[m] = new double[size];
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            expectMoves(m);
+            DoubleAccumulator delta = new DoubleAccumulator(Math::max, 0.0);
+            for (int phase = MdpPolicy.PHASES - 1; phase >= 0; phase--) {
+                pool.invoke(new Update(m, phase, 0, agents, delta));
+            }
+            p.sweeps++;
+            if (delta.get() < EPSILON) break;
+        }
+        expectMoves(m);
+    }
+
+    // moved[m] = expected phase-0 values of mode m once its pending targets made their random move
+    private void expectMoves(int m) {
+        int configs = p.configs[m];
+        double[] in = Arrays.copyOf(p.values[m], agents * configs);
+        double[] out = moved[m];
+        int weight = 1;
+        for (int j = 0; j < p.pending[m].length; j++) {
+            pool.invoke(new Expect(in, out, configs, weight, 0, agents));
+            double[] swap = in;
+            in = out;
+            out = swap;
+            weight *= cells;
+        }
+        if (in != moved[m]) System.arraycopy(in, 0, moved[m], 0, in.length);
+    }
+
+    // one pass of the expectation: the target at digit 'weight' of the configuration moves
+    @SuppressWarnings("serial")
+    private final class Expect extends RecursiveAction {
+        private final double[] in, out;
+        private final int configs, weight, from, to;
+
+        Expect(double[] in, double[] out, int configs, int weight, int from, int to) {
+            this.in = in;
+            this.out = out;
+            this.configs = configs;
+            this.weight = weight;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Expect(in, out, configs, weight, from, mid), new Expect(in, out, configs, weight, mid, to));
+                return;
+            }
+            int block = weight * cells;
+            for (int a = from; a < to; a++) {
+                for (int high = a * configs, end = high + configs; high < end; high += block) {
+                    for (int t = 0; t < cells; t++) {
+                        int[] dest = moveTo[t];
+                        double[] prob = moveP[t];
+                        int at = high + t * weight;
+                        for (int low = 0; low < weight; low++) {
+                            double sum = 0.0;
+                            for (int k = 0; k < dest.length; k++) sum += prob[k] * in[high + dest[k] * weight + low];
+                            out[at + low] = sum;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Bellman update of the states of one phase of mode m, agent cells from..to-1
+    @SuppressWarnings("serial")
+    private final class Update extends RecursiveAction {
+        private final int m, phase, from, to;
+        private final DoubleAccumulator delta;
+
+        Update(int m, int phase, int from, int to, DoubleAccumulator delta) {
+            this.m = m;
+            this.phase = phase;
+            this.from = from;
+            this.to = to;
+            this.delta = delta;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Update(m, phase, from, mid, delta), new Update(m, phase, mid, to, delta));
+                return;
+            }
+            int key = p.modeKey[m], configs = p.configs[m], pending = p.pending[m].length;
+            int carried = p.carried[m];
+            double moveCost = carried == 0 ? -0.01 : -0.02 * carried;
+            boolean moves = phase == MdpPolicy.PHASES - 1;
+            int next = (phase + 1) % MdpPolicy.PHASES;
+            // successor values in this mode: after the object moves, or of the next phase
+            double[] same = moves ? moved[m] : p.values[m];
+            int sameBase = moves ? 0 : next * agents * configs;
+
+            // the tool and goal actions possible in this mode, in preference order
+            int n = 0;
+            int[] action = new int[ORDER.length], digit = new int[ORDER.length], weight = new int[ORDER.length];
+            int[] base = new int[ORDER.length], nextConfigs = new int[ORDER.length];
+            double[] reward = new double[ORDER.length];
+            double[][] succ = new double[ORDER.length][];
+            for (int act : ORDER) {
+                if (act <= MdpPolicy.WAIT) continue;
+                int nextKey = p.nextKey(key, act);
+                if (nextKey < 0) continue;
+                action[n] = act;
+                digit[n] = -1;
+                if (act >= MdpPolicy.PAINT_T) {
+                    int goal = act - MdpPolicy.PAINT_T;
+                    reward[n] = goal == 2 ? 0.8 : 1.0;
+                    weight[n] = 1;
+                    for (int j = 0; p.pending[m][j] != goal; j++) weight[n] *= cells;
+                    for (int j = 0; j < pending; j++) {
+                        if (p.pending[m][j] == goal) digit[n] = j;
+                    }
+                }
+                if (MdpPolicy.goals(nextKey) != MdpPolicy.ALL_GOALS) {
+                    int m2 = p.modeOf[nextKey];
+                    nextConfigs[n] = p.configs[m2];
+                    succ[n] = moves ? moved[m2] : p.values[m2];
+                    base[n] = moves ? 0 : next * agents * p.configs[m2];
+                }
+                n++;
+            }
+
+            double[] values = p.values[m];
+            byte[] actions = p.actions[m];
+            int[] digits = new int[3];
+            double maxDelta = 0.0;
+            for (int a = from; a < to; a++) {
+                int cell = p.agentCells[a];
+                int[] dest = moveDest[a];
+                boolean[] near = adjacent[a];
+                digits[0] = digits[1] = digits[2] = 0;
+                for (int c = 0; c < configs; c++) {
+                    double best = Double.NEGATIVE_INFINITY;
+                    int bestAction = MdpPolicy.WAIT;
+                    for (int k = 0; k < n; k++) {
+                        int act = action[k], nextConfig = c;
+                        if (digit[k] >= 0) {
+                            // paint/open: the target must be on the agent's cell or next to it,
+                            // then it is done and its digit leaves the configuration
+                            if (!near[digits[digit[k]]]) continue;
+                            int w = weight[k];
+                            nextConfig = c % w + c / (w * cells) * w;
+                        } else if (act < MdpPolicy.DROP && p.toolCell[act - MdpPolicy.PICKUP] != cell) {
+                            continue;
+                        }
+                        double q = reward[k] + (succ[k] == null ? 0.0 : succ[k][base[k] + a * nextConfigs[k] + nextConfig]);
+                        if (q > best + TIE) {
+                            best = q;
+                            bestAction = act;
+                        }
+                    }
+                    for (int d = 0; d < 4; d++) {
+                        if (dest[d] < 0) continue;
+                        double q = moveCost + same[sameBase + dest[d] * configs + c];
+                        if (q > best + TIE) {
+                            best = q;
+                            bestAction = d;
+                        }
+                    }
+                    double q = same[sameBase + a * configs + c];
+                    if (q > best + TIE) {
+                        best = q;
+                        bestAction = MdpPolicy.WAIT;
+                    }
+                    int s = (phase * agents + a) * configs + c;
+                    maxDelta = Math.max(maxDelta, Math.abs(best - values[s]));
+                    values[s] = best;
+                    actions[s] = (byte) bestAction;
+                    // next configuration: digits as an odometer
+                    for (int j = 0; j < pending && ++digits[j] == cells; j++) digits[j] = 0;
+                }
+            }
+            delta.accumulate(maxDelta);
+        }
+    }
+
+    // expected value at the start of an episode: agent on the start cell at tick 0, t, ch, d
+    // drawn one after the other on the free cells that hold no object and are not the start cell
+    private double startValue() {
+        boolean[] others = new boolean[map.cells()];
+        for (int i = 0; i < map.objectNames().size(); i++) {
+            int[] pos = map.objectPosition(i);
+            others[map.cell(pos[0], pos[1])] = true;
+        }
+        int[] home = new int[3];
+        for (int j = 0; j < 3; j++) {
+            int[] pos = map.objectPosition(p.targetIds[j]);
+            home[j] = map.cell(pos[0], pos[1]);
+            others[home[j]] = false;
+        }
+        int start = map.cell(map.startX(), map.startY());
+        int m = p.modeOf[0];
+        return placeTargets(0, new int[3], home, others, start, p.values[m], p.agentIndex[start] * p.configs[m]);
+    }
+
+    // average over the cells target j can be placed on, with targets 0..j-1 on placed[]
+    // and targets j..2 still on their map cells
+    private double placeTargets(int j, int[] placed, int[] home, boolean[] others, int start, double[] values, int base) {
+        if (j == 3) {
+            return values[base + placed[0] + cells * (placed[1] + cells * placed[2])];
+        }
+        double sum = 0.0;
+        int n = 0;
+        for (int t = 0; t < cells; t++) {
+            int cell = p.targetCells[t];
+            if (cell == start || others[cell] || held(cell, j, placed, home)) continue;
+            placed[j] = t;
+            sum += placeTargets(j + 1, placed, home, others, start, values, base);
+            n++;
+        }
+        return n == 0 ? 0.0 : sum / n;
+    }
+
+    private boolean held(int cell, int j, int[] placed, int[] home) {
+        for (int k = 0; k < 3; k++) {
+            if (k < j ? p.targetCells[placed[k]] == cell : home[k] == cell) return true;
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws IOException {
+        EnvConfig config = EnvConfig.fromSystemProperties();
+        if (System.getProperty("mas.log", "").isEmpty()) EnvLog.setLevel(EnvLog.WARN);
+        int threads = Math.max(1, Integer.getInteger("mdp.threads", Runtime.getRuntime().availableProcessors()));
+        int episodes = Math.max(0, Integer.getInteger("mdp.episodes", 10000));
+        GridMap map = config.mapFile() == null || config.mapFile().isEmpty() ? GridMap.defaultMap() : MapLoader.load(config.mapFile());
+
+        long start = System.nanoTime();
+        MdpPolicy policy = solve(map, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(java.util.Locale.ROOT, "MDP: %d states in %d modes, %d sweeps on %d threads in %.2f s%n",
+                policy.states(), policy.modes(), policy.sweeps(), threads, seconds);
+        System.out.printf(java.util.Locale.ROOT, "Expected optimal episode reward: %.4f%n", policy.expectedReward());
+
+        // the policy played on the kernel, episode k from seed episodeSeed(base, k) as everywhere else
+        SimKernel kernel = new SimKernel(map, config.seed());
+        SimAgent agent = kernel.addAgent();
+        double sum = 0.0;
+        long steps = 0;
+        for (int k = 0; k < episodes; k++) {
+            kernel.resetEpisode(k);
+            sum += kernel.run(policy, agent, 1_000_000);
+            steps += kernel.clock().ticks();
+        }
+        if (episodes > 0) {
+            System.out.printf(java.util.Locale.ROOT, "Simulated: %d episodes, mean reward %.4f, mean %.1f actions%n",
+                    episodes, sum / episodes, (double) steps / episodes);
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package env;
+
+import static env.MissionState.TOOL_COUNT;
+
+/**
+ * Exact mission planner: the cheapest sequence of pickups, drops, paints and opens that
+ * achieves the pending goals, under the environment's step costs (0.01 per move empty-handed,
+ * 0.02 per carried object and 0.03 per carried non-tool otherwise; pickups, drops and the
+ * goals themselves cost nothing). The goal rewards are fixed, so the cheapest plan is the
+ * one with the highest reward.
+ *
+ * The search is A* over macro states (agent node, where each tool is, goals done). The nodes
+ * are the distinct cells of the agent and of the known objects. A move between nodes costs
+ * its true path distance times the step cost of what is carried. At a node the agent picks
+ * up and drops any tools (within capacity), achieves every goal whose target is there and
+ * whose tools it carries, and may then change tools again for the next goal there. Tools left
+ * at a node can be fetched again later. Non-tools and tools no pending goal needs are dropped
+ * as soon as possible, which is never worse. Moving targets are planned at their current
+ * cells: plan again after each goal.
+ *
+ * One instance per caller, not thread-safe; a plan on the 5x5 map takes under 0.1 ms.
+ */
+public final class MissionPlanner {
+
+    // step operations
+    public static final int PICKUP = 0;
+    public static final int DROP = 1;
+    public static final int PAINT = 2;
+    public static final int OPEN = 3;
+    static final String[] OPS = {"pickup", "drop", "paint", "open"};
+
+    private static final int MAX_NODES = 8;
+    // tool location in a state: a node, carried, or not needed any more
+    private static final int CARRIED = 8;
+    private static final int GONE = 9;
+    private static final int ALL_GOALS = (1 << MissionState.GOALS.length) - 1;
+    private static final int TIE = 16;
+
+    private final PathService paths;
+
+    // nodes: cells and what is there
+    private final int[] nx = new int[MAX_NODES], ny = new int[MAX_NODES];
+    private final int[] targetsAt = new int[MAX_NODES];   // goal mask
+    private int nodes;
+    private final int[][] dist = new int[MAX_NODES][MAX_NODES];
+    // toolsFor[goalMask]: tools needed by the goals in the mask
+    private final int[] toolsFor = new int[ALL_GOALS + 1];
+    private final int[] targetNode = new int[MissionState.GOALS.length];
+    // pendingAt[doneMask]: nodes of the targets of the goals not in the mask
+    private final int[] pendingAt = new int[ALL_GOALS + 1];
+    // tours[tool][node][doneMask]: see tour()
+    private final int[][][] tours = new int[TOOL_COUNT][MAX_NODES][ALL_GOALS + 1];
+    private int capacity;
+
+    // open-addressing table of reached states
+    private int[] keys = new int[1 << 12];
+    private int shift = 32 - 12;
+    // costs in hundredths times TIE plus one per needed tool left behind: of the plans of equal
+    // cost the one that puts tools down the fewest times wins (it depends the least on where
+    // the moving targets turn out to be)
+    private int[] cost = new int[1 << 12];
+    private int[] priority = new int[1 << 12];
+    private int[] parent = new int[1 << 12];      // key of the previous state, -1 for the start
+    private int[] choice = new int[1 << 12];      // carried tools chosen at the previous state
+    private boolean[] settled = new boolean[1 << 12];
+    private int used;
+    // bucket queue of slots by priority (cost + estimate, in the units above): a list per
+    // priority, LIFO so that ties go to the state found last. A slot queued again at a lower
+    // priority leaves its old entry behind, skipped when it comes up
+    private int[] bucket = new int[64];           // first entry, -1 if none
+    private int[] entrySlot = new int[1 << 12], nextEntry = new int[1 << 12];
+    private int entries, lowest;
+    // cheapest state where the last goal is achieved, and the tools chosen there
+    private int bestKey, bestChoice;
+
+    // the plan
+    private int[] ops = new int[16];
+    private String[] objs = new String[16];
+    private int[] sx = new int[16], sy = new int[16];   // cell of the step
+    private int steps;
+    private double planCost;
+    private int expanded;
+
+    public MissionPlanner(PathService paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * Plans the pending goals of s.
+     * @return the number of steps (0 if nothing is pending), -1 if an object needed is not known
+     * or not reachable
+     */
+    public int plan(MissionState s) {
+        steps = 0;
+        planCost = 0.0;
+        expanded = 0;
+        capacity = s.capacity;
+        int done = 0;
+        for (int g = 0; g < MissionState.GOALS.length; g++) {
+            if (s.completed[g]) done |= 1 << g;
+        }
+        for (int mask = 0; mask <= ALL_GOALS; mask++) {
+            int tools = 0;
+            for (int g = 0; g < MissionState.GOALS.length; g++) {
+                if ((mask & (1 << g)) == 0) continue;
+                for (int t : MissionState.TOOLS[g]) tools |= 1 << t;
+            }
+            toolsFor[mask] = tools;
+        }
+        int needed = toolsFor[ALL_GOALS & ~done];
+
+        // carried objects nothing pending needs go first
+        for (int i = 0; i < s.otherCount; i++) step(DROP, s.others[i], s.x, s.y);
+        for (int t = 0; t < TOOL_COUNT; t++) {
+            if (s.carried[t] && (needed & (1 << t)) == 0) step(DROP, MissionState.OBJECTS[t], s.x, s.y);
+        }
+        if (done == ALL_GOALS) return steps;
+
+        // nodes: agent, needed tools lying around, then the other objects
+        nodes = 0;
+        int start = node(s.x, s.y);
+        int[] loc = new int[TOOL_COUNT];
+        for (int t = 0; t < TOOL_COUNT; t++) {
+            if ((needed & (1 << t)) == 0) {
+                loc[t] = GONE;
+            } else if (s.carried[t]) {
+                loc[t] = CARRIED;
+            } else if (s.known[t]) {
+                loc[t] = node(s.ox[t], s.oy[t]);
+            } else {
+                return -1;
+            }
+        }
+        // the other object cells are places to leave tools at on the way
+        for (int o = 0; o < MissionState.OBJECTS.length; o++) {
+            if (s.known[o] && (o >= TOOL_COUNT || !s.carried[o])) node(s.ox[o], s.oy[o]);
+        }
+        java.util.Arrays.fill(targetsAt, 0);
+        for (int g = 0; g < MissionState.GOALS.length; g++) {
+            if ((done & (1 << g)) != 0) continue;
+            int target = MissionState.TARGET[g];
+            if (!s.known[target]) return -1;
+            targetNode[g] = node(s.ox[target], s.oy[target]);
+            targetsAt[targetNode[g]] |= 1 << g;
+        }
+        for (int mask = 0; mask <= ALL_GOALS; mask++) {
+            pendingAt[mask] = 0;
+            for (int g = 0; g < MissionState.GOALS.length; g++) {
+                if ((mask & (1 << g)) == 0 && (done & (1 << g)) == 0) pendingAt[mask] |= 1 << targetNode[g];
+            }
+        }
+        for (int i = 0; i < nodes; i++) {
+            for (int j = 0; j < nodes; j++) {
+                dist[i][j] = i == j ? 0 : paths.distance(nx[i], ny[i], nx[j], ny[j]);
+            }
+        }
+        for (int t = 0; t < TOOL_COUNT; t++) {
+            for (int i = 0; i < nodes; i++) {
+                for (int mask = 0; mask <= ALL_GOALS; mask++) tours[t][i][mask] = tour(t, i, mask | done);
+            }
+        }
+
+        if (!search(encode(start, loc, done))) return -1;
+        reconstruct();
+        return steps;
+    }
+
+    public int steps() { return steps; }
+    public int op(int i) { return ops[i]; }
+    public String object(int i) { return objs[i]; }
+    /** Cell where step i takes place (for a paint or open, where the target was). */
+    public int x(int i) { return sx[i]; }
+    public int y(int i) { return sy[i]; }
+    /** Step cost of the plan (positive). */
+    public double cost() { return planCost; }
+    /** States expanded by the last plan. */
+    public int expanded() { return expanded; }
+
+    /** "pickup(b)", "drop(b,2,3)" etc. */
+    public String describe(int i) {
+        return OPS[ops[i]] + "(" + objs[i] + (ops[i] == DROP ? "," + sx[i] + "," + sy[i] : "") + ")";
+    }
+
+    // ----------- SEARCH -----------
+    // state: node (3 bits) | location of each tool (4 bits each) | goals done (3 bits)
+    private static int encode(int node, int[] loc, int done) {
+        int key = node;
+        for (int t = 0; t < TOOL_COUNT; t++) key |= loc[t] << (3 + 4 * t);
+        return key | done << (3 + 4 * TOOL_COUNT);
+    }
+
+    private static int nodeOf(int key) { return key & 7; }
+    private static int locOf(int key, int t) { return (key >>> (3 + 4 * t)) & 15; }
+    private static int doneOf(int key) { return key >>> (3 + 4 * TOOL_COUNT); }
+
+    // finds the cheapest state where the last goal is achieved (bestKey), false if none
+    private boolean search(int startKey) {
+        java.util.Arrays.fill(keys, -1);
+        java.util.Arrays.fill(bucket, -1);
+        used = 0;
+        entries = 0;
+        lowest = 0;
+        int root = slot(startKey);
+        cost[root] = 0;
+        priority[root] = estimate(startKey);
+        parent[root] = -1;
+        choice[root] = 0;
+        push(root);
+
+        bestKey = -1;
+        int bestCost = Integer.MAX_VALUE;
+        for (int cur = pop(); cur >= 0; cur = pop()) {
+            int c = cost[cur];
+            if (priority[cur] >= bestCost) break;
+            expanded++;
+            int key = keys[cur];
+            int at = nodeOf(key), done = doneOf(key);
+            // moved here for nothing: going on straight from the last node is no dearer
+            boolean passing = parent[cur] != -1 && nodeOf(parent[cur]) != at;
+            int carried = 0, here = 0;
+            for (int t = 0; t < TOOL_COUNT; t++) {
+                int l = locOf(key, t);
+                if (l == CARRIED) carried |= 1 << t; else if (l == at) here |= 1 << t;
+            }
+            int avail = carried | here;
+            // every set of tools to leave with: drop some, pick up some
+            for (int keep = avail; ; keep = (keep - 1) & avail) {
+                if (Integer.bitCount(keep) <= capacity) {
+                    int nowDone = done | completable(at, keep, done);
+                    if (passing && keep == carried && nowDone == done) {
+                        if (keep == 0) break;
+                        continue;
+                    }
+                    if (nowDone == ALL_GOALS) {
+                        if (c < bestCost) {
+                            bestCost = c;
+                            bestKey = key;
+                            bestChoice = keep;
+                        }
+                    } else {
+                        int stillNeeded = toolsFor[ALL_GOALS & ~nowDone];
+                        int leave = keep & stillNeeded;
+                        // the next state but its node, and the nodes where a needed tool lies
+                        int next = nowDone << (3 + 4 * TOOL_COUNT), lying = 0;
+                        for (int t = 0; t < TOOL_COUNT; t++) {
+                            int l = locOf(key, t);
+                            if ((stillNeeded & (1 << t)) == 0) l = GONE;
+                            else if ((leave & (1 << t)) != 0) l = CARRIED;
+                            else if (l == CARRIED) l = at;
+                            if (l < CARRIED) lying |= 1 << l;
+                            next |= l << (3 + 4 * t);
+                        }
+                        // something to do there: a needed tool to pick up or a pending target
+                        // (with tools in hand any node is worth a move, to leave some there)
+                        int worth = leave != 0 ? -1 : lying | pendingAt[nowDone];
+                        int perStep = units(Integer.bitCount(leave));
+                        int from = c + Integer.bitCount(carried & ~keep & stillNeeded);
+                        // staying: change tools again for the next goal here
+                        if (nowDone != done) relax(key, keep, next | at, from);
+                        for (int j = 0; j < nodes; j++) {
+                            if (j == at || (worth & (1 << j)) == 0 || dist[at][j] < 0) continue;
+                            relax(key, keep, next | j, from + dist[at][j] * perStep);
+                        }
+                    }
+                }
+                if (keep == 0) break;
+            }
+        }
+        planCost = bestCost / TIE * MissionState.stepCost(0, 0);
+        return bestKey >= 0;
+    }
+
+    // MissionState.stepCost in hundredths, times TIE
+    private static int units(int carried) {
+        return (carried == 0 ? 1 : 2 * carried) * TIE;
+    }
+
+    // lower bound of the cost left. A carried tool adds 0.02 to each step, so every tool still
+    // needed adds at least 0.02 per step of the shortest way from where it is through the
+    // pending targets that need it, and empty-handed the agent has still to get to one of the
+    // tools first. Each tool on its own is also fetched and then carried that way, so the
+    // larger of the two bounds holds. A goal gets done where its tools are, which leaves them
+    // equal, so do pickups and drops, and a move lowers them by no more than it costs: the
+    // first time a state is taken off the queue its cost is final.
+    private int estimate(int key) {
+        int at = nodeOf(key), done = doneOf(key);
+        int carry = 0, fetch = Integer.MAX_VALUE, single = 0;
+        boolean empty = true;
+        for (int t = 0; t < TOOL_COUNT; t++) {
+            int l = locOf(key, t);
+            if (l == GONE) continue;
+            int from = l == CARRIED ? at : l;
+            int tour = tours[t][from][done];
+            carry += tour;
+            if (l == CARRIED) {
+                empty = false;
+                single = Math.max(single, 2 * tour);
+            } else {
+                int d = Math.max(dist[at][l], 0);
+                fetch = Math.min(fetch, d);
+                single = Math.max(single, d + 2 * tour);
+            }
+        }
+        int steps = 2 * carry + (empty && fetch != Integer.MAX_VALUE ? fetch : 0);
+        return Math.max(steps, single) * TIE;
+    }
+
+    // shortest way from node 'from' through the pending targets that need tool t (at most two)
+    private int tour(int t, int from, int done) {
+        int a = -1, b = -1;
+        for (int g = 0; g < MissionState.GOALS.length; g++) {
+            if ((done & (1 << g)) != 0 || (toolsFor[1 << g] & (1 << t)) == 0) continue;
+            if (a < 0) a = targetNode[g]; else b = targetNode[g];
+        }
+        if (a < 0) return 0;
+        if (b < 0) return Math.max(dist[from][a], 0);
+        return Math.max(Math.min(dist[from][a], dist[from][b]), 0) + Math.max(dist[a][b], 0);
+    }
+
+    // goals achieved at node 'at' carrying 'tools'
+    private int completable(int at, int tools, int done) {
+        int goals = targetsAt[at] & ~done, achieved = 0;
+        for (int g = 0; g < MissionState.GOALS.length; g++) {
+            if ((goals & (1 << g)) != 0 && (toolsFor[1 << g] & ~tools) == 0) achieved |= 1 << g;
+        }
+        return achieved;
+    }
+
+    private void relax(int fromKey, int keep, int key, int c) {
+        int i = slot(key);
+        if (settled[i] || c >= cost[i]) return;
+        priority[i] = cost[i] == Integer.MAX_VALUE ? c + estimate(key) : priority[i] - (cost[i] - c);
+        cost[i] = c;
+        parent[i] = fromKey;
+        choice[i] = keep;
+        push(i);
+    }
+
+    // the slot of a key, added (not reached yet) if new
+    private int slot(int key) {
+        if (used * 2 >= keys.length) grow();
+        int mask = keys.length - 1;
+        int i = (key * 0x9E3779B9) >>> shift;
+        while (keys[i] != -1) {
+            if (keys[i] == key) return i;
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        cost[i] = Integer.MAX_VALUE;
+        settled[i] = false;
+        used++;
+        return i;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCost = cost, oldPriority = priority;
+        int[] oldParent = parent, oldChoice = choice;
+        boolean[] oldSettled = settled;
+        int n = oldKeys.length * 2;
+        keys = new int[n];
+        shift--;
+        cost = new int[n];
+        priority = new int[n];
+        parent = new int[n];
+        choice = new int[n];
+        settled = new boolean[n];
+        java.util.Arrays.fill(keys, -1);
+        int[] moved = new int[oldKeys.length];
+        int mask = n - 1;
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (oldKeys[old] == -1) continue;
+            int i = (oldKeys[old] * 0x9E3779B9) >>> shift;
+            while (keys[i] != -1) i = (i + 1) & mask;
+            keys[i] = oldKeys[old];
+            cost[i] = oldCost[old];
+            priority[i] = oldPriority[old];
+            parent[i] = oldParent[old];
+            choice[i] = oldChoice[old];
+            settled[i] = oldSettled[old];
+            moved[old] = i;
+        }
+        for (int e = 0; e < entries; e++) entrySlot[e] = moved[entrySlot[e]];
+    }
+
+    // ----------- PLAN -----------
+    private void reconstruct() {
+        // states from the start to the last one
+        int n = 0;
+        for (int key = bestKey; key != -1; key = parent[find(key)]) n++;
+        int[] chain = new int[n];
+        for (int key = bestKey, k = n - 1; key != -1; key = parent[find(key)]) chain[k--] = key;
+        // at chain[k] the agent leaves with the tools chosen when moving to chain[k + 1]
+        for (int k = 0; k < n; k++) {
+            int key = chain[k];
+            int keep = k + 1 < n ? choice[find(chain[k + 1])] : bestChoice;
+            int at = nodeOf(key), done = doneOf(key);
+            for (int t = 0; t < TOOL_COUNT; t++) {
+                if (locOf(key, t) == CARRIED && (keep & (1 << t)) == 0) step(DROP, MissionState.OBJECTS[t], nx[at], ny[at]);
+            }
+            for (int t = 0; t < TOOL_COUNT; t++) {
+                if (locOf(key, t) == at && (keep & (1 << t)) != 0) step(PICKUP, MissionState.OBJECTS[t], nx[at], ny[at]);
+            }
+            int achieved = completable(at, keep, done);
+            for (int g = 0; g < MissionState.GOALS.length; g++) {
+                if ((achieved & (1 << g)) != 0) {
+                    step(g == MissionState.OPEN_DOOR ? OPEN : PAINT, MissionState.OBJECTS[MissionState.TARGET[g]], nx[at], ny[at]);
+                }
+            }
+            // tools no goal left needs are not carried on
+            if (k + 1 < n) {
+                int stillNeeded = toolsFor[ALL_GOALS & ~(done | achieved)];
+                for (int t = 0; t < TOOL_COUNT; t++) {
+                    if ((keep & (1 << t)) != 0 && (stillNeeded & (1 << t)) == 0) step(DROP, MissionState.OBJECTS[t], nx[at], ny[at]);
+                }
+            }
+        }
+    }
+
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int i = (key * 0x9E3779B9) >>> shift;
+        while (keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private void step(int op, String obj, int x, int y) {
+        if (steps == ops.length) {
+            ops = java.util.Arrays.copyOf(ops, steps * 2);
+            objs = java.util.Arrays.copyOf(objs, steps * 2);
+            sx = java.util.Arrays.copyOf(sx, steps * 2);
+            sy = java.util.Arrays.copyOf(sy, steps * 2);
+        }
+        ops[steps] = op;
+        objs[steps] = obj;
+        sx[steps] = x;
+        sy[steps] = y;
+        steps++;
+    }
+
+    private int node(int x, int y) {
+        for (int i = 0; i < nodes; i++) {
+            if (nx[i] == x && ny[i] == y) return i;
+        }
+        nx[nodes] = x;
+        ny[nodes] = y;
+        return nodes++;
+    }
+
+    // ----------- bucket queue -----------
+    private void push(int i) {
+        int p = priority[i];
+        if (p >= bucket.length) {
+            int old = bucket.length;
+            bucket = java.util.Arrays.copyOf(bucket, Math.max(p + 1, old * 2));
+            java.util.Arrays.fill(bucket, old, bucket.length, -1);
+        }
+        if (entries == entrySlot.length) {
+            entrySlot = java.util.Arrays.copyOf(entrySlot, entries * 2);
+            nextEntry = java.util.Arrays.copyOf(nextEntry, entries * 2);
+        }
+        entrySlot[entries] = i;
+        nextEntry[entries] = bucket[p];
+        bucket[p] = entries++;
+        if (p < lowest) lowest = p;
+    }
+
+    // the unsettled slot of lowest priority, settled now; -1 if none is left
+    private int pop() {
+        for (; lowest < bucket.length; lowest++) {
+            while (bucket[lowest] != -1) {
+                int e = bucket[lowest];
+                bucket[lowest] = nextEntry[e];
+                int i = entrySlot[e];
+                if (settled[i] || priority[i] != lowest) continue;
+                settled[i] = true;
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,151 @@
+package env;
+
+import jason.asSyntax.Literal;
+import jason.asSyntax.NumberTerm;
+import jason.bb.BeliefBase;
+
+/**
+ * What an agent knows about its mission: own cell, inventory and capacity, where the objects
+ * are, which goals are done and what they are worth. Filled from the agent's beliefs
+ * ({@link #read}) or from the environment ({@link ScriptedAgent}); read by
+ * {@link GoalUtilities} and {@link MissionPlanner}. Not thread-safe.
+ */
+public final class MissionState {
+
+    public static final int PAINT_TABLE = 0;
+    public static final int PAINT_CHAIR = 1;
+    public static final int OPEN_DOOR = 2;
+    public static final String[] GOALS = {"paint_table", "paint_chair", "open_door"};
+
+    // objects the goals refer to: the tools first, then the goal targets
+    static final String[] OBJECTS = {"b", "cl", "k", "cd", "t", "ch", "d"};
+    static final int B = 0, CL = 1, K = 2, CD = 3, T = 4, CH = 5, D = 6;
+    static final int TOOL_COUNT = 4;
+    static final int[] TARGET = {T, CH, D};
+    static final int[][] TOOLS = {{B, CL}, {B, CL}, {K, CD}};
+    private static final double[] DEFAULT_REWARD = {1.0, 1.0, 0.8};
+    private static final int DEFAULT_CAPACITY = 3;
+
+    final double[] reward = new double[GOALS.length];
+    final boolean[] completed = new boolean[GOALS.length];
+    final int[] ox = new int[OBJECTS.length], oy = new int[OBJECTS.length];
+    final boolean[] known = new boolean[OBJECTS.length];
+    final boolean[] carried = new boolean[OBJECTS.length];
+    int x, y;
+    int capacity;
+    int carryCount;
+    // carried objects that are none of the tools
+    String[] others = new String[4];
+    int otherCount;
+
+    public MissionState() {
+        clear();
+    }
+
+    /** Forgets everything (rewards and capacity go back to the environment's). */
+    public MissionState clear() {
+        System.arraycopy(DEFAULT_REWARD, 0, reward, 0, GOALS.length);
+        java.util.Arrays.fill(completed, false);
+        java.util.Arrays.fill(known, false);
+        java.util.Arrays.fill(carried, false);
+        capacity = DEFAULT_CAPACITY;
+        carryCount = 0;
+        otherCount = 0;
+        return this;
+    }
+
+    /**
+     * Reads position/2 (the perceived one), capacity/1, carrying/1, location/3, completed/1
+     * and reward/2.
+     */
+    public MissionState read(BeliefBase beliefs) throws Exception {
+        clear();
+        for (Literal b : beliefs) {
+            switch (b.getFunctor()) {
+                case "position":
+                    // the perceived position, not agent.asl's initial position(1,1)
+                    if (b.getArity() == 2 && b.hasSource(BeliefBase.TPercept)) position(number(b, 0), number(b, 1));
+                    break;
+                case "capacity":
+                    if (b.getArity() == 1 && b.hasSource(BeliefBase.TPercept)) capacity = number(b, 0);
+                    break;
+                case "location":
+                    if (b.getArity() == 3) location(b.getTerm(0).toString(), number(b, 1), number(b, 2));
+                    break;
+                case "carrying":
+                    if (b.getArity() == 1) carrying(b.getTerm(0).toString());
+                    break;
+                case "completed":
+                    if (b.getArity() == 1) completed(b.getTerm(0).toString());
+                    break;
+                case "reward":
+                    if (b.getArity() == 2) reward(b.getTerm(0).toString(), ((NumberTerm) b.getTerm(1)).solve());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return this;
+    }
+
+    public void position(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public void capacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void location(String obj, int x, int y) {
+        int i = object(obj);
+        if (i < 0) return;
+        ox[i] = x;
+        oy[i] = y;
+        known[i] = true;
+    }
+
+    public void carrying(String obj) {
+        int i = object(obj);
+        if (i >= 0 && i < TOOL_COUNT) {
+            carried[i] = true;
+        } else {
+            if (otherCount == others.length) others = java.util.Arrays.copyOf(others, otherCount * 2);
+            others[otherCount++] = obj;
+        }
+        carryCount++;
+    }
+
+    public void completed(String goal) {
+        int g = goal(goal);
+        if (g >= 0) completed[g] = true;
+    }
+
+    public void reward(String goal, double r) {
+        int g = goal(goal);
+        if (g >= 0) reward[g] = r;
+    }
+
+    // reward the environment takes per move while carrying n objects, 'incompatible' of them no tools
+    static double stepCost(int n, int incompatible) {
+        return n == 0 ? 0.01 : 0.02 * n + 0.03 * incompatible;
+    }
+
+    private static int number(Literal l, int i) throws Exception {
+        return (int) ((NumberTerm) l.getTerm(i)).solve();
+    }
+
+    static int object(String name) {
+        for (int i = 0; i < OBJECTS.length; i++) {
+            if (OBJECTS[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    static int goal(String name) {
+        for (int g = 0; g < GOALS.length; g++) {
+            if (GOALS[g].equals(name)) return g;
+        }
+        return -1;
+    }
+}
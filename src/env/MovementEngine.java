@@ -0,0 +1,172 @@
+package env;
+
+/**
+ * Moves all the dynamic objects of a {@link SimKernel} in one pass per object tick. The movers
+ * and their {@link MovementModel}s are flattened into parallel arrays when the kernel is built
+ * (object id, kind, stay threshold, waypoints in one array with a start and length per mover,
+ * current waypoint), so a pass reads a few ints per mover, allocates nothing, and checks
+ * cells against the occupancy index of the {@link ObjectRegistry}: a mover never steps onto a
+ * cell with an object, and the movers go in a fixed order (t, ch, d, then the others in map
+ * order), so who gets a contested cell is decided by that order and the pass is reproducible
+ * from the kernel's seed.
+ *
+ * Each move takes the stripes of its two cells, as the other object changes do.
+ */
+final class MovementEngine {
+
+    // stay probabilities as thresholds of a draw in [0, STAY_SCALE)
+    private static final int STAY_SCALE = 1 << 20;
+    // direction order of the random moves: right, left, up, down
+    private static final int[] WALK_MOVES = {Direction.RIGHT, Direction.LEFT, Direction.UP, Direction.DOWN};
+    // draws of a walker before it gives up its move
+    private static final int WALK_ATTEMPTS = 10;
+
+    private final SimKernel kernel;
+    private final GridMap map;
+    private final ObjectRegistry objects;
+    private final CellLocks cellLocks;
+
+    private final int count;
+    private final int[] ids;
+    private final int[] kinds;
+    private final int[] stayBelow;
+    // waypoints of mover i: route[2 * k], route[2 * k + 1] for k in routeStart[i] .. + routeLength[i]
+    private final int[] routeStart;
+    private final int[] routeLength;
+    private final int[] route;
+    // index of the waypoint a patroller is heading for
+    private final int[] routeAt;
+
+    /** @param models movement of each object id (null or STILL: never moves) */
+    MovementEngine(SimKernel kernel, CellLocks cellLocks, int[] order, MovementModel[] models) {
+        this.kernel = kernel;
+        this.map = kernel.map();
+        this.objects = kernel.objects();
+        this.cellLocks = cellLocks;
+        int n = 0, waypoints = 0;
+        for (int obj : order) {
+            MovementModel m = models[obj];
+            if (m == null || m.kind() == MovementModel.STILL) continue;
+            n++;
+            if (m.kind() == MovementModel.PATROL) waypoints += m.waypoints();
+        }
+        count = n;
+        ids = new int[n];
+        kinds = new int[n];
+        stayBelow = new int[n];
+        routeStart = new int[n];
+        routeLength = new int[n];
+        route = new int[2 * waypoints];
+        routeAt = new int[n];
+        int i = 0, w = 0;
+        for (int obj : order) {
+            MovementModel m = models[obj];
+            if (m == null || m.kind() == MovementModel.STILL) continue;
+            ids[i] = obj;
+            kinds[i] = m.kind();
+            stayBelow[i] = (int) Math.round(m.stay() * STAY_SCALE);
+            if (m.kind() == MovementModel.PATROL) {
+                routeStart[i] = w;
+                routeLength[i] = m.waypoints();
+                for (int k = 0; k < m.waypoints(); k++) {
+                    route[2 * w] = m.waypointX(k);
+                    route[2 * w + 1] = m.waypointY(k);
+                    w++;
+                }
+            }
+            i++;
+        }
+    }
+
+    /** Number of objects that can move. */
+    int movers() {
+        return count;
+    }
+
+    /** One move of every mover that is not carried. */
+    void step() {
+        for (int i = 0; i < count; i++) {
+            int obj = ids[i];
+            if (objects.has(obj, ObjectRegistry.CARRIED)) continue;
+            // no draw when it never stays, so walkers draw exactly as they always did
+            int stay = stayBelow[i];
+            if (stay > 0 && (stay >= STAY_SCALE || kernel.draw(STAY_SCALE) < stay)) continue;
+            if (kinds[i] == MovementModel.WALK) {
+                walk(obj);
+            } else {
+                patrol(i, obj);
+            }
+        }
+    }
+
+    // up to WALK_ATTEMPTS random directions, the first free cell without objects wins
+    private void walk(int obj) {
+        int x = objects.x(obj), y = objects.y(obj);
+        for (int attempt = 0; attempt < WALK_ATTEMPTS; attempt++) {
+            int dir = WALK_MOVES[kernel.draw(4)];
+            int nx = x + Direction.DX[dir], ny = y + Direction.DY[dir];
+            if (map.free(nx, ny) && !objects.occupied(nx, ny)) {
+                move(obj, x, y, nx, ny);
+                return;
+            }
+        }
+    }
+
+    private void patrol(int i, int obj) {
+        int x = objects.x(obj), y = objects.y(obj);
+        int start = routeStart[i], length = routeLength[i];
+        int at = routeAt[i];
+        // on the waypoint: head for the next one
+        for (int k = 0; k < length && route[2 * (start + at)] == x && route[2 * (start + at) + 1] == y; k++) {
+            at = at + 1 == length ? 0 : at + 1;
+        }
+        routeAt[i] = at;
+        int dx = route[2 * (start + at)] - x, dy = route[2 * (start + at) + 1] - y;
+        if (dx == 0 && dy == 0) return;
+        int sx = Integer.signum(dx), sy = Integer.signum(dy);
+        if (Math.abs(dx) >= Math.abs(dy)) {
+            if (!tryStep(obj, x, y, x + sx, y) && sy != 0) tryStep(obj, x, y, x, y + sy);
+        } else {
+            if (!tryStep(obj, x, y, x, y + sy) && sx != 0) tryStep(obj, x, y, x + sx, y);
+        }
+    }
+
+    private boolean tryStep(int obj, int x, int y, int nx, int ny) {
+        if (!map.free(nx, ny) || objects.occupied(nx, ny)) return false;
+        move(obj, x, y, nx, ny);
+        return true;
+    }
+
+    private void move(int obj, int x, int y, int nx, int ny) {
+        int from = map.cell(x, y), to = map.cell(nx, ny);
+        cellLocks.lock(from, to);
+        try {
+            // another thread may have moved or picked it, or filled the cell, in the meantime
+            if (objects.x(obj) != x || objects.y(obj) != y || objects.has(obj, ObjectRegistry.CARRIED)
+                    || objects.occupied(nx, ny)) {
+                return;
+            }
+            objects.moveTo(obj, nx, ny);
+        } finally {
+            cellLocks.unlock(from, to);
+        }
+        kernel.objectMoved(obj);
+        if (EnvLog.enabled(EnvLog.DEBUG)) EnvLog.debug("Object " + objects.name(obj) + " moved to (" + nx + "," + ny + ")");
+    }
+
+    // patrols start over from their first waypoint (new episode)
+    void reset() {
+        java.util.Arrays.fill(routeAt, 0);
+    }
+
+    // waypoint indices for snapshots, into 'into' if it has the right size
+    int[] save(int[] into) {
+        int[] s = into.length == count ? into : new int[count];
+        System.arraycopy(routeAt, 0, s, 0, count);
+        return s;
+    }
+
+    void load(int[] from) {
+        System.arraycopy(from, 0, routeAt, 0, count);
+    }
+}
@@ -0,0 +1,70 @@
+package env;
+
+/**
+ * How a dynamic object moves on the ticks the objects move (every SimKernel.DYNAMIC_PERIOD
+ * ticks): a random walk of one cell, a patrol along a loop of waypoints, or not at all. With
+ * probability stay a walker or patroller sits out a move. Given per object by the map file
+ * ('move' entries); t, ch and d walk unless told otherwise.
+ */
+public final class MovementModel {
+
+    public static final int STILL = 0;
+    public static final int WALK = 1;
+    public static final int PATROL = 2;
+
+    public static final MovementModel NONE = new MovementModel(STILL, 0.0, new int[0]);
+
+    private final int kind;
+    private final double stay;
+    // waypoints as x1, y1, x2, y2, ...
+    private final int[] waypoints;
+
+    private MovementModel(int kind, double stay, int[] waypoints) {
+        if (!(stay >= 0.0 && stay <= 1.0)) {
+            throw new IllegalArgumentException("Stay probability outside [0,1]: " + stay);
+        }
+        this.kind = kind;
+        this.stay = stay;
+        this.waypoints = waypoints;
+    }
+
+    /** A step in a random direction to a free cell without objects, the old t/ch/d moves. */
+    public static MovementModel walk(double stay) {
+        return new MovementModel(WALK, stay, new int[0]);
+    }
+
+    /**
+     * One step per move toward the current waypoint, along the axis with the larger gap (x on
+     * a tie) or else the other one, waiting while both cells are taken; on the waypoint, on to
+     * the next one (the first after the last). Waypoints in straight lines of free cells make
+     * a patrol that never gets stuck behind an obstacle.
+     *
+     * @param xy waypoints as x1, y1, x2, y2, ...
+     */
+    public static MovementModel patrol(double stay, int... xy) {
+        if (xy.length < 2 || xy.length % 2 != 0) {
+            throw new IllegalArgumentException("A patrol needs waypoints as x y pairs");
+        }
+        return new MovementModel(PATROL, stay, xy.clone());
+    }
+
+    public int kind() {
+        return kind;
+    }
+
+    public double stay() {
+        return stay;
+    }
+
+    public int waypoints() {
+        return waypoints.length / 2;
+    }
+
+    public int waypointX(int i) {
+        return waypoints[2 * i];
+    }
+
+    public int waypointY(int i) {
+        return waypoints[2 * i + 1];
+    }
+}
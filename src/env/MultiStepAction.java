@@ -0,0 +1,40 @@
+package env;
+
+/**
+ * An action made of several primitive moves (goto_coord, path_to, approach, explore) as a
+ * sequence of steps. {@link EnvironmentExt#executeAction} plays all of them in the calling
+ * thread; the {@link ActionScheduler} plays one step per task, so percepts go out between two
+ * steps, no thread waits for an agent's moves, and the action can be cancelled in between.
+ */
+abstract class MultiStepAction {
+
+    static final int RUNNING = 0;
+    static final int SUCCEEDED = 1;
+    static final int FAILED = 2;
+
+    // actions decided before their first step (no route, already there)
+    static final MultiStepAction SUCCEEDED_NOW = finished(SUCCEEDED);
+    static final MultiStepAction FAILED_NOW = finished(FAILED);
+
+    // pacing of the step just played, in ms of the logical clock (0 if it did not move)
+    long delay;
+
+    /** Plays the next step: RUNNING if more steps follow, otherwise SUCCEEDED or FAILED. */
+    abstract int step();
+
+    /** Stopped between two steps: gives back what the action holds (cells reserved ahead). */
+    void cancel() {}
+
+    static MultiStepAction of(boolean result) {
+        return result ? SUCCEEDED_NOW : FAILED_NOW;
+    }
+
+    private static MultiStepAction finished(int status) {
+        return new MultiStepAction() {
+            @Override
+            int step() {
+                return status;
+            }
+        };
+    }
+}
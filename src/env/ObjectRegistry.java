@@ -0,0 +1,176 @@
+package env;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * All objects of the grid with integer ids and struct-of-arrays state:
+ * position, carried/colored/awarded flags. A cell-to-object occupancy index
+ * (intrusive doubly linked list per cell) makes "is there an object at (x,y)"
+ * and "which objects are at (x,y)" O(1) and allocation-free.
+ *
+ * A carried object keeps its last position in the index, as the object map
+ * always did: other objects cannot move onto the cell it was picked up from.
+ *
+ * Flags are updated atomically. Positions and the occupancy index are not synchronized
+ * here: callers hold the {@link CellLocks} of the cells involved.
+ */
+public class ObjectRegistry {
+
+    public static final int CARRIED = 1;
+    public static final int COLORED = 2;
+    public static final int AWARDED = 4;
+
+    private final GridMap map;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names;
+    private int[] xs;
+    private int[] ys;
+    private AtomicIntegerArray flags;
+    private int[] next;     // next object in the same cell, -1 at the end
+    private int[] prev;     // previous object in the same cell, -1 at the head
+    private final int[] cellHead;   // first object of each cell, -1 if none
+    private int count = 0;
+
+    public ObjectRegistry(GridMap map) {
+        this.map = map;
+        int n = Math.max(8, map.objectNames().size());
+        names = new String[n];
+        xs = new int[n];
+        ys = new int[n];
+        flags = new AtomicIntegerArray(n);
+        next = new int[n];
+        prev = new int[n];
+        cellHead = new int[map.cells()];
+        java.util.Arrays.fill(cellHead, -1);
+        for (int i = 0; i < map.objectNames().size(); i++) {
+            int[] pos = map.objectPosition(i);
+            add(map.objectNames().get(i), pos[0], pos[1]);
+        }
+    }
+
+    public int add(String name, int x, int y) {
+        if (ids.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate object " + name);
+        }
+        if (count == names.length) grow();
+        int id = count++;
+        names[id] = name;
+        ids.put(name, id);
+        xs[id] = x;
+        ys[id] = y;
+        link(id);
+        return id;
+    }
+
+    private void grow() {
+        int n = names.length * 2;
+        names = java.util.Arrays.copyOf(names, n);
+        xs = java.util.Arrays.copyOf(xs, n);
+        ys = java.util.Arrays.copyOf(ys, n);
+        AtomicIntegerArray grown = new AtomicIntegerArray(n);
+        for (int i = 0; i < count; i++) grown.set(i, flags.get(i));
+        flags = grown;
+        next = java.util.Arrays.copyOf(next, n);
+        prev = java.util.Arrays.copyOf(prev, n);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // id of an object, -1 if unknown
+    public int id(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public String[] names() {
+        return java.util.Arrays.copyOf(names, count);
+    }
+
+    public int x(int id) {
+        return xs[id];
+    }
+
+    public int y(int id) {
+        return ys[id];
+    }
+
+    public void moveTo(int id, int x, int y) {
+        if (xs[id] == x && ys[id] == y) return;
+        unlink(id);
+        xs[id] = x;
+        ys[id] = y;
+        link(id);
+    }
+
+    public boolean has(int id, int flag) {
+        return (flags.get(id) & flag) != 0;
+    }
+
+    // all flags at once (snapshots)
+    public int flags(int id) {
+        return flags.get(id);
+    }
+
+    public void setFlags(int id, int f) {
+        flags.set(id, f);
+    }
+
+    public void set(int id, int flag, boolean on) {
+        int f;
+        do {
+            f = flags.get(id);
+        } while (!flags.compareAndSet(id, f, on ? f | flag : f & ~flag));
+    }
+
+    /** Sets flag if it is clear; true if this call set it (exactly one caller wins). */
+    public boolean claim(int id, int flag) {
+        int f;
+        do {
+            f = flags.get(id);
+            if ((f & flag) != 0) return false;
+        } while (!flags.compareAndSet(id, f, f | flag));
+        return true;
+    }
+
+    // clear a flag on every object (episode reset)
+    public void clearAll(int flag) {
+        for (int i = 0; i < count; i++) set(i, flag, false);
+    }
+
+    public boolean occupied(int x, int y) {
+        return cellHead[map.cell(x, y)] >= 0;
+    }
+
+    // first object at (x,y), -1 if none; iterate with nextAt
+    public int firstAt(int x, int y) {
+        return cellHead[map.cell(x, y)];
+    }
+
+    public int nextAt(int id) {
+        return next[id];
+    }
+
+    private void link(int id) {
+        int cell = map.cell(xs[id], ys[id]);
+        int head = cellHead[cell];
+        next[id] = head;
+        prev[id] = -1;
+        if (head >= 0) prev[head] = id;
+        cellHead[cell] = id;
+    }
+
+    private void unlink(int id) {
+        int cell = map.cell(xs[id], ys[id]);
+        if (prev[id] >= 0) next[prev[id]] = next[id];
+        else cellHead[cell] = next[id];
+        if (next[id] >= 0) prev[next[id]] = prev[id];
+    }
+}
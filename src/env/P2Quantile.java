@@ -0,0 +1,96 @@
+package env;
+
+/**
+ * Streaming estimate of one quantile by the P² algorithm (Jain and Chlamtac, 1985): five
+ * markers whose heights are adjusted by piecewise-parabolic interpolation as observations
+ * arrive, so the estimate costs O(1) time and memory per observation whatever their number.
+ * Exact while fewer than five observations were seen.
+ */
+public final class P2Quantile {
+
+    private final double p;
+    // marker heights, actual positions (1-based) and desired positions
+    private final double[] q = new double[5];
+    private final int[] n = new int[5];
+    private final double[] desired = new double[5];
+    private final double[] increment;
+    private long count;
+
+    /** @param p the quantile, in (0, 1) */
+    public P2Quantile(double p) {
+        if (!(p > 0.0 && p < 1.0)) throw new IllegalArgumentException("Quantile outside (0,1): " + p);
+        this.p = p;
+        this.increment = new double[]{0.0, p / 2, p, (1 + p) / 2, 1.0};
+    }
+
+    public double p() {
+        return p;
+    }
+
+    public void add(double x) {
+        if (count < 5) {
+            // insertion sort of the first five observations
+            int i = (int) count++;
+            while (i > 0 && q[i - 1] > x) {
+                q[i] = q[i - 1];
+                i--;
+            }
+            q[i] = x;
+            if (count == 5) {
+                for (int k = 0; k < 5; k++) n[k] = k + 1;
+                desired[0] = 1;
+                desired[1] = 1 + 2 * p;
+                desired[2] = 1 + 4 * p;
+                desired[3] = 3 + 2 * p;
+                desired[4] = 5;
+            }
+            return;
+        }
+        count++;
+        // cell of x between the markers, stretching the extremes
+        int k;
+        if (x < q[0]) {
+            q[0] = x;
+            k = 0;
+        } else if (x >= q[4]) {
+            q[4] = Math.max(q[4], x);
+            k = 3;
+        } else {
+            k = 0;
+            while (x >= q[k + 1]) k++;
+        }
+        for (int i = k + 1; i < 5; i++) n[i]++;
+        for (int i = 0; i < 5; i++) desired[i] += increment[i];
+        // the three middle markers move a position toward where they should be
+        for (int i = 1; i < 4; i++) {
+            double d = desired[i] - n[i];
+            if (d >= 1 && n[i + 1] - n[i] > 1 || d <= -1 && n[i - 1] - n[i] < -1) {
+                int s = d > 0 ? 1 : -1;
+                double h = parabolic(i, s);
+                q[i] = q[i - 1] < h && h < q[i + 1] ? h : q[i] + s * (q[i + s] - q[i]) / (n[i + s] - n[i]);
+                n[i] += s;
+            }
+        }
+    }
+
+    private double parabolic(int i, int s) {
+        return q[i] + (double) s / (n[i + 1] - n[i - 1])
+                * ((n[i] - n[i - 1] + s) * (q[i + 1] - q[i]) / (n[i + 1] - n[i])
+                + (n[i + 1] - n[i] - s) * (q[i] - q[i - 1]) / (n[i] - n[i - 1]));
+    }
+
+    /** The current estimate; NaN before the first observation. */
+    public double value() {
+        if (count == 0) return Double.NaN;
+        if (count < 5) {
+            // nearest rank among the sorted observations
+            int i = (int) Math.ceil(p * count) - 1;
+            return q[Math.max(0, i)];
+        }
+        return q[2];
+    }
+
+    public long count() {
+        return count;
+    }
+}
@@ -0,0 +1,145 @@
+package env;
+
+/**
+ * A* over the grid with buffers that are allocated once and reused by every query.
+ * Cells are packed ints (see {@link GridMap#cell}). The open list is an indexed binary heap with
+ * decrease-key ({@link CellHeap}, ties on f broken by h), and the open/closed state of a cell is
+ * valid only when its stamp equals the current search generation, so nothing needs clearing
+ * between queries. The result is written into a reusable direction buffer (see {@link Direction}).
+ *
+ * Not thread-safe: use one instance per thread.
+ */
+public class PathFinder implements GridSearch {
+
+    private final GridMap map;
+
+    // per-cell search state, valid when stamp[cell] == generation
+    private final int[] stamp;
+    private final int[] g;
+    private final int[] f;
+    private final byte[] via;      // direction used to reach the cell
+    private final boolean[] closed;
+    private int generation = 0;
+
+    // open cells ordered by f, then h
+    private final CellHeap open;
+
+    private byte[] path = new byte[16];
+    private int pathLength = 0;
+    private int expanded = 0;
+
+    public PathFinder(GridMap map) {
+        this.map = map;
+        int cells = map.cells();
+        stamp = new int[cells];
+        g = new int[cells];
+        f = new int[cells];
+        via = new byte[cells];
+        closed = new boolean[cells];
+        open = new CellHeap(cells, f, g);
+    }
+
+    /**
+     * Searches a shortest path from (sx,sy) to (gx,gy) over the free cells of the map.
+     * @return the number of moves, or -1 if there is no path; the moves are in {@link #path()}
+     */
+    @Override
+    public int search(int sx, int sy, int gx, int gy) {
+        return search(sx, sy, gx, gy, null, ReservationTable.FREE);
+    }
+
+    /**
+     * Same as {@link #search(int, int, int, int)}, also treating the cells that other agents
+     * hold in reservations as blocked (except the goal).
+     */
+    @Override
+    public int search(int sx, int sy, int gx, int gy, ReservationTable reservations, int agent) {
+        pathLength = 0;
+        expanded = 0;
+        if (++generation == Integer.MAX_VALUE) {
+            java.util.Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        open.clear();
+
+        int start = map.cell(sx, sy);
+        int goal = map.cell(gx, gy);
+        touch(start, 0, heuristic(sx, sy, gx, gy), Direction.NONE);
+        open.push(start);
+
+        while (!open.isEmpty()) {
+            int cur = open.pop();
+            if (cur == goal) {
+                return reconstruct(start, goal);
+            }
+            closed[cur] = true;
+            expanded++;
+
+            int cx = map.cellX(cur), cy = map.cellY(cur);
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + Direction.DX[d];
+                int ny = cy + Direction.DY[d];
+                if (!map.free(nx, ny))
+                    continue;
+
+                int next = map.cell(nx, ny);
+                if (reservations != null && next != goal && reservations.heldByOther(next, agent))
+                    continue;
+                int newG = g[cur] + 1;
+                if (stamp[next] != generation) {
+                    touch(next, newG, newG + heuristic(nx, ny, gx, gy), d);
+                    open.push(next);
+                } else if (!closed[next] && newG < g[next]) {
+                    f[next] -= g[next] - newG;
+                    g[next] = newG;
+                    via[next] = (byte) d;
+                    open.decreased(next);
+                }
+            }
+        }
+        return -1; // no path
+    }
+
+    // direction buffer of the last search, valid for pathLength() entries
+    @Override
+    public byte[] path() {
+        return path;
+    }
+
+    @Override
+    public int pathLength() {
+        return pathLength;
+    }
+
+    // nodes expanded by the last search
+    @Override
+    public int expanded() {
+        return expanded;
+    }
+
+    private int heuristic(int x, int y, int gx, int gy) {
+        return Math.abs(x - gx) + Math.abs(y - gy);
+    }
+
+    private void touch(int cell, int gv, int fv, int dir) {
+        stamp[cell] = generation;
+        g[cell] = gv;
+        f[cell] = fv;
+        via[cell] = (byte) dir;
+        closed[cell] = false;
+        open.forget(cell);
+    }
+
+    private int reconstruct(int start, int goal) {
+        int len = g[goal];
+        if (path.length < len) path = new byte[Math.max(len, path.length * 2)];
+        int cur = goal;
+        for (int i = len - 1; i >= 0; i--) {
+            int d = via[cur];
+            path[i] = (byte) d;
+            cur = map.cell(map.cellX(cur) - Direction.DX[d], map.cellY(cur) - Direction.DY[d]);
+        }
+        pathLength = len;
+        return len;
+    }
+}
@@ -0,0 +1,185 @@
+package env;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shortest-path distances over the static obstacle map.
+ * Keeps BFS distance fields, one per target cell: field[cell] is the number of moves
+ * from cell to the target, -1 if unreachable. On small maps every field is computed
+ * when the map is loaded; on large maps fields are computed on demand and kept in a
+ * bounded LRU cache. Following a field downhill gives a route in O(path length).
+ * Where no field is cached, the agents' {@link Planner}s search with a {@link GridSearch} of
+ * the service's strategy: A*, jump point search or HPA* (see {@link Strategy} and {@link #newSearch()}).
+ *
+ * Distance fields and the strategies' precomputations are safe to share between threads,
+ * so the isolated environments of a sweep use one service (see {@link EnvConfig#setPaths}).
+ */
+public class PathService {
+
+    /** How routes are searched where no distance field is cached. */
+    public enum Strategy {
+        /** A* over the cells (shortest routes). */
+        ASTAR,
+        /** Jump point search: shortest routes, few expansions on open ground. */
+        JPS,
+        /** HPA* over cluster entrances: near-shortest routes, query cost nearly independent of the map size. */
+        HPA;
+
+        public static Strategy parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(java.util.Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown path search '" + name + "' (astar, jps, hpa)");
+            }
+        }
+    }
+
+    // maps up to this many cells get all fields precomputed (4096 cells = 64 MB worst case)
+    private static final int ALL_PAIRS_LIMIT = 4096;
+    // number of fields kept for larger maps
+    private static final int FIELD_CACHE_SIZE = 32;
+    // side of the HPA* clusters, in cells
+    private static final int CLUSTER_SIZE = 16;
+
+    // service of the running environment, used by the agent's internal actions
+    private static volatile PathService current;
+
+    private final GridMap map;
+    private final int cells;
+    private final Strategy strategy;
+    // jump point and HPA* precomputations, built on first use
+    private JumpTable jumpTable;
+    private ClusterGraph clusterGraph;
+
+    private volatile int[][] table;              // small maps: field per target cell, read without locking
+    private final Map<Integer, int[]> lru;        // large maps
+    private final int[] queue;
+
+    public PathService(GridMap map) {
+        this(map, Strategy.ASTAR);
+    }
+
+    public PathService(GridMap map, Strategy strategy) {
+        this.map = map;
+        this.cells = map.cells();
+        this.strategy = strategy;
+        this.queue = new int[cells];
+        if (cells <= ALL_PAIRS_LIMIT) {
+            lru = null;
+            precomputeAll();
+        } else {
+            lru = new LinkedHashMap<Integer, int[]>(FIELD_CACHE_SIZE * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                    return size() > FIELD_CACHE_SIZE;
+                }
+            };
+        }
+    }
+
+    public static PathService current() {
+        return current;
+    }
+
+    public static void setCurrent(PathService service) {
+        current = service;
+    }
+
+    public Strategy strategy() {
+        return strategy;
+    }
+
+    /** A new search of the service's strategy, for one thread. */
+    public GridSearch newSearch() {
+        switch (strategy) {
+            case JPS: return new JumpPointSearch(this, map);
+            case HPA: return new HierarchicalSearch(this, map);
+            default: return new PathFinder(map);
+        }
+    }
+
+    // jump distances of the obstacles
+    synchronized JumpTable jumpTable() {
+        if (jumpTable == null) jumpTable = new JumpTable(map);
+        return jumpTable;
+    }
+
+    // HPA* graph of the obstacles
+    synchronized ClusterGraph clusterGraph() {
+        if (clusterGraph == null) clusterGraph = new ClusterGraph(map, CLUSTER_SIZE);
+        return clusterGraph;
+    }
+
+    public GridMap map() {
+        return map;
+    }
+
+    private void precomputeAll() {
+        int[][] all = new int[cells][];
+        for (int x = 1; x <= map.width(); x++) {
+            for (int y = 1; y <= map.height(); y++) {
+                if (!map.blocked(x, y)) all[map.cell(x, y)] = bfs(x, y);
+            }
+        }
+        table = all;
+    }
+
+    // distance field towards (gx,gy), null if the target is blocked or out of the map
+    public int[] field(int gx, int gy) {
+        if (!map.free(gx, gy)) return null;
+        int goal = map.cell(gx, gy);
+        int[][] all = table;
+        if (all != null) return all[goal];
+        synchronized (this) {
+            int[] f = lru.get(goal);
+            if (f == null) {
+                f = bfs(gx, gy);
+                lru.put(goal, f);
+            }
+            return f;
+        }
+    }
+
+    // the field of a target if it is already computed, null otherwise
+    int[] cachedField(int gx, int gy) {
+        if (!map.free(gx, gy)) return null;
+        int goal = map.cell(gx, gy);
+        int[][] all = table;
+        if (all != null) return all[goal];
+        synchronized (this) {
+            return lru.get(goal);
+        }
+    }
+
+    /** True shortest-path distance in moves, -1 if unreachable. */
+    public int distance(int sx, int sy, int gx, int gy) {
+        if (!map.inside(sx, sy)) return -1;
+        int[] f = field(gx, gy);
+        return f == null ? -1 : f[map.cell(sx, sy)];
+    }
+
+    // breadth-first distances from every cell to (gx,gy)
+    private int[] bfs(int gx, int gy) {
+        int[] dist = new int[cells];
+        java.util.Arrays.fill(dist, -1);
+        int goal = map.cell(gx, gy);
+        dist[goal] = 0;
+        int head = 0, tail = 0;
+        queue[tail++] = goal;
+        while (head < tail) {
+            int cur = queue[head++];
+            int cx = map.cellX(cur), cy = map.cellY(cur);
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + Direction.DX[d], ny = cy + Direction.DY[d];
+                if (!map.free(nx, ny)) continue;
+                int next = map.cell(nx, ny);
+                if (dist[next] < 0) {
+                    dist[next] = dist[cur] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return dist;
+    }
+}
@@ -0,0 +1,66 @@
+package env;
+
+import jason.asSyntax.Literal;
+import jason.environment.Environment;
+
+/**
+ * Incremental percept publisher.
+ * Every percept the environment exposes lives in a numbered slot. Publishing a slot
+ * compares the new literal with the one already published there and only calls
+ * addPercept/removePercept when it actually changed. Literals are expected to come
+ * from {@link PerceptLiterals}, so an unchanged percept is the same instance and the
+ * comparison is a reference check.
+ * An engine either publishes global percepts or the percepts of one agent.
+ * It is not thread-safe: one thread at a time per engine.
+ */
+public class PerceptEngine {
+
+    private final Environment env;
+    private final String agName;     // null for global percepts
+    private Literal[] published;
+    private long changes = 0;
+
+    public PerceptEngine(Environment env, int slots) {
+        this(env, null, slots);
+    }
+
+    public PerceptEngine(Environment env, String agName, int slots) {
+        this.env = env;
+        this.agName = agName;
+        this.published = new Literal[slots];
+    }
+
+    // publish lit in slot (null removes whatever the slot holds)
+    public void set(int slot, Literal lit) {
+        if (slot >= published.length) {
+            published = java.util.Arrays.copyOf(published, Math.max(slot + 1, published.length * 2));
+        }
+        Literal old = published[slot];
+        if (old == lit || (old != null && old.equals(lit))) {
+            return;
+        }
+        if (agName == null) {
+            if (old != null) env.removePercept(old);
+            if (lit != null) env.addPercept(lit);
+        } else {
+            if (old != null) env.removePercept(agName, old);
+            if (lit != null) env.addPercept(agName, lit);
+        }
+        published[slot] = lit;
+        changes++;
+    }
+
+    public Literal get(int slot) {
+        return slot < published.length ? published[slot] : null;
+    }
+
+    // forget everything published (after a clearPercepts on the environment)
+    public void reset() {
+        java.util.Arrays.fill(published, null);
+    }
+
+    // number of add/remove operations done so far
+    public long changes() {
+        return changes;
+    }
+}
@@ -0,0 +1,150 @@
+package env;
+
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Atom;
+import jason.asSyntax.Literal;
+import jason.asSyntax.Term;
+
+/**
+ * Cache of the percept literals of the environment, built with ASSyntax once and
+ * reused on every step. Literals are indexed by object index and packed grid cell.
+ * Cell-indexed literals live in direct-mapped caches: on small maps every cell has
+ * its own entry, on large maps the cache stays bounded and a miss just rebuilds
+ * the literal. Object locations keep only each object's current literal, rebuilt
+ * when the object has moved, so memory grows with the objects and not with the map.
+ *
+ * Shared by the agents, which publish their percepts concurrently: the count and
+ * capacity literals are built up front and only read, and each cache slot holds one
+ * immutable cell/literal pair, so a racing put can lose an entry but never pair a
+ * cell with another cell's literal.
+ */
+public class PerceptLiterals {
+
+    // entries per direct-mapped cache on large maps
+    private static final int MAX_CACHE = 1 << 14;
+
+    private final GridMap map;
+    private final Atom[] objAtoms;
+    private final CellCache position;
+    private final CellCache obstacle;
+    // current location literal of each object
+    private final Entry[] location;
+    private final Literal[] carrying;
+    private final Literal[] colored;
+    private final Literal[] open;
+    private final Literal[] carryCount;
+    private final Literal[] capacity;
+
+    public static final Literal MORE_EPISODES = ASSyntax.createLiteral("more_episodes");
+    public static final Literal EPISODE_TIMEOUT = ASSyntax.createLiteral("episode_timeout");
+
+    public PerceptLiterals(String[] objectNames, GridMap map) {
+        this.map = map;
+        int n = objectNames.length;
+        objAtoms = new Atom[n];
+        carrying = new Literal[n];
+        colored = new Literal[n];
+        open = new Literal[n];
+        location = new Entry[n];
+        for (int i = 0; i < n; i++) {
+            objAtoms[i] = ASSyntax.createAtom(objectNames[i]);
+            carrying[i] = ASSyntax.createLiteral("carrying", objAtoms[i]);
+            colored[i] = ASSyntax.createLiteral("colored", objAtoms[i]);
+            open[i] = ASSyntax.createLiteral("open", objAtoms[i]);
+        }
+        position = new CellCache(map.cells());
+        obstacle = new CellCache(map.cells());
+        // an agent never carries more than every object, nor more than its capacity
+        carryCount = new Literal[Math.max(n, map.capacity()) + 1];
+        for (int i = 0; i < carryCount.length; i++) carryCount[i] = ASSyntax.createLiteral("carry_count", num(i));
+        capacity = new Literal[map.capacity() + 1];
+        for (int i = 0; i < capacity.length; i++) capacity[i] = ASSyntax.createLiteral("capacity", num(i));
+    }
+
+    // literal per cell, direct-mapped on cell & mask
+    private static final class CellCache {
+        final Entry[] entries;
+        final int mask;
+
+        CellCache(int cells) {
+            int n = Integer.highestOneBit(Math.max(1, Math.min(cells, MAX_CACHE) - 1)) << 1;
+            entries = new Entry[n];
+            mask = n - 1;
+        }
+
+        Literal get(int cell) {
+            Entry e = entries[cell & mask];
+            return e != null && e.cell == cell ? e.literal : null;
+        }
+
+        Literal put(int cell, Literal l) {
+            entries[cell & mask] = new Entry(cell, l);
+            return l;
+        }
+    }
+
+    // final fields: a reader sees the whole pair or an older one, never half of each
+    private static final class Entry {
+        final int cell;
+        final Literal literal;
+
+        Entry(int cell, Literal literal) {
+            this.cell = cell;
+            this.literal = literal;
+        }
+    }
+
+    private static Term num(double v) {
+        return ASSyntax.createNumber(v);
+    }
+
+    public Literal position(int x, int y) {
+        int c = map.cell(x, y);
+        Literal l = position.get(c);
+        return l != null ? l : position.put(c, ASSyntax.createLiteral("position", num(x), num(y)));
+    }
+
+    public Literal obstacle(int x, int y) {
+        int c = map.cell(x, y);
+        Literal l = obstacle.get(c);
+        return l != null ? l : obstacle.put(c, ASSyntax.createLiteral("obstacle", num(x), num(y)));
+    }
+
+    public Literal location(int obj, int x, int y) {
+        int c = map.cell(x, y);
+        Entry e = location[obj];
+        if (e != null && e.cell == c) return e.literal;
+        Literal l = ASSyntax.createLiteral("location", objAtoms[obj], num(x), num(y));
+        location[obj] = new Entry(c, l);
+        return l;
+    }
+
+    public Literal carrying(int obj) {
+        return carrying[obj];
+    }
+
+    public Literal colored(int obj) {
+        return colored[obj];
+    }
+
+    public Literal open(int obj) {
+        return open[obj];
+    }
+
+    public Literal carryCount(int n) {
+        return n < carryCount.length ? carryCount[n] : ASSyntax.createLiteral("carry_count", num(n));
+    }
+
+    public Literal capacity(int n) {
+        return n < capacity.length ? capacity[n] : ASSyntax.createLiteral("capacity", num(n));
+    }
+
+    // rewards change every step, so they are not cached
+    public Literal stepReward(double r) {
+        return ASSyntax.createLiteral("step_reward", num(r));
+    }
+
+    public Literal episodeReward(double r) {
+        return ASSyntax.createLiteral("episode_reward", num(r));
+    }
+}
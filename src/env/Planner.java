@@ -0,0 +1,94 @@
+package env;
+
+/**
+ * Route planning for one agent in a multi-agent grid. Routes are shortest paths over the
+ * static obstacles (distance field when cached, otherwise the {@link GridSearch} of the path
+ * service's strategy) that avoid the cells other agents hold in the {@link ReservationTable}:
+ * on a cached field the walk takes a free downhill neighbour, and when every one is held it
+ * searches around the held cells. If the held cells
+ * cut the agent off, the route ignores them; the moves then fail where the cells are still held.
+ *
+ * One instance per agent; not thread-safe.
+ */
+public class Planner {
+
+    private final GridMap map;
+    private final PathService service;
+    private final GridSearch finder;
+    private final ReservationTable reservations;
+    private final int agent;
+
+    private byte[] path = new byte[16];
+    private int lastExpanded = 0;
+
+    public Planner(GridMap map, PathService service, ReservationTable reservations, int agent) {
+        this.map = map;
+        this.service = service;
+        this.finder = service.newSearch();
+        this.reservations = reservations;
+        this.agent = agent;
+    }
+
+    /**
+     * Plans a route from (sx,sy) to (gx,gy), written to {@link #path()}.
+     * @return number of moves, -1 if unreachable
+     */
+    public int plan(int sx, int sy, int gx, int gy) {
+        lastExpanded = 0;
+        if (!map.inside(sx, sy)) return -1;
+        int[] f = service.cachedField(gx, gy);
+        if (f != null) {
+            if (f[map.cell(sx, sy)] < 0) return -1;
+            int len = walk(f, sx, sy, true);
+            if (len >= 0) return len;
+        }
+        int len = finder.search(sx, sy, gx, gy, reservations, agent);
+        lastExpanded = finder.expanded();
+        if (len < 0) {
+            if (f != null) return walk(f, sx, sy, false);
+            len = finder.search(sx, sy, gx, gy);
+            lastExpanded += finder.expanded();
+        }
+        if (len > 0) {
+            ensurePath(len);
+            System.arraycopy(finder.path(), 0, path, 0, len);
+        }
+        return len;
+    }
+
+    // follow the field downhill; with avoid, only through cells no other agent holds (-1 if stuck)
+    private int walk(int[] f, int sx, int sy, boolean avoid) {
+        int cur = map.cell(sx, sy);
+        int len = f[cur];
+        ensurePath(len);
+        for (int i = 0; i < len; i++) {
+            int cx = map.cellX(cur), cy = map.cellY(cur);
+            int step = Direction.NONE;
+            for (int d = 0; d < 4 && step == Direction.NONE; d++) {
+                int nx = cx + Direction.DX[d], ny = cy + Direction.DY[d];
+                if (!map.inside(nx, ny)) continue;
+                int next = map.cell(nx, ny);
+                if (f[next] != f[cur] - 1) continue;
+                if (avoid && f[next] > 0 && reservations.heldByOther(next, agent)) continue;
+                step = d;
+                path[i] = (byte) d;
+                cur = next;
+            }
+            if (step == Direction.NONE) return -1;
+        }
+        return len;
+    }
+
+    private void ensurePath(int len) {
+        if (path.length < len) path = new byte[Math.max(len, path.length * 2)];
+    }
+
+    public byte[] path() {
+        return path;
+    }
+
+    /** Nodes expanded by the last {@link #plan}, 0 when it followed a cached field. */
+    public int lastExpanded() {
+        return lastExpanded;
+    }
+}
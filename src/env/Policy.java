@@ -0,0 +1,14 @@
+package env;
+
+/**
+ * Chooses the actions of an agent playing a {@link SimKernel} directly, without Jason:
+ * evaluated with {@link SimKernel#run(Policy, SimAgent, int)}.
+ */
+public interface Policy {
+
+    /** Called when an episode starts (after the kernel was reset). */
+    default void reset(SimKernel sim, SimAgent self) {}
+
+    /** The next action of self, built with {@link SimKernel#action(int, int)}. */
+    int act(SimKernel sim, SimAgent self);
+}
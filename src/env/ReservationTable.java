@@ -0,0 +1,44 @@
+package env;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Which agent holds each cell. An agent always holds the cell it stands on and, while it
+ * follows a route, the next few cells of the route. Cells are taken and given back with a
+ * compare-and-set, so agents on different cells never contend. The planner treats cells held by
+ * other agents as blocked, and a move into a cell held by another agent fails.
+ */
+public class ReservationTable {
+
+    public static final int FREE = -1;
+
+    private final AtomicIntegerArray owner;
+
+    public ReservationTable(int cells) {
+        owner = new AtomicIntegerArray(cells);
+        clear();
+    }
+
+    /** Takes the cell for agent; true if it was free or already held by agent. */
+    public boolean reserve(int cell, int agent) {
+        return owner.get(cell) == agent || owner.compareAndSet(cell, FREE, agent);
+    }
+
+    /** Gives the cell back if agent holds it. */
+    public void release(int cell, int agent) {
+        owner.compareAndSet(cell, agent, FREE);
+    }
+
+    public boolean heldByOther(int cell, int agent) {
+        int o = owner.get(cell);
+        return o != FREE && o != agent;
+    }
+
+    public int owner(int cell) {
+        return owner.get(cell);
+    }
+
+    public void clear() {
+        for (int i = 0; i < owner.length(); i++) owner.set(i, FREE);
+    }
+}
@@ -0,0 +1,116 @@
+package env;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Streaming results of a run, each stream optional. One buffered writer stays open for
+ * the whole run and gets one CSV line per episode, flushed at the end of the line so the
+ * file can be tailed while the run is going. Every percept update's reward components
+ * can go to a compact binary trace (fixed 32-byte big-endian records, see {@link #step}).
+ * Writes are synchronized: every agent's thread records its own steps.
+ */
+public class ResultsSink implements AutoCloseable {
+
+    public static final String EPISODE_HEADER =
+        "episode,seed,reward,steps,actions,sim_ms,wall_ms,t_x,t_y,ch_x,ch_y,d_x,d_y";
+
+    private final BufferedWriter episodes;
+    private final DataOutputStream steps;
+    private final StringBuilder line = new StringBuilder(128);
+
+    /**
+     * @param episodeFile CSV file for the per-episode records (truncated), null to disable
+     * @param stepFile binary file for per-step reward components, null to disable
+     */
+    public ResultsSink(String episodeFile, String stepFile) throws IOException {
+        if (episodeFile != null) {
+            episodes = Files.newBufferedWriter(Paths.get(episodeFile), StandardCharsets.UTF_8);
+            episodes.write(EPISODE_HEADER);
+            episodes.newLine();
+            episodes.flush();
+        } else {
+            episodes = null;
+        }
+        if (stepFile != null) {
+            OutputStream os = Files.newOutputStream(Paths.get(stepFile));
+            steps = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+        } else {
+            steps = null;
+        }
+    }
+
+    public boolean tracesSteps() {
+        return steps != null;
+    }
+
+    public synchronized void episode(int episode, long seed, double reward, int stepCount, long actions,
+                        long simMillis, long wallMillis, int tx, int ty, int chx, int chy, int dx, int dy) {
+        if (episodes == null) {
+            flushSteps();
+            return;
+        }
+        line.setLength(0);
+        line.append(episode).append(',').append(seed).append(',').append(reward).append(',')
+            .append(stepCount).append(',').append(actions).append(',')
+            .append(simMillis).append(',').append(wallMillis).append(',')
+            .append(tx).append(',').append(ty).append(',')
+            .append(chx).append(',').append(chy).append(',')
+            .append(dx).append(',').append(dy);
+        try {
+            episodes.append(line);
+            episodes.newLine();
+            episodes.flush();
+            if (steps != null) steps.flush();
+        } catch (IOException e) {
+            EnvLog.error("Failed to write episode results: " + e.getMessage());
+        }
+    }
+
+    private void flushSteps() {
+        if (steps == null) return;
+        try {
+            steps.flush();
+        } catch (IOException e) {
+            EnvLog.error("Failed to write step trace: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One percept update: int episode, int step, short x, short y, then float base,
+     * carry, incompatible, goals and total reward of the update (32 bytes).
+     */
+    public synchronized void step(int episode, int step, int x, int y,
+                     double base, double carry, double incompatible, double goals, double total) {
+        if (steps == null) return;
+        try {
+            steps.writeInt(episode);
+            steps.writeInt(step);
+            steps.writeShort(x);
+            steps.writeShort(y);
+            steps.writeFloat((float) base);
+            steps.writeFloat((float) carry);
+            steps.writeFloat((float) incompatible);
+            steps.writeFloat((float) goals);
+            steps.writeFloat((float) total);
+        } catch (IOException e) {
+            EnvLog.error("Failed to write step trace: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (episodes != null) episodes.close();
+            if (steps != null) steps.close();
+        } catch (IOException e) {
+            EnvLog.error("Failed to close results: " + e.getMessage());
+        }
+    }
+}
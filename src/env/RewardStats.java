@@ -0,0 +1,114 @@
+package env;
+
+/**
+ * Streaming statistics of episode rewards: count, mean and variance by Welford's update
+ * (numerically stable, O(1) per episode), min, max, and a few quantiles estimated with
+ * {@link P2Quantile}. Nothing is kept per episode, so a run can go on for millions of them.
+ */
+public final class RewardStats {
+
+    // coefficients of Acklam's inverse normal CDF, see z()
+    private static final double[] A = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+            1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+    private static final double[] B = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+            6.680131188771972e+01, -1.328068155288572e+01};
+    private static final double[] C = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+            -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+    private static final double[] D = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+            3.754408661907416e+00};
+
+    private long count;
+    private double mean;
+    // sum of squared deviations from the running mean
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private final P2Quantile[] quantiles;
+
+    /** @param quantiles the quantiles to estimate, each in (0, 1) */
+    public RewardStats(double... quantiles) {
+        this.quantiles = new P2Quantile[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) this.quantiles[i] = new P2Quantile(quantiles[i]);
+    }
+
+    public void add(double x) {
+        count++;
+        double delta = x - mean;
+        mean += delta / count;
+        m2 += delta * (x - mean);
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+        for (P2Quantile q : quantiles) q.add(x);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double mean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /** Sample variance (n - 1 in the denominator), 0 below two observations. */
+    public double variance() {
+        return count < 2 ? 0.0 : m2 / (count - 1);
+    }
+
+    public double stdDev() {
+        return Math.sqrt(variance());
+    }
+
+    /** Standard error of the mean. */
+    public double stdError() {
+        return count == 0 ? Double.POSITIVE_INFINITY : Math.sqrt(variance() / count);
+    }
+
+    /**
+     * Half-width of the normal confidence interval of the mean for the critical value z
+     * (see {@link #z(double)}); infinite below two observations.
+     */
+    public double halfWidth(double z) {
+        return count < 2 ? Double.POSITIVE_INFINITY : z * stdError();
+    }
+
+    public double min() {
+        return min;
+    }
+
+    public double max() {
+        return max;
+    }
+
+    public int quantiles() {
+        return quantiles.length;
+    }
+
+    // the i-th quantile given to the constructor: its p and its estimate
+    public double quantileP(int i) {
+        return quantiles[i].p();
+    }
+
+    public double quantile(int i) {
+        return quantiles[i].value();
+    }
+
+    /**
+     * Two-sided critical value of the standard normal for a confidence level in (0, 1)
+     * (1.96 for 0.95), by Acklam's rational approximation of the inverse normal CDF
+     * (relative error below 1.2e-9).
+     */
+    public static double z(double confidence) {
+        if (!(confidence > 0.0 && confidence < 1.0)) {
+            throw new IllegalArgumentException("Confidence outside (0,1): " + confidence);
+        }
+        double p = (1 + confidence) / 2;
+        if (p > 0.97575) {
+            double r = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((C[0] * r + C[1]) * r + C[2]) * r + C[3]) * r + C[4]) * r + C[5])
+                    / ((((D[0] * r + D[1]) * r + D[2]) * r + D[3]) * r + 1);
+        }
+        double r = p - 0.5, s = r * r;
+        return (((((A[0] * s + A[1]) * s + A[2]) * s + A[3]) * s + A[4]) * s + A[5]) * r
+                / (((((B[0] * s + B[1]) * s + B[2]) * s + B[3]) * s + B[4]) * s + 1);
+    }
+}
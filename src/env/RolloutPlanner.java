@@ -0,0 +1,275 @@
+package env;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * Monte Carlo lookahead over a {@link SimKernel}: the next primitive action of an agent is
+ * chosen by playing rollouts from a {@link KernelSnapshot} of the current state, each one
+ * starting with a candidate action (paint/open in reach, pickups, drops, moves, wait) and
+ * continued by a rollout policy ({@link GreedyPolicy} by default) to the end of the episode or
+ * the horizon, under fresh random object moves. The candidate given the most rollouts wins.
+ *
+ * Root-parallel: each worker of a fork-join pool restores the snapshot into its own kernel and
+ * keeps its own statistics, giving rollouts to the candidates by UCB1 until the time budget
+ * runs out; the statistics of the workers are summed at the end. One decision at a time.
+ * The budget is kept on large maps too: the horizon is capped, a rollout stops at the
+ * deadline, and once the deadline has passed the untried candidates are left out.
+ *
+ * The caller must keep other threads from stepping sim while decide takes its snapshot.
+ *
+ * gradle runLookahead [-Plookahead.episodes=N] [-Pmas.lookaheadMs=M] [-Pmas.lookaheadThreads=N]
+ * plays episodes on the kernel with the planner choosing every action.
+ */
+public class RolloutPlanner {
+
+    /** The action a decision returns when waiting is best (SimKernel.WAIT). */
+    public static final int WAIT = SimKernel.action(SimKernel.WAIT, 0);
+    // steps of a rollout after its first action, per cell of the map, at most MAX_HORIZON
+    private static final int HORIZON_PER_CELL = 8;
+    private static final int MAX_HORIZON = 2048;
+    // steps between two looks at the clock in a rollout
+    private static final int DEADLINE_CHECK = 64;
+    // probability of a random move in the default rollout policy
+    private static final double EPSILON = 0.1;
+    // UCB1 exploration constant, in reward units (a goal is worth 0.8 to 1)
+    private static final double EXPLORATION = 0.5;
+
+    private final GridMap map;
+    private final long seed;
+    private final int threads;
+    private final int horizon;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Worker> workers;
+
+    // the decision in progress: state, agent and candidate actions
+    private final KernelSnapshot root = new KernelSnapshot();
+    private int self;
+    private final int[] candidates;
+    private int candidateCount;
+    private long decisions;
+    // result of the last decision
+    private long lastRollouts;
+    private double lastValue;
+
+    /** Rollouts continued by a {@link GreedyPolicy} over the given distance fields. */
+    public RolloutPlanner(GridMap map, PathService paths, long seed, int threads) {
+        this(map, seed, threads, random -> new GreedyPolicy(map, paths, random, EPSILON));
+    }
+
+    /**
+     * @param rolloutPolicy builds the rollout policy of a worker thread around the worker's
+     *                      random generator (reseeded for every rollout)
+     */
+    public RolloutPlanner(GridMap map, long seed, int threads, Function<Random, Policy> rolloutPolicy) {
+        this.map = map;
+        this.seed = seed;
+        this.threads = Math.max(1, threads);
+        this.horizon = (int) Math.min(MAX_HORIZON, (long) HORIZON_PER_CELL * map.cells());
+        this.pool = new ForkJoinPool(this.threads);
+        this.workers = ThreadLocal.withInitial(() -> new Worker(rolloutPolicy));
+        this.candidates = new int[6 + 2 * map.objectNames().size()];
+    }
+
+    /** A kernel, random generator and rollout policy per thread. */
+    private final class Worker {
+        final SimKernel kernel = new SimKernel(map, seed);
+        final Random random = new Random();
+        final Policy policy;
+
+        Worker(Function<Random, Policy> rolloutPolicy) {
+            policy = rolloutPolicy.apply(random);
+        }
+
+        // return of candidate c: its reward and the rewards of the rollout after it, cut short
+        // at the horizon or the deadline
+        double rollout(int c, long deadline) {
+            while (kernel.agentCount() < root.agents()) kernel.addAgent();
+            kernel.restore(root);
+            kernel.reseed(random.nextLong());
+            SimAgent a = kernel.agent(self);
+            double before = a.episodeReward;
+            policy.reset(kernel, a);
+            kernel.step(a, candidates[c]);
+            for (int i = 0; i < horizon && !kernel.goalsAwarded(); i++) {
+                if (i % DEADLINE_CHECK == DEADLINE_CHECK - 1 && System.nanoTime() >= deadline) break;
+                kernel.step(a, policy.act(kernel, a));
+            }
+            return a.episodeReward - before;
+        }
+    }
+
+    /** Rollouts of one worker until the deadline (at least one), every candidate first in order. */
+    @SuppressWarnings("serial")
+    private final class Search extends RecursiveAction {
+        final long deadline;
+        final long seed;
+        final long[] counts;
+        final double[] sums;
+
+        Search(long deadline, long seed, int n) {
+            this.deadline = deadline;
+            this.seed = seed;
+            this.counts = new long[n];
+            this.sums = new double[n];
+        }
+
+        @Override
+        protected void compute() {
+            Worker w = workers.get();
+            w.random.setSeed(seed);
+            long total = 0;
+            do {
+                int c = select(total);
+                sums[c] += w.rollout(c, deadline);
+                counts[c]++;
+                total++;
+            } while (System.nanoTime() < deadline);
+        }
+
+        // first the untried candidates in order, then UCB1
+        private int select(long total) {
+            if (total < counts.length) return (int) total;
+            double log = Math.log(total);
+            int best = 0;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int c = 0; c < counts.length; c++) {
+                double score = sums[c] / counts[c] + EXPLORATION * Math.sqrt(log / counts[c]);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = c;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * The next action of agent a of sim, built with {@link SimKernel#action(int, int)}, chosen
+     * with rollouts on all the planner's threads for about budgetNanos.
+     */
+    public synchronized int decide(SimKernel sim, SimAgent a, long budgetNanos) {
+        if (sim.goalsAwarded()) return WAIT;
+        sim.snapshot(root);
+        self = a.id;
+        listCandidates(sim, a);
+        decisions++;
+        if (candidateCount == 1) {
+            lastRollouts = 0;
+            return candidates[0];
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        Search[] searches = new Search[threads];
+        for (int i = 0; i < threads; i++) {
+            searches[i] = new Search(deadline, EnvConfig.episodeSeed(seed, (int) (decisions * threads + i)), candidateCount);
+            pool.execute(searches[i]);
+        }
+        long[] counts = new long[candidateCount];
+        double[] sums = new double[candidateCount];
+        for (Search s : searches) {
+            s.join();
+            for (int c = 0; c < candidateCount; c++) {
+                counts[c] += s.counts[c];
+                sums[c] += s.sums[c];
+            }
+        }
+        // the candidate UCB1 played most (robust to a lucky mean), the better mean on a tie;
+        // one that the deadline left untried is never chosen while another was played
+        int best = 0;
+        lastRollouts = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            lastRollouts += counts[c];
+            if (counts[c] > counts[best] || counts[c] == counts[best] && sums[c] / counts[c] > sums[best] / counts[best]) best = c;
+        }
+        lastValue = sums[best] / counts[best];
+        return candidates[best];
+    }
+
+    // the primitive actions worth trying: paint/open in reach, pickups of tools on the agent's
+    // cell, drops, moves onto free cells, and waiting
+    private void listCandidates(SimKernel sim, SimAgent a) {
+        ObjectRegistry objects = sim.objects();
+        int n = 0;
+        int b = objects.id("b"), cl = objects.id("cl"), k = objects.id("k"), cd = objects.id("cd");
+        if (sim.carries(a, b) && sim.carries(a, cl)) {
+            for (int target : new int[]{objects.id("t"), objects.id("ch")}) {
+                if (!objects.has(target, ObjectRegistry.COLORED) && near(a, objects, target)) {
+                    candidates[n++] = SimKernel.action(SimKernel.PAINT, target);
+                }
+            }
+        }
+        int d = objects.id("d");
+        if (sim.carries(a, k) && sim.carries(a, cd) && !sim.doorOpened() && near(a, objects, d)) {
+            candidates[n++] = SimKernel.action(SimKernel.OPEN, d);
+        }
+        for (int i = 0; i < objects.size(); i++) {
+            if (sim.isTool(i) && sim.holder(i) < 0 && a.carrying < a.capacity
+                    && objects.x(i) == a.x && objects.y(i) == a.y) {
+                candidates[n++] = SimKernel.action(SimKernel.PICKUP, i);
+            }
+        }
+        for (int i = 0; i < objects.size(); i++) {
+            if (sim.carries(a, i)) candidates[n++] = SimKernel.action(SimKernel.DROP, i);
+        }
+        for (int dir = 0; dir < 4; dir++) {
+            if (map.free(a.x + Direction.DX[dir], a.y + Direction.DY[dir])) {
+                candidates[n++] = SimKernel.action(SimKernel.MOVE, dir);
+            }
+        }
+        candidates[n++] = WAIT;
+        candidateCount = n;
+    }
+
+    private static boolean near(SimAgent a, ObjectRegistry objects, int obj) {
+        return Math.abs(objects.x(obj) - a.x) + Math.abs(objects.y(obj) - a.y) <= 1;
+    }
+
+    /** Rollouts played for the last decision (0 if it had a single candidate). */
+    public synchronized long lastRollouts() {
+        return lastRollouts;
+    }
+
+    /** Mean return of the action chosen by the last decision. */
+    public synchronized double lastValue() {
+        return lastValue;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public static void main(String[] args) throws IOException {
+        EnvConfig config = EnvConfig.fromSystemProperties();
+        if (System.getProperty("mas.log", "").isEmpty()) EnvLog.setLevel(EnvLog.WARN);
+        int episodes = Math.max(0, Integer.getInteger("lookahead.episodes", 100));
+        GridMap map = config.mapFile() == null || config.mapFile().isEmpty() ? GridMap.defaultMap() : MapLoader.load(config.mapFile());
+
+        RolloutPlanner planner = new RolloutPlanner(map, new PathService(map), config.seed(), config.lookaheadThreads());
+        long budget = config.lookaheadMillis() * 1_000_000L;
+        // the planner plays the kernel, episode k from seed episodeSeed(base, k) as everywhere else
+        SimKernel kernel = new SimKernel(map, config.seed());
+        SimAgent agent = kernel.addAgent();
+        double sum = 0.0;
+        long steps = 0, rollouts = 0;
+        for (int k = 0; k < episodes; k++) {
+            kernel.resetEpisode(k);
+            for (int i = 0; i < 100 * map.cells() && !kernel.goalsAwarded(); i++) {
+                kernel.step(agent, planner.decide(kernel, agent, budget));
+                rollouts += planner.lastRollouts();
+            }
+            sum += agent.episodeReward();
+            steps += kernel.clock().ticks();
+            System.out.printf(java.util.Locale.ROOT, "Episode %d: reward %.4f in %d actions%n",
+                    k, agent.episodeReward(), kernel.clock().ticks());
+        }
+        planner.shutdown();
+        if (episodes > 0) {
+            System.out.printf(java.util.Locale.ROOT, "Lookahead: %d episodes, mean reward %.4f, mean %.1f actions, %.0f rollouts per action (%d ms, %d threads)%n",
+                    episodes, sum / episodes, (double) steps / episodes, (double) rollouts / steps,
+                    config.lookaheadMillis(), config.lookaheadThreads());
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package env;
+
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Structure;
+
+/**
+ * Java port of the decision loop of agent.asl, driving an {@link EnvironmentExt} directly
+ * through executeAction (no Jason agent, no percept round trip). Used to run whole episodes
+ * in benchmarks: the same optimal plan up to its next goal ({@link MissionPlanner}, as
+ * env.mission_plan), with the same greedy fallback: goal utilities ({@link GoalUtilities}, as
+ * env.best_goal), same tool handling (drop the tools of the other task, make room when full)
+ * and the same actions.
+ */
+public class ScriptedAgent {
+
+    static final int PAINT_TABLE = MissionState.PAINT_TABLE;
+    static final int PAINT_CHAIR = MissionState.PAINT_CHAIR;
+    static final int OPEN_DOOR = MissionState.OPEN_DOOR;
+    // retries of approach + paint/open when the target moved away in between
+    private static final int MAX_ATTEMPTS = 20;
+
+    private final EnvironmentExt env;
+    private final String agName;
+    private final AgentState self;
+    private final ObjectRegistry objects;
+    private final GoalUtilities utilities;
+    private final MissionPlanner planner;
+    private final MissionState state = new MissionState();
+    private final int idB, idCl, idK, idCd, idT, idCh, idD;
+    // prebuilt actions per object id
+    private final Structure[] pickup, drop, paint, open, approach;
+    private final Structure resetEpisode = ASSyntax.createStructure("reset_episode");
+    private final boolean[] completed = new boolean[3];
+    private long actions;
+
+    public ScriptedAgent(EnvironmentExt env, String agName) {
+        this.env = env;
+        this.agName = agName;
+        this.self = env.agent(agName);
+        this.objects = env.objects();
+        this.utilities = new GoalUtilities(env.paths());
+        this.planner = new MissionPlanner(env.paths());
+        idB = objects.id("b"); idCl = objects.id("cl"); idK = objects.id("k"); idCd = objects.id("cd");
+        idT = objects.id("t"); idCh = objects.id("ch"); idD = objects.id("d");
+        int n = objects.size();
+        pickup = new Structure[n];
+        drop = new Structure[n];
+        paint = new Structure[n];
+        open = new Structure[n];
+        approach = new Structure[n];
+        for (int i = 0; i < n; i++) {
+            pickup[i] = ASSyntax.createStructure("pickup", ASSyntax.createAtom(objects.name(i)));
+            drop[i] = ASSyntax.createStructure("drop", ASSyntax.createAtom(objects.name(i)));
+            paint[i] = ASSyntax.createStructure("paint", ASSyntax.createAtom(objects.name(i)));
+            open[i] = ASSyntax.createStructure("open", ASSyntax.createAtom(objects.name(i)));
+            approach[i] = ASSyntax.createStructure("approach", ASSyntax.createAtom(objects.name(i)));
+        }
+    }
+
+    /**
+     * Plays the current episode until the three goals are done (or a goal gives up after
+     * {@link #MAX_ATTEMPTS}), then resets the environment if more episodes are to be run.
+     * @return the reward of the episode
+     */
+    public double runEpisode() {
+        double reward = playEpisode();
+        if (env.moreEpisodes()) act(resetEpisode);
+        return reward;
+    }
+
+    /** Plays the current episode without resetting the environment afterwards. */
+    public double playEpisode() {
+        completed[PAINT_TABLE] = completed[PAINT_CHAIR] = completed[OPEN_DOOR] = false;
+        while (!(completed[PAINT_TABLE] && completed[PAINT_CHAIR] && completed[OPEN_DOOR])) {
+            // the optimal plan up to its next goal, then plan again (the targets move);
+            // the greedy choice if there is no plan or a step of it failed
+            if (planner.plan(observe()) > 0 && followPlan()) continue;
+            int goal = bestGoal();
+            if (!executeGoal(goal)) break;
+            completed[goal] = true;
+            if (goal == OPEN_DOOR) {
+                dropIfCarried(idK);
+                dropIfCarried(idCd);
+            } else if (completed[PAINT_TABLE] && completed[PAINT_CHAIR]) {
+                dropIfCarried(idB);
+                dropIfCarried(idCl);
+            }
+        }
+        return env.episodeReward();
+    }
+
+    public EnvironmentExt environment() {
+        return env;
+    }
+
+    /** Actions executed so far. */
+    public long actions() {
+        return actions;
+    }
+
+    // ----------- GOAL SELECTION -----------
+    // what agent.asl believes: own position and inventory, locations of the objects not carried
+    int bestGoal() {
+        return utilities.best(observe());
+    }
+
+    private MissionState observe() {
+        state.clear();
+        state.position(self.x, self.y);
+        state.capacity(self.capacity);
+        for (int i = 0; i < objects.size(); i++) {
+            if (carrying(i)) {
+                state.carrying(objects.name(i));
+            } else if (!objects.has(i, ObjectRegistry.CARRIED)) {
+                state.location(objects.name(i), objects.x(i), objects.y(i));
+            }
+        }
+        for (int goal = PAINT_TABLE; goal <= OPEN_DOOR; goal++) {
+            if (completed[goal]) state.completed(MissionState.GOALS[goal]);
+        }
+        return state;
+    }
+
+    private int target(int goal) {
+        return goal == PAINT_TABLE ? idT : goal == PAINT_CHAIR ? idCh : idD;
+    }
+
+    private boolean hasTools(int goal) {
+        return goal == OPEN_DOOR ? carrying(idK) && carrying(idCd) : carrying(idB) && carrying(idCl);
+    }
+
+    // ----------- PLAN STEPS -----------
+    private boolean followPlan() {
+        for (int i = 0; i < planner.steps(); i++) {
+            if (!executeStep(i)) return false;
+            if (planner.op(i) == MissionPlanner.PAINT || planner.op(i) == MissionPlanner.OPEN) return true;
+        }
+        return true;
+    }
+
+    private boolean executeStep(int i) {
+        int obj = objects.id(planner.object(i));
+        switch (planner.op(i)) {
+            case MissionPlanner.PICKUP:
+                acquire(obj);
+                return carrying(obj);
+            case MissionPlanner.DROP:
+                if (self.x != planner.x(i) || self.y != planner.y(i)) {
+                    act(ASSyntax.createStructure("goto_coord",
+                            ASSyntax.createNumber(planner.x(i)), ASSyntax.createNumber(planner.y(i))));
+                }
+                return dropIfCarried(obj);
+            default:
+                int goal = obj == idT ? PAINT_TABLE : obj == idCh ? PAINT_CHAIR : OPEN_DOOR;
+                Structure action = planner.op(i) == MissionPlanner.OPEN ? open[obj] : paint[obj];
+                for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                    act(approach[obj]);
+                    if (act(action)) {
+                        completed[goal] = true;
+                        return true;
+                    }
+                }
+                return false;
+        }
+    }
+
+    // ----------- GOAL EXECUTION -----------
+    private boolean executeGoal(int goal) {
+        if (!hasTools(goal)) {
+            if (goal == OPEN_DOOR) {
+                dropIfCarried(idB); dropIfCarried(idCl);
+                acquire(idK); acquire(idCd);
+            } else {
+                dropIfCarried(idK); dropIfCarried(idCd);
+                acquire(idB); acquire(idCl);
+            }
+        }
+        int target = target(goal);
+        Structure action = goal == OPEN_DOOR ? open[target] : paint[target];
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            act(approach[target]);
+            if (act(action)) return true;
+        }
+        return false;
+    }
+
+    private void acquire(int tool) {
+        if (carrying(tool)) return;
+        if (self.carrying >= self.capacity) makeRoom();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && !carrying(tool); attempt++) {
+            gotoObject(tool);
+            act(pickup[tool]);
+        }
+    }
+
+    // agent.asl keeps the brush while a paint goal is still open and drops a door tool instead
+    private void makeRoom() {
+        if (carrying(idB) && !(completed[PAINT_TABLE] || completed[PAINT_CHAIR])) {
+            if (!dropIfCarried(idK)) dropIfCarried(idCd);
+            return;
+        }
+        if (dropIfCarried(idB) || dropIfCarried(idCl) || dropIfCarried(idK) || dropIfCarried(idCd)) return;
+        for (int i = 0; i < objects.size(); i++) {
+            if (dropIfCarried(i)) return;
+        }
+    }
+
+    private boolean dropIfCarried(int obj) {
+        return carrying(obj) && act(drop[obj]);
+    }
+
+    private boolean carrying(int obj) {
+        return env.carries(self, obj);
+    }
+
+    private void gotoObject(int obj) {
+        act(ASSyntax.createStructure("goto_coord",
+                ASSyntax.createNumber(objects.x(obj)), ASSyntax.createNumber(objects.y(obj))));
+    }
+
+    private boolean act(Structure action) {
+        actions++;
+        return env.executeAction(agName, action);
+    }
+}
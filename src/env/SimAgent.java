@@ -0,0 +1,33 @@
+package env;
+
+/**
+ * Position, inventory and reward counters of one agent of a {@link SimKernel}: everything the
+ * rules read and change. {@link AgentState} adds what only the Jason environment needs
+ * (percepts, route planning).
+ */
+public class SimAgent {
+
+    final int id;
+    int x, y;
+    int capacity;
+    int carrying = 0;
+    // carried objects that are not tools (b, cl, k, cd), each costs extra per step
+    int incompatibleCarried = 0;
+    // primitive steps and reward of the current episode
+    int stepCount = 0;
+    double episodeReward = 0.0;
+    // components of the last reward handed out (SimKernel.reward)
+    double baseCost, carryCost, incompatibleCost, goalReward;
+
+    SimAgent(int id) {
+        this.id = id;
+    }
+
+    public int id() { return id; }
+    public int x() { return x; }
+    public int y() { return y; }
+    public int capacity() { return capacity; }
+    public int carrying() { return carrying; }
+    public int stepCount() { return stepCount; }
+    public double episodeReward() { return episodeReward; }
+}
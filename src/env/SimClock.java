@@ -0,0 +1,68 @@
+package env;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logical clock of the environment.
+ * Counts agent-level actions (ticks) and the time spent pacing primitive moves.
+ * In real-time mode the pacing is done with Thread.sleep so a human can follow the
+ * agent; in virtual mode (-Dmas.simClock=true) time only advances on the counter,
+ * so episodes run at full CPU speed.
+ * Safe to use from the threads of several agents.
+ */
+public class SimClock {
+
+    private final boolean virtual;
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong simMillis = new AtomicLong();
+
+    public SimClock(boolean virtual) {
+        this.virtual = virtual;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    // one agent-level action was executed
+    public long tick() {
+        return ticks.incrementAndGet();
+    }
+
+    public long ticks() {
+        return ticks.get();
+    }
+
+    // pace a primitive step: sleeps only in real-time mode
+    public void advance(long millis) {
+        simMillis.addAndGet(millis);
+        if (!virtual) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // pace a step whose wait is left to a scheduler: counts the time, never sleeps
+    public void elapse(long millis) {
+        simMillis.addAndGet(millis);
+    }
+
+    // simulated time spent in paced steps since the last reset
+    public long simMillis() {
+        return simMillis.get();
+    }
+
+    // start of an episode: ticks and simulated time count from zero again
+    public void reset() {
+        restore(0, 0);
+    }
+
+    // back to a recorded point of an episode (SimKernel.restore)
+    public void restore(long ticks, long simMillis) {
+        this.ticks.set(ticks);
+        this.simMillis.set(simMillis);
+    }
+}
@@ -0,0 +1,580 @@
+package env;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The rules of the grid world without Jason: agent moves, tool pickup/drop, paint and open,
+ * the object moves ({@link MovementEngine}) and the rewards. {@link EnvironmentExt} is an adapter over it that
+ * parses the Jason actions, adds the navigation actions (path_to, goto_coord, approach,
+ * explore) and publishes percepts; {@link #step(SimAgent, int)} plays the same rules one
+ * primitive action at a time, so a {@link Policy} can be evaluated at full CPU speed.
+ *
+ * Safe for the agents of one environment acting from several threads (objects of a cell
+ * change under the cell's stripe); resetEpisode, restore and addAgent must run alone.
+ */
+public class SimKernel {
+
+    // step() actions: the operation in the high bits, the direction or object id below
+    public static final int MOVE = 0;
+    public static final int PICKUP = 1;
+    public static final int DROP = 2;
+    public static final int PAINT = 3;
+    public static final int OPEN = 4;
+    // does nothing but let the clock tick (as any failed action, without its log line)
+    public static final int WAIT = 5;
+    private static final int ARG_BITS = 16;
+
+    // objects move every DYNAMIC_PERIOD ticks of the clock (one tick per agent-level action)
+    static final int DYNAMIC_PERIOD = 3;
+
+    /** Source of the random draws: object placement and object moves. */
+    interface Draws {
+        int draw(Random random, int bound);
+    }
+
+    /** Told about every object change; agent is the one whose inventory changed, or null. */
+    interface Changes {
+        void changed(int obj, SimAgent agent);
+    }
+
+    private final GridMap map;
+    private final long seed;
+    private final SimClock clock;
+    private final Random random = new Random();
+    private Draws draws;
+    private Changes changes = (obj, agent) -> {};
+    private int episode = 0;
+    // episode k reseeds random with EnvConfig.episodeSeed(base seed, k)
+    private long episodeSeed;
+
+    // Objects by integer id: position and carried/colored/awarded flags, with an occupancy index
+    private final ObjectRegistry objects;
+    // holder[id]: agent carrying the object, -1 if none
+    private final int[] holder;
+    // ids of the objects the rules refer to
+    private final int idB, idCl, idK, idCd, idT, idCh, idD;
+    // tool[id]: b, cl, k, cd; carrying anything else costs extra per step
+    private final boolean[] tool;
+    private volatile boolean doorOpened = false;
+    private volatile boolean dynamicObjects = true;
+    // the objects that move and how (t, ch and d walk unless the map says otherwise)
+    private final MovementEngine movement;
+
+    private final List<SimAgent> agents = new ArrayList<>();
+    // cells held by agents: where they stand and the next cells of their routes
+    private final ReservationTable reservations;
+    // objects of a cell are changed under the cell's stripe
+    private final CellLocks cellLocks = new CellLocks(256);
+
+    /** A kernel on virtual time; call resetEpisode before the first episode. */
+    public SimKernel(GridMap map, long seed) {
+        this(map, seed, new SimClock(true));
+    }
+
+    public SimKernel(GridMap map, long seed, SimClock clock) {
+        for (String required : new String[]{"b", "cl", "k", "cd", "t", "ch", "d"}) {
+            if (!map.objectNames().contains(required)) {
+                throw new IllegalStateException("Map has no object " + required);
+            }
+        }
+        this.map = map;
+        this.seed = seed;
+        this.clock = clock;
+        objects = new ObjectRegistry(map);
+        idB = objects.id("b"); idCl = objects.id("cl"); idK = objects.id("k"); idCd = objects.id("cd");
+        idT = objects.id("t"); idCh = objects.id("ch"); idD = objects.id("d");
+        int n = objects.size();
+        tool = new boolean[n];
+        tool[idB] = tool[idCl] = tool[idK] = tool[idCd] = true;
+        holder = new int[n];
+        java.util.Arrays.fill(holder, -1);
+        reservations = new ReservationTable(map.cells());
+        MovementModel[] models = new MovementModel[n];
+        for (int i = 0; i < n; i++) models[i] = map.movement(i);
+        int[] order = new int[n];
+        int k = 0;
+        for (int obj : new int[]{idT, idCh, idD}) {
+            if (models[obj] == null) models[obj] = MovementModel.walk(0.0);
+            order[k++] = obj;
+        }
+        for (int i = 0; i < n; i++) {
+            if (i != idT && i != idCh && i != idD) order[k++] = i;
+        }
+        movement = new MovementEngine(this, cellLocks, order, models);
+    }
+
+    void setDraws(Draws draws) {
+        this.draws = draws;
+    }
+
+    void setChanges(Changes changes) {
+        this.changes = changes;
+    }
+
+    // ----------- AGENTS -----------
+    /** Adds an agent on the free cell closest to the start cell. */
+    public SimAgent addAgent() {
+        SimAgent a = new SimAgent(agents.size());
+        add(a);
+        return a;
+    }
+
+    // a.id must be the number of agents added so far
+    void add(SimAgent a) {
+        a.capacity = map.capacity();
+        agents.add(a);
+        placeAgents(a.id, a.id + 1);
+    }
+
+    // put agents from..to-1 on the free cells closest to the start cell that no agent holds (BFS order)
+    private void placeAgents(int from, int to) {
+        int[] queue = new int[map.cells()];
+        boolean[] seen = new boolean[map.cells()];
+        int head = 0, tail = 0, placed = from;
+        int start = map.cell(map.startX(), map.startY());
+        queue[tail++] = start;
+        seen[start] = true;
+        while (head < tail && placed < to) {
+            int cell = queue[head++];
+            int cx = map.cellX(cell), cy = map.cellY(cell);
+            SimAgent a = agents.get(placed);
+            if (reservations.reserve(cell, a.id)) {
+                a.x = cx;
+                a.y = cy;
+                placed++;
+            }
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + Direction.DX[d], ny = cy + Direction.DY[d];
+                if (!map.free(nx, ny)) continue;
+                int next = map.cell(nx, ny);
+                if (!seen[next]) {
+                    seen[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        if (placed < to) {
+            throw new IllegalStateException("No free cell left for agent " + placed);
+        }
+    }
+
+    // ----------- STEP API -----------
+    public static int action(int op, int arg) {
+        return op << ARG_BITS | arg;
+    }
+
+    public static int op(int action) {
+        return action >>> ARG_BITS;
+    }
+
+    public static int arg(int action) {
+        return action & ((1 << ARG_BITS) - 1);
+    }
+
+    /**
+     * Plays one primitive action of agent a as the environment does for the Jason action
+     * (move(D), pickup(O), ...): the rule, the clock tick with its object moves and the reward.
+     * @param action built with {@link #action(int, int)}: MOVE with a {@link Direction},
+     *               WAIT with 0, the others with an object id
+     * @return the reward of the step (0 for a failed move, as no percepts are published then)
+     */
+    public double step(SimAgent a, int action) {
+        int arg = arg(action);
+        switch (op(action)) {
+            case MOVE:
+                if (!move(a, arg)) {
+                    tick();
+                    return 0.0;
+                }
+                double reward = reward(a, true);
+                tick();
+                return reward;
+            case PICKUP: pickup(a, arg); break;
+            case DROP: drop(a, arg); break;
+            case PAINT: paint(a, arg); break;
+            case OPEN: open(a, arg); break;
+            case WAIT: break;
+            default: throw new IllegalArgumentException("Unknown action " + action);
+        }
+        tick();
+        return reward(a, false);
+    }
+
+    /**
+     * Plays the current episode with the policy until the three goals are awarded or maxSteps
+     * actions were taken (resetEpisode starts the next one).
+     * @return the episode reward of self
+     */
+    public double run(Policy policy, SimAgent self, int maxSteps) {
+        policy.reset(this, self);
+        for (int i = 0; i < maxSteps && !goalsAwarded(); i++) {
+            step(self, policy.act(this, self));
+        }
+        return self.episodeReward;
+    }
+
+    // ----------- RULES -----------
+    // primitive move of agent a one cell in direction d
+    boolean move(SimAgent a, int d) {
+        if (EnvLog.enabled(EnvLog.DEBUG)) EnvLog.debug("Moving: " + Direction.name(d));
+
+        int newX = a.x + Direction.DX[d];
+        int newY = a.y + Direction.DY[d];
+
+        // stay in place at the border (as before)
+        if (newX < 1 || newX > map.width()) newX = a.x;
+        if (newY < 1 || newY > map.height()) newY = a.y;
+
+        // Check obstacles
+        if (map.blocked(newX, newY)) {
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Obstacle at (" + newX + "," + newY + ")");
+            return false;
+        }
+
+        // Check other agents: the target cell must be free or already held by this agent
+        int from = map.cell(a.x, a.y), to = map.cell(newX, newY);
+        if (!reservations.reserve(to, a.id)) {
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Agent at (" + newX + "," + newY + ")");
+            return false;
+        }
+        if (to != from) reservations.release(from, a.id);
+
+        a.x = newX;
+        a.y = newY;
+        if (EnvLog.enabled(EnvLog.DEBUG)) EnvLog.debug("New position: (" + a.x + "," + a.y + ")");
+        return true;
+    }
+
+    boolean pickup(SimAgent a, int obj) {
+        if (a.carrying >= a.capacity) {
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Capacity full: " + a.carrying + "/" + a.capacity);
+            return false;
+        }
+
+        int cell = map.cell(a.x, a.y);
+        int x, y;
+        boolean picked = false;
+        cellLocks.lock(cell);
+        try {
+            x = objects.x(obj);
+            y = objects.y(obj);
+            int h = holder[obj];
+            if (x == a.x && y == a.y && (h < 0 || h == a.id)) {
+                a.carrying++;
+                if (h < 0 && !tool[obj]) a.incompatibleCarried++;
+                objects.set(obj, ObjectRegistry.CARRIED, true);
+                holder[obj] = a.id;
+                picked = true;
+            }
+        } finally {
+            cellLocks.unlock(cell);
+        }
+
+        if (picked) {
+            changes.changed(obj, a);
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Picked up " + objects.name(obj) + ". Now carrying: " + a.carrying);
+            return true;
+        } else {
+            if (EnvLog.enabled(EnvLog.INFO))
+                EnvLog.info("Object not at agent position or carried by another agent. Object at (" +
+                             x + "," + y + "), Agent at (" + a.x + "," + a.y + ")");
+            return false;
+        }
+    }
+
+    boolean drop(SimAgent a, int obj) {
+        if (holder[obj] != a.id) {
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Not carrying: " + objects.name(obj));
+            return false;
+        }
+
+        // Drop object at current position (it is still indexed where it was picked up)
+        int from = map.cell(objects.x(obj), objects.y(obj)), to = map.cell(a.x, a.y);
+        cellLocks.lock(from, to);
+        try {
+            objects.set(obj, ObjectRegistry.CARRIED, false);
+            holder[obj] = -1;
+            objects.moveTo(obj, a.x, a.y);
+        } finally {
+            cellLocks.unlock(from, to);
+        }
+        a.carrying--;
+        if (!tool[obj]) a.incompatibleCarried--;
+        changes.changed(obj, a);
+
+        if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Dropped " + objects.name(obj) + " at (" + a.x + "," + a.y + "). Now carrying: " + a.carrying);
+        return true;
+    }
+
+    boolean paint(SimAgent a, int obj) {
+        if (obj != idT && obj != idCh) {
+            EnvLog.info("Can only paint t or ch");
+            return false;
+        }
+
+        if (holder[idB] != a.id || holder[idCl] != a.id) {
+            EnvLog.info("Need brush (b) and color (cl) to paint");
+            return false;
+        }
+
+        int x = objects.x(obj), y = objects.y(obj);
+
+        // Υπολογισμός απόστασης (Manhattan): |x1-x2| + |y1-y2|
+        int dist = Math.abs(x - a.x) + Math.abs(y - a.y);
+
+        // Αν είμαστε πάνω στο αντικείμενο (0) ή δίπλα του (1), το βάφουμε
+        if (dist <= 1) {
+            // mark colored without affecting carrying state
+            objects.set(obj, ObjectRegistry.COLORED, true);
+            changes.changed(obj, null);
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Painted: " + objects.name(obj));
+            return true;
+        } else {
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Paint failed. Agent at (" + a.x + "," + a.y + ") but Object at (" + x + "," + y + ")");
+            return false;
+        }
+    }
+
+    boolean open(SimAgent a, int obj) {
+        if (obj != idD) {
+            EnvLog.info("Can only open door (d)");
+            return false;
+        }
+
+        if (holder[idK] != a.id || holder[idCd] != a.id) {
+            EnvLog.info("Need key (k) and card (cd) to open door");
+            return false;
+        }
+
+        int x = objects.x(idD), y = objects.y(idD);
+
+        // Ίδια λογική απόστασης και για την πόρτα
+        int dist = Math.abs(x - a.x) + Math.abs(y - a.y);
+
+        if (dist <= 1) {
+            doorOpened = true;
+            changes.changed(idD, null);
+            EnvLog.info("Door opened!");
+            return true;
+        } else {
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Open failed. Agent at (" + a.x + "," + a.y + ") but Door at (" + x + "," + y + ")");
+            return false;
+        }
+    }
+
+    /**
+     * Reward of agent a for this step: the step cost if it made a primitive move, plus the goals
+     * achieved since the last call (each handed out once, to the agent whose call sees it first).
+     * The components are left in a.baseCost, carryCost, incompatibleCost and goalReward.
+     */
+    double reward(SimAgent a, boolean applyStepCost) {
+        double baseCost = 0.0;
+        double carryCost = 0.0;
+        double incompatibleCost = 0.0;
+        double goalReward = 0.0;
+
+        if (applyStepCost) {
+            // increment step counter (each time we apply step cost it's a primitive move)
+            a.stepCount++;
+            if (a.carrying == 0) {
+                baseCost = -0.01;
+            } else {
+                carryCost = -0.02 * a.carrying;
+                // incompatible items (not among tools b,cl,k,cd), counted at pickup/drop
+                incompatibleCost = -0.03 * a.incompatibleCarried;
+            }
+        }
+        double stepReward = baseCost + carryCost + incompatibleCost;
+
+        if (objects.has(idT, ObjectRegistry.COLORED) && objects.claim(idT, ObjectRegistry.AWARDED)) {
+            stepReward += 1.0; goalReward += 1.0;
+        }
+        if (objects.has(idCh, ObjectRegistry.COLORED) && objects.claim(idCh, ObjectRegistry.AWARDED)) {
+            stepReward += 1.0; goalReward += 1.0;
+        }
+        if (doorOpened && objects.claim(idD, ObjectRegistry.AWARDED)) {
+            stepReward += 0.8; goalReward += 0.8;
+        }
+
+        a.baseCost = baseCost;
+        a.carryCost = carryCost;
+        a.incompatibleCost = incompatibleCost;
+        a.goalReward = goalReward;
+        a.episodeReward += stepReward;
+        return stepReward;
+    }
+
+    /** True once the three goals of the episode were achieved and their rewards handed out. */
+    public boolean goalsAwarded() {
+        return objects.has(idT, ObjectRegistry.AWARDED) && objects.has(idCh, ObjectRegistry.AWARDED)
+                && objects.has(idD, ObjectRegistry.AWARDED);
+    }
+
+    // ----------- DYNAMICS -----------
+    // one agent-level action: advances the clock, objects move every DYNAMIC_PERIOD ticks
+    long tick() {
+        long tick = clock.tick();
+        if (dynamicObjects && tick % DYNAMIC_PERIOD == 0) moveObjects();
+        return tick;
+    }
+
+    // every mover takes its move (t, ch and d a cell at random by default) unless carried
+    void moveObjects() {
+        if (!dynamicObjects) return;
+        movement.step();
+    }
+
+    // objects stay where they are from now on (all episodes done)
+    void stopObjects() {
+        dynamicObjects = false;
+    }
+
+    // an object move of the MovementEngine
+    void objectMoved(int obj) {
+        changes.changed(obj, null);
+    }
+
+    // every random draw goes through the trace when one is attached
+    int draw(int bound) {
+        return draws != null ? draws.draw(random, bound) : random.nextInt(bound);
+    }
+
+    // ----------- EPISODES -----------
+    /**
+     * Starts episode 'index': objects back on their map cells with their flags cleared, agents
+     * back on the start cells with empty hands and counters, t, ch and d placed from the
+     * episode's seed, and the clock at tick 0 (object moves on the same ticks as in a fresh launch).
+     */
+    public void resetEpisode(int index) {
+        episode = index;
+        doorOpened = false;
+        clock.reset();
+        objects.clearAll(ObjectRegistry.CARRIED | ObjectRegistry.COLORED | ObjectRegistry.AWARDED);
+        java.util.Arrays.fill(holder, -1);
+        for (int i = 0; i < objects.size(); i++) {
+            int[] pos = map.objectPosition(i);
+            objects.moveTo(i, pos[0], pos[1]);
+            changes.changed(i, null);
+        }
+        reservations.clear();
+        movement.reset();
+        placeAgents(0, agents.size());
+        for (SimAgent a : agents) {
+            a.carrying = 0;
+            a.incompatibleCarried = 0;
+            a.stepCount = 0;
+            a.episodeReward = 0.0;
+        }
+        randomizeEpisodePositions();
+    }
+
+    // place t, ch, d on random free cells (not obstacles, not overlapping, not at agent start or on an agent)
+    private void randomizeEpisodePositions() {
+        episodeSeed = EnvConfig.episodeSeed(seed, episode);
+        random.setSeed(episodeSeed);
+        int[] epis = {idT, idCh, idD};
+        for (int obj : epis) {
+            int attempts = 0;
+            while (attempts < 50) {
+                int x = 1 + draw(map.width());
+                int y = 1 + draw(map.height());
+                if (!map.blocked(x, y) && !objects.occupied(x,y) && !(x==map.startX() && y==map.startY())
+                        && reservations.owner(map.cell(x, y)) == ReservationTable.FREE) {
+                    objects.moveTo(obj, x, y);
+                    changes.changed(obj, null);
+                    break;
+                }
+                attempts++;
+            }
+        }
+        if (EnvLog.enabled(EnvLog.DEBUG)) EnvLog.debug("Episode positions randomized (seed " + episodeSeed + "): " + describeEpisodeObjects());
+    }
+
+    // "t@(x,y), ch@(x,y), d@(x,y)" for log output
+    String describeEpisodeObjects() {
+        return "t@(" + objects.x(idT) + "," + objects.y(idT) + "), ch@(" + objects.x(idCh) + "," + objects.y(idCh) + "), d@(" + objects.x(idD) + "," + objects.y(idD) + ")";
+    }
+
+    // ----------- SNAPSHOTS -----------
+    /** Copies the state of the episode into s (resized if needed) and returns it. */
+    public KernelSnapshot snapshot(KernelSnapshot s) {
+        s.size(objects.size(), agents.size());
+        for (int i = 0; i < objects.size(); i++) {
+            s.objects[i] = KernelSnapshot.packObject(objects.x(i), objects.y(i), objects.flags(i), holder[i]);
+        }
+        for (int i = 0; i < agents.size(); i++) {
+            SimAgent a = agents.get(i);
+            s.agents[i] = KernelSnapshot.packAgent(a.x, a.y, a.carrying, a.incompatibleCarried);
+            s.stepCounts[i] = a.stepCount;
+            s.rewards[i] = a.episodeReward;
+        }
+        s.ticks = clock.ticks();
+        s.simMillis = clock.simMillis();
+        s.episode = episode;
+        s.episodeSeed = episodeSeed;
+        s.doorOpened = doorOpened;
+        s.dynamicObjects = dynamicObjects;
+        s.patrols = movement.save(s.patrols);
+        return s;
+    }
+
+    /**
+     * Puts the state of a snapshot back: taken from this kernel or from another one over the
+     * same map with as many agents. The random generator is left as it is.
+     */
+    public void restore(KernelSnapshot s) {
+        if (s.objects.length != objects.size() || s.agents.length != agents.size()) {
+            throw new IllegalArgumentException("Snapshot of " + s.objects.length + " objects and " + s.agents.length
+                    + " agents, kernel has " + objects.size() + " and " + agents.size());
+        }
+        for (int i = 0; i < s.objects.length; i++) {
+            long o = s.objects[i];
+            objects.moveTo(i, KernelSnapshot.field(o, 0), KernelSnapshot.field(o, 16));
+            objects.setFlags(i, KernelSnapshot.field(o, 32));
+            holder[i] = KernelSnapshot.field(o, 48) - 1;
+            changes.changed(i, null);
+        }
+        reservations.clear();
+        for (int i = 0; i < s.agents.length; i++) {
+            SimAgent a = agents.get(i);
+            long packed = s.agents[i];
+            a.x = KernelSnapshot.field(packed, 0);
+            a.y = KernelSnapshot.field(packed, 16);
+            a.carrying = KernelSnapshot.field(packed, 32);
+            a.incompatibleCarried = KernelSnapshot.field(packed, 48);
+            a.stepCount = s.stepCounts[i];
+            a.episodeReward = s.rewards[i];
+            reservations.reserve(map.cell(a.x, a.y), a.id);
+        }
+        clock.restore(s.ticks, s.simMillis);
+        episode = s.episode;
+        episodeSeed = s.episodeSeed;
+        doorOpened = s.doorOpened;
+        dynamicObjects = s.dynamicObjects;
+        movement.load(s.patrols);
+    }
+
+    // the object moves from here on come from this seed (rollouts on a copy of the state)
+    void reseed(long seed) {
+        random.setSeed(seed);
+    }
+
+    // ----------- STATE ACCESS -----------
+    public GridMap map() { return map; }
+    public ObjectRegistry objects() { return objects; }
+    public SimClock clock() { return clock; }
+    public int episode() { return episode; }
+    public int agentCount() { return agents.size(); }
+    public SimAgent agent(int id) { return agents.get(id); }
+    public long episodeSeed() { return episodeSeed; }
+    public boolean doorOpened() { return doorOpened; }
+    public boolean carries(SimAgent a, int obj) { return holder[obj] == a.id; }
+    // agent carrying obj, -1 if none
+    public int holder(int obj) { return holder[obj]; }
+    public boolean isTool(int obj) { return tool[obj]; }
+    // objects with a movement model other than still
+    public int movers() { return movement.movers(); }
+    ReservationTable reservations() { return reservations; }
+}
@@ -0,0 +1,134 @@
+package env;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates many episodes in parallel without Jason: every worker thread of a fork-join pool
+ * owns an isolated {@link EnvironmentExt} played by a {@link ScriptedAgent}, and episode k is
+ * always played from seed {@link EnvConfig#episodeSeed}(base, k), so the results do not depend
+ * on the number of threads or on which thread ran which episode. The map and its
+ * {@link PathService} (all-pairs distance fields on small maps) are built once and shared by
+ * every worker's environment.
+ *
+ * gradle runSweep -Psweep.episodes=10000 [-Psweep.threads=N] [-Pmas.seed=S] [-Pmas.map=FILE]
+ * writes sweep_results.csv (one line per episode) and sweep_summary.txt (same statistics as
+ * benchmark_results.txt).
+ */
+public class SweepRunner {
+
+    // episodes per fork-join leaf task
+    private static final int CHUNK = 16;
+
+    private final String mapFile;
+    private final long seed;
+    private final PathService paths;
+    private final Queue<EnvironmentExt> instances = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<ScriptedAgent> players;
+
+    public SweepRunner(String mapFile, long seed) throws IOException {
+        this.mapFile = mapFile;
+        this.seed = seed;
+        this.paths = new PathService(mapFile == null || mapFile.isEmpty() ? GridMap.defaultMap() : MapLoader.load(mapFile));
+        this.players = ThreadLocal.withInitial(this::newPlayer);
+    }
+
+    private ScriptedAgent newPlayer() {
+        EnvironmentExt env = new EnvironmentExt(EnvConfig.isolated(seed).setMapFile(mapFile).setPaths(paths));
+        env.init(new String[0]);
+        instances.add(env);
+        return new ScriptedAgent(env, "agent1");
+    }
+
+    /** Result of a sweep, indexed by episode. */
+    public static class Result {
+        public final double[] rewards;
+        public final boolean[] completed;
+        public final long[] seeds;
+
+        Result(int episodes) {
+            rewards = new double[episodes];
+            completed = new boolean[episodes];
+            seeds = new long[episodes];
+        }
+    }
+
+    /** Plays episodes 0..episodes-1 on 'threads' threads. */
+    public Result run(int episodes, int threads) {
+        Result result = new Result(episodes);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Episodes(result, 0, episodes));
+        } finally {
+            pool.shutdown();
+            for (EnvironmentExt env : instances) env.stop();
+            instances.clear();
+        }
+        return result;
+    }
+
+    @SuppressWarnings("serial")
+    private final class Episodes extends RecursiveAction {
+        private final Result result;
+        private final int from, to;
+
+        Episodes(Result result, int from, int to) {
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Episodes(result, from, mid), new Episodes(result, mid, to));
+                return;
+            }
+            ScriptedAgent player = players.get();
+            EnvironmentExt env = player.environment();
+            for (int k = from; k < to; k++) {
+                env.resetEpisode(k);
+                result.rewards[k] = player.playEpisode();
+                result.completed[k] = env.episodeDone();
+                result.seeds[k] = EnvConfig.episodeSeed(seed, k);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int episodes = Math.max(1, Integer.getInteger("sweep.episodes", 1000));
+        int threads = Math.max(1, Integer.getInteger("sweep.threads", Runtime.getRuntime().availableProcessors()));
+        EnvConfig defaults = EnvConfig.fromSystemProperties();
+        if (System.getProperty("mas.log", "").isEmpty()) EnvLog.setLevel(EnvLog.WARN);
+
+        long start = System.nanoTime();
+        Result result = new SweepRunner(defaults.mapFile(), defaults.seed()).run(episodes, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        List<Double> rewards = new ArrayList<>(episodes);
+        int completed = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get("sweep_results.csv"), StandardCharsets.UTF_8)) {
+            out.write("episode,seed,reward,completed");
+            out.newLine();
+            for (int k = 0; k < episodes; k++) {
+                out.write(k + "," + result.seeds[k] + "," + result.rewards[k] + "," + result.completed[k]);
+                out.newLine();
+                rewards.add(result.rewards[k]);
+                if (result.completed[k]) completed++;
+            }
+        }
+        EnvLog.info(String.format(java.util.Locale.ROOT, "Sweep: %d episodes (%d completed) on %d threads in %.1f s (%.0f episodes/s), base seed %d",
+            episodes, completed, threads, seconds, episodes / seconds, defaults.seed()));
+        BenchmarkSummary.write("sweep_summary.txt", rewards, episodes, "sweep_results.csv");
+    }
+}
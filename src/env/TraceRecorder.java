@@ -0,0 +1,137 @@
+package env;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import jason.asSyntax.Structure;
+
+/**
+ * Writes everything needed to re-drive a run to a compact binary trace (-Dmas.trace=FILE),
+ * big-endian:
+ * <pre>
+ * header   int MAGIC, byte VERSION, long base seed, int episodes, UTF map file ("" = built-in)
+ * AGENT    byte 1, short id, UTF name
+ * TEXT     byte 2, int text id, UTF action     (first use of an action text)
+ * ACTION   byte 3, short agent, int text id
+ * DRAW     byte 4, char bound, char value
+ * RESULT   byte 5, byte ok, short x, short y, double episode reward of the agent
+ * EPISODE  byte 6, int episode, long seed, double reward, int steps
+ * END      byte 0
+ * </pre>
+ * An action is ACTION, the DRAW (and EPISODE) records made while it ran, then RESULT:
+ * about 15 bytes per action plus 5 per draw. Replayed by {@link TraceReplayer}.
+ */
+public class TraceRecorder implements EpisodeTrace {
+
+    static final int MAGIC = 0x4D415354;    // "MAST"
+    static final byte VERSION = 1;
+    static final byte END = 0, AGENT = 1, TEXT = 2, ACTION = 3, DRAW = 4, RESULT = 5, EPISODE = 6;
+
+    private final DataOutputStream out;
+    // action texts already written, by text
+    private final Map<String, Integer> texts = new HashMap<>();
+    private boolean closed = false;
+
+    public TraceRecorder(String file, long seed, int episodes, String mapFile) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(file)), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(seed);
+        out.writeInt(episodes);
+        out.writeUTF(mapFile == null ? "" : mapFile);
+    }
+
+    @Override
+    public synchronized void agent(int id, String name) {
+        try {
+            out.writeByte(AGENT);
+            out.writeShort(id);
+            out.writeUTF(name);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    @Override
+    public synchronized void action(int agent, Structure action) {
+        String text = action.toString();
+        try {
+            Integer id = texts.get(text);
+            if (id == null) {
+                id = texts.size();
+                texts.put(text, id);
+                out.writeByte(TEXT);
+                out.writeInt(id);
+                out.writeUTF(text);
+            }
+            out.writeByte(ACTION);
+            out.writeShort(agent);
+            out.writeInt(id);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    @Override
+    public synchronized int draw(Random random, int bound) {
+        int value = random.nextInt(bound);
+        try {
+            out.writeByte(DRAW);
+            out.writeChar(bound);
+            out.writeChar(value);
+        } catch (IOException e) {
+            failed(e);
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized void result(boolean ok, int x, int y, double episodeReward) {
+        try {
+            out.writeByte(RESULT);
+            out.writeBoolean(ok);
+            out.writeShort(x);
+            out.writeShort(y);
+            out.writeDouble(episodeReward);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    @Override
+    public synchronized void episode(int episode, long seed, double reward, int steps) {
+        try {
+            out.writeByte(EPISODE);
+            out.writeInt(episode);
+            out.writeLong(seed);
+            out.writeDouble(reward);
+            out.writeInt(steps);
+            // a run may end with System.exit: keep every completed episode on disk
+            out.flush();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            out.writeByte(END);
+            out.close();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    private void failed(IOException e) {
+        EnvLog.error("Failed to write trace: " + e.getMessage());
+    }
+}
@@ -0,0 +1,278 @@
+package env;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jason.asSyntax.Structure;
+
+/**
+ * Re-drives an {@link EnvironmentExt} from a trace written by {@link TraceRecorder}, without
+ * Jason agents and in virtual time. The recorded actions are executed in their recorded
+ * order, the random draws come from the trace, and every result, position, reward and
+ * completed episode is compared with the recorded one. The first difference stops the
+ * replay with the record number, episode and action where the run diverged.
+ *
+ * gradle replayTrace -Ptrace=run.trace [-Pmas.map=FILE]
+ */
+public class TraceReplayer implements EpisodeTrace {
+
+    private final DataInputStream in;
+    private final long seed;
+    private final int episodes;
+    private final String mapFile;
+    private final List<String> agentNames = new ArrayList<>();
+    private final List<Structure> actions = new ArrayList<>();
+    private final List<String> actionTexts = new ArrayList<>();
+
+    // one record of lookahead: its tag, -1 before the first read
+    private int tag = -1;
+    // the file ended without an END record (the recording process did not stop the environment)
+    private boolean truncated = false;
+    private long record = 0;
+    private int episode = 0;
+    private String current = "(init)";
+    private int actionCount = 0;
+    private int episodeCount = 0;
+
+    public TraceReplayer(String file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(file)), 1 << 16));
+        if (in.readInt() != TraceRecorder.MAGIC) throw new IOException(file + " is not a trace");
+        int version = in.readByte();
+        if (version != TraceRecorder.VERSION) throw new IOException("Unsupported trace version " + version);
+        seed = in.readLong();
+        episodes = in.readInt();
+        mapFile = in.readUTF();
+    }
+
+    public long seed() { return seed; }
+    public int episodes() { return episodes; }
+    public String mapFile() { return mapFile; }
+
+    /**
+     * Replays the whole trace on a new environment.
+     * @param mapOverride map to load instead of the recorded one, null to keep it
+     * @throws IllegalStateException at the first difference with the recorded run
+     */
+    public void replay(String mapOverride) throws IOException {
+        EnvConfig config = EnvConfig.isolated(seed).setEpisodes(episodes)
+                .setMapFile(mapOverride != null ? mapOverride : mapFile);
+        EnvironmentExt env = new EnvironmentExt(config);
+        env.setTrace(this);
+        try {
+            env.init(new String[0]);
+            while (true) {
+                switch (peek()) {
+                    case TraceRecorder.END:
+                        return;
+                    case TraceRecorder.AGENT:
+                        // registration consumes the record through agent()
+                        env.agent(readAgentName());
+                        break;
+                    case TraceRecorder.TEXT:
+                        consume();
+                        int id = in.readInt();
+                        String text = in.readUTF();
+                        Structure action = Structure.parse(text);
+                        if (action == null || id != actions.size()) throw new IOException("Bad action text " + id + ": " + text);
+                        actions.add(action);
+                        actionTexts.add(text);
+                        break;
+                    case TraceRecorder.ACTION:
+                        // executeAction consumes ACTION, the draws and RESULT through the hooks
+                        int[] next = peekAction();
+                        env.executeAction(agentNames.get(next[0]), actions.get(next[1]));
+                        break;
+                    default:
+                        throw diverged("unexpected record " + tag + " outside an action");
+                }
+                if (tag >= 0) throw diverged("record type " + tag + " was not replayed");
+            }
+        } catch (Truncated e) {
+            EnvLog.warn("Trace ends in the middle of " + current + " (recording not closed), replayed up to there");
+        } finally {
+            env.stop();
+        }
+    }
+
+    // ----------- HOOKS (called by the environment) -----------
+    @Override
+    public void agent(int id, String name) {
+        expect(TraceRecorder.AGENT, "registration of " + name);
+        try {
+            int recorded = in.readShort();
+            String recordedName = in.readUTF();
+            if (recorded != id || !recordedName.equals(name)) {
+                throw diverged("agent " + name + " got id " + id + ", recorded " + recordedName + " with id " + recorded);
+            }
+            agentNames.add(name);
+        } catch (IOException e) {
+            throw unreadable(e);
+        }
+    }
+
+    @Override
+    public void action(int agent, Structure action) {
+        expect(TraceRecorder.ACTION, "action " + action);
+        try {
+            int recordedAgent = in.readShort();
+            int text = in.readInt();
+            current = agentNames.get(recordedAgent) + " " + actionTexts.get(text);
+            if (recordedAgent != agent) throw diverged("action run by agent " + agent);
+            actionCount++;
+        } catch (IOException e) {
+            throw unreadable(e);
+        }
+    }
+
+    @Override
+    public int draw(Random random, int bound) {
+        expect(TraceRecorder.DRAW, "random draw (bound " + bound + ")");
+        try {
+            int recordedBound = in.readChar();
+            int value = in.readChar();
+            if (recordedBound != bound) throw diverged("random draw with bound " + bound + ", recorded " + recordedBound);
+            return value;
+        } catch (IOException e) {
+            throw unreadable(e);
+        }
+    }
+
+    @Override
+    public void result(boolean ok, int x, int y, double episodeReward) {
+        expect(TraceRecorder.RESULT, "action result");
+        try {
+            boolean recordedOk = in.readBoolean();
+            int rx = in.readShort(), ry = in.readShort();
+            double recordedReward = in.readDouble();
+            if (recordedOk != ok || rx != x || ry != y || Double.compare(recordedReward, episodeReward) != 0) {
+                throw diverged("result " + ok + " at (" + x + "," + y + ") with episode reward " + episodeReward
+                        + ", recorded " + recordedOk + " at (" + rx + "," + ry + ") with " + recordedReward);
+            }
+            current = "(between actions)";
+        } catch (IOException e) {
+            throw unreadable(e);
+        }
+    }
+
+    @Override
+    public void episode(int episode, long seed, double reward, int steps) {
+        expect(TraceRecorder.EPISODE, "end of episode " + episode);
+        try {
+            int recordedEpisode = in.readInt();
+            long recordedSeed = in.readLong();
+            double recordedReward = in.readDouble();
+            int recordedSteps = in.readInt();
+            if (recordedEpisode != episode || recordedSeed != seed || Double.compare(recordedReward, reward) != 0 || recordedSteps != steps) {
+                throw diverged("episode " + episode + " ended with reward " + reward + " in " + steps + " steps, recorded episode "
+                        + recordedEpisode + " with reward " + recordedReward + " in " + recordedSteps + " steps");
+            }
+            this.episode = episode + 1;
+            episodeCount++;
+            if (EnvLog.enabled(EnvLog.INFO)) EnvLog.info("Replayed episode " + episode + ": reward " + reward + ", " + steps + " steps");
+        } catch (IOException e) {
+            throw unreadable(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            EnvLog.error("Failed to close trace: " + e.getMessage());
+        }
+    }
+
+    // ----------- READING -----------
+    private int peek() throws IOException {
+        if (tag < 0) {
+            try {
+                tag = in.readByte();
+            } catch (EOFException e) {
+                // a run killed before close has no END record
+                tag = TraceRecorder.END;
+                truncated = true;
+            }
+            record++;
+        }
+        return tag;
+    }
+
+    private void consume() {
+        tag = -1;
+    }
+
+    private void expect(byte expected, String what) {
+        int found;
+        try {
+            found = peek();
+        } catch (IOException e) {
+            throw unreadable(e);
+        }
+        if (found == TraceRecorder.END && truncated) throw new Truncated();
+        if (found != expected) throw diverged(what + " where the trace has record type " + found);
+        consume();
+    }
+
+    private String readAgentName() throws IOException {
+        // AGENT record: short id, UTF name; read ahead without consuming the tag
+        in.mark(1 << 10);
+        in.readShort();
+        String name = in.readUTF();
+        in.reset();
+        return name;
+    }
+
+    private int[] peekAction() throws IOException {
+        in.mark(8);
+        int[] next = {in.readShort(), in.readInt()};
+        in.reset();
+        return next;
+    }
+
+    // thrown out of the environment when a truncated trace runs out
+    @SuppressWarnings("serial")
+    private static final class Truncated extends RuntimeException {
+        Truncated() {
+            super(null, null, false, false);
+        }
+    }
+
+    private IllegalStateException diverged(String what) {
+        return new IllegalStateException("Replay diverged at record " + record + " (episode " + episode + ", " + current + "): " + what);
+    }
+
+    private IllegalStateException unreadable(IOException e) {
+        return new IllegalStateException("Trace unreadable at record " + record + ": " + e.getMessage(), e);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String file = args.length > 0 ? args[0] : System.getProperty("mas.trace", "");
+        if (file.isEmpty()) {
+            System.err.println("usage: TraceReplayer <trace file> [map file]");
+            System.exit(2);
+        }
+        String map = args.length > 1 && !args[1].isEmpty() ? args[1] : null;
+        if (System.getProperty("mas.log", "").isEmpty()) EnvLog.setLevel(EnvLog.WARN);
+
+        TraceReplayer replayer = new TraceReplayer(file);
+        long start = System.nanoTime();
+        try {
+            replayer.replay(map);
+        } catch (IllegalStateException e) {
+            EnvLog.error(e.getMessage());
+            EnvLog.flush();
+            System.exit(1);
+        }
+        double ms = (System.nanoTime() - start) / 1e6;
+        System.out.printf(java.util.Locale.ROOT, "Replay identical: %d actions, %d episodes (base seed %d) in %.1f ms%n",
+                replayer.actionCount, replayer.episodeCount, replayer.seed, ms);
+    }
+}
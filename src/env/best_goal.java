@@ -0,0 +1,48 @@
+package env;
+
+import jason.asSemantics.DefaultInternalAction;
+import jason.asSemantics.TransitionSystem;
+import jason.asSemantics.Unifier;
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.ListTerm;
+import jason.asSyntax.Term;
+
+/**
+ * Internal action env.best_goal(Goal, Utilities): Goal is the goal with the highest expected
+ * utility and Utilities is [[paint_table, U1], [paint_chair, U2], [open_door, U3]]. The utilities
+ * are computed by {@link GoalUtilities} from the agent's beliefs (see {@link MissionState#read}),
+ * with true path distances through the missing tools.
+ * Fails if the environment's path service is not available.
+ */
+public class best_goal extends DefaultInternalAction {
+
+    @Override
+    public int getMinArgs() {
+        return 1;
+    }
+
+    @Override
+    public int getMaxArgs() {
+        return 2;
+    }
+
+    @Override
+    public Object execute(TransitionSystem ts, Unifier un, Term[] args) throws Exception {
+        checkArguments(args);
+        PathService paths = PathService.current();
+        if (paths == null) return false;
+
+        MissionState state = new MissionState().read(ts.getAg().getBB());
+        GoalUtilities utilities = new GoalUtilities(paths);
+        int best = utilities.best(state);
+        if (!un.unifies(args[0], ASSyntax.createAtom(MissionState.GOALS[best]))) return false;
+        if (args.length < 2) return true;
+        Term[] pairs = new Term[MissionState.GOALS.length];
+        for (int g = 0; g < pairs.length; g++) {
+            pairs[g] = ASSyntax.createList(ASSyntax.createAtom(MissionState.GOALS[g]),
+                                           ASSyntax.createNumber(utilities.utility(state, g)));
+        }
+        ListTerm list = ASSyntax.createList(pairs);
+        return un.unifies(args[1], list);
+    }
+}
@@ -0,0 +1,54 @@
+package env;
+
+import jason.asSemantics.DefaultInternalAction;
+import jason.asSemantics.TransitionSystem;
+import jason.asSemantics.Unifier;
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Term;
+
+/**
+ * Internal action env.mission_plan(Steps, Cost): Steps is the cheapest plan for the pending
+ * goals, a list of pickup(Obj), drop(Obj, X, Y), paint(Obj) and open(Obj), and Cost is its
+ * step cost. The plan is computed by {@link MissionPlanner} from the agent's beliefs (see
+ * {@link MissionState#read}). Fails if an object the plan needs is not known or the
+ * environment's path service is not available.
+ */
+public class mission_plan extends DefaultInternalAction {
+
+    // one per agent, reused across calls
+    private MissionPlanner planner;
+    private PathService plannerPaths;
+
+    @Override
+    public int getMinArgs() {
+        return 1;
+    }
+
+    @Override
+    public int getMaxArgs() {
+        return 2;
+    }
+
+    @Override
+    public Object execute(TransitionSystem ts, Unifier un, Term[] args) throws Exception {
+        checkArguments(args);
+        PathService paths = PathService.current();
+        if (paths == null) return false;
+        if (paths != plannerPaths) {
+            planner = new MissionPlanner(paths);
+            plannerPaths = paths;
+        }
+
+        int n = planner.plan(new MissionState().read(ts.getAg().getBB()));
+        if (n < 0) return false;
+        Term[] steps = new Term[n];
+        for (int i = 0; i < n; i++) {
+            Term obj = ASSyntax.createAtom(planner.object(i));
+            steps[i] = planner.op(i) == MissionPlanner.DROP
+                    ? ASSyntax.createStructure("drop", obj, ASSyntax.createNumber(planner.x(i)), ASSyntax.createNumber(planner.y(i)))
+                    : ASSyntax.createStructure(MissionPlanner.OPS[planner.op(i)], obj);
+        }
+        if (!un.unifies(args[0], ASSyntax.createList(steps))) return false;
+        return args.length < 2 || un.unifies(args[1], ASSyntax.createNumber(planner.cost()));
+    }
+}
@@ -0,0 +1,33 @@
+package env;
+
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Structure;
+
+/**
+ * Shared setup of the JMH benchmarks: an environment on the default map with virtual time,
+ * logging off and an episode budget that never runs out (so it never exits or stops moving objects).
+ */
+final class Benchmarks {
+
+    static final String AGENT = "agent1";
+
+    private Benchmarks() {}
+
+    static EnvironmentExt newEnvironment() {
+        System.setProperty("mas.simClock", "true");
+        System.setProperty("mas.episodes", String.valueOf(Integer.MAX_VALUE));
+        System.setProperty("mas.autoExit", "false");
+        if (System.getProperty("mas.log") == null) System.setProperty("mas.log", "OFF");
+        EnvironmentExt env = new EnvironmentExt();
+        env.init(new String[0]);
+        return env;
+    }
+
+    static Structure action(String text) {
+        try {
+            return ASSyntax.parseStructure(text);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(text, e);
+        }
+    }
+}
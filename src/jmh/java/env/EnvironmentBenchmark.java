@@ -0,0 +1,110 @@
+package env;
+
+import java.util.concurrent.TimeUnit;
+
+import jason.asSyntax.Structure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Per-call cost of the environment's hot paths on the default map: percept publication,
+ * the dynamic object moves and executeAction for every action type. The actions alternate
+ * between two structures (e.g. pickup/drop, up/down) so the state does not drift; each
+ * call includes the clock tick and the percept update that executeAction does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EnvironmentBenchmark {
+
+    @Param({"move", "pickup_drop", "paint", "open", "goto_coord", "path_to", "explore"})
+    public String action;
+
+    private EnvironmentExt env;
+    private AgentState agent;
+    private Structure first, second;
+    private boolean flip;
+
+    @Setup
+    public void setup() {
+        env = Benchmarks.newEnvironment();
+        agent = env.agent(Benchmarks.AGENT);
+        switch (action) {
+            case "move":
+                first = Benchmarks.action("move(up)");
+                second = Benchmarks.action("move(down)");
+                break;
+            case "pickup_drop":
+                env.executeAction(Benchmarks.AGENT, Benchmarks.action("path_to(b)"));
+                first = Benchmarks.action("pickup(b)");
+                second = Benchmarks.action("drop(b)");
+                break;
+            case "paint":
+                carry("b", "cl");
+                first = Benchmarks.action("paint(t)");
+                second = Benchmarks.action("paint(ch)");
+                break;
+            case "open":
+                carry("k", "cd");
+                first = second = Benchmarks.action("open(d)");
+                break;
+            case "goto_coord":
+                first = Benchmarks.action("goto_coord(5,5)");
+                second = Benchmarks.action("goto_coord(1,1)");
+                break;
+            case "path_to":
+                first = Benchmarks.action("path_to(cl)");
+                second = Benchmarks.action("path_to(k)");
+                break;
+            case "explore":
+                first = second = Benchmarks.action("explore");
+                break;
+            default:
+                throw new IllegalArgumentException(action);
+        }
+    }
+
+    private void carry(String... tools) {
+        for (String tool : tools) {
+            env.executeAction(Benchmarks.AGENT, Benchmarks.action("path_to(" + tool + ")"));
+            env.executeAction(Benchmarks.AGENT, Benchmarks.action("pickup(" + tool + ")"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        env.stop();
+    }
+
+    @Benchmark
+    public boolean executeAction() {
+        flip = !flip;
+        return env.executeAction(Benchmarks.AGENT, flip ? first : second);
+    }
+
+    /** Percept update with nothing changed (steady state after every action). */
+    @Benchmark
+    public void publishPercepts() {
+        env.publishPercepts(agent, false);
+    }
+
+    /** Percept update with every object dirty (episode start). */
+    @Benchmark
+    public void publishPerceptsAllDirty() {
+        env.markAllDirty();
+        agent.markAllDirty();
+        env.publishPercepts(agent, false);
+    }
+
+    @Benchmark
+    public void updateEnvironment() {
+        env.updateEnvironment();
+    }
+}
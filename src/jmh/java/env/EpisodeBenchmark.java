@@ -0,0 +1,41 @@
+package env;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Whole episodes per second: the {@link ScriptedAgent} plays an episode on the default map
+ * and resets the environment for the next one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EpisodeBenchmark {
+
+    private EnvironmentExt env;
+    private ScriptedAgent agent;
+
+    @Setup
+    public void setup() {
+        env = Benchmarks.newEnvironment();
+        agent = new ScriptedAgent(env, Benchmarks.AGENT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        env.stop();
+    }
+
+    @Benchmark
+    public double episode() {
+        return agent.runEpisode();
+    }
+}
@@ -0,0 +1,53 @@
+package env;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Primitive steps per second of the {@link SimKernel} without Jason: a fixed random sequence
+ * of moves, pickups, drops, paints and opens on the default map, a new episode every
+ * EPISODE_STEPS steps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class KernelBenchmark {
+
+    private static final int EPISODE_STEPS = 1000;
+
+    private SimKernel kernel;
+    private SimAgent agent;
+    private final int[] actions = new int[4096];
+    private int next = 0;
+    private int episode = 0;
+
+    @Setup
+    public void setup() {
+        kernel = new SimKernel(GridMap.defaultMap(), 42);
+        agent = kernel.addAgent();
+        kernel.resetEpisode(0);
+        Random random = new Random(42);
+        int objects = kernel.objects().size();
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = random.nextInt(10) < 6
+                    ? SimKernel.action(SimKernel.MOVE, random.nextInt(4))
+                    : SimKernel.action(SimKernel.PICKUP + random.nextInt(4), random.nextInt(objects));
+        }
+    }
+
+    @Benchmark
+    public double step() {
+        if (kernel.clock().ticks() >= EPISODE_STEPS || kernel.goalsAwarded()) kernel.resetEpisode(++episode);
+        double reward = kernel.step(agent, actions[next]);
+        next = (next + 1) & (actions.length - 1);
+        return reward;
+    }
+}
@@ -0,0 +1,62 @@
+package env;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * One pass of the {@link MovementEngine} over many dynamic objects on a 512x512 map: nine in
+ * ten walk (staying put one move in five), the others patrol a short vertical segment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MovementBenchmark {
+
+    private static final int SIZE = 512;
+
+    @Param({"1000", "10000", "50000"})
+    public int movers;
+
+    private SimKernel kernel;
+
+    @Setup
+    public void setup() {
+        GridMap map = new GridMap(SIZE, SIZE);
+        GridMap small = GridMap.defaultMap();
+        for (int i = 0; i < small.objectNames().size(); i++) {
+            int[] pos = small.objectPosition(i);
+            map.addObject(small.objectNames().get(i), pos[0], pos[1]);
+        }
+        Random random = new Random(42);
+        boolean[] taken = new boolean[map.cells()];
+        for (int i = 0; i < movers; i++) {
+            int x, y;
+            do {
+                x = 8 + random.nextInt(SIZE - 8);
+                y = 8 + random.nextInt(SIZE - 16);
+            } while (taken[map.cell(x, y)]);
+            taken[map.cell(x, y)] = true;
+            String name = "o" + i;
+            map.addObject(name, x, y);
+            map.setMovement(name, i % 10 == 0 ? MovementModel.patrol(0.0, x, y, x, y + 8) : MovementModel.walk(0.2));
+        }
+        kernel = new SimKernel(map, 42);
+        kernel.addAgent();
+        kernel.resetEpisode(0);
+    }
+
+    @Benchmark
+    public int moveObjects() {
+        kernel.moveObjects();
+        return kernel.objects().x(kernel.objects().size() - 1);
+    }
+}
@@ -0,0 +1,77 @@
+package env;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Path queries between random connected free cells, by each search strategy of
+ * {@link PathService}: the default 5x5 map and square maps with 20% random obstacles
+ * (fixed seed, so every run searches the same queries).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PathFinderBenchmark {
+
+    private static final int QUERIES = 256;
+
+    @Param({"5", "64", "512", "1024"})
+    public int size;
+
+    @Param({"astar", "jps", "hpa"})
+    public String strategy;
+
+    private GridSearch finder;
+    private Planner planner;
+    private int[] queries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        GridMap map;
+        Random random = new Random(42);
+        if (size == 5) {
+            map = GridMap.defaultMap();
+        } else {
+            map = new GridMap(size, size);
+            for (int x = 1; x <= size; x++)
+                for (int y = 1; y <= size; y++)
+                    if (random.nextInt(5) == 0) map.setObstacle(x, y, true);
+        }
+        PathService service = new PathService(map, PathService.Strategy.parse(strategy));
+        finder = service.newSearch();
+        planner = new Planner(map, service, new ReservationTable(map.cells()), 0);
+        queries = new int[4 * QUERIES];
+        int n = 0;
+        while (n < QUERIES) {
+            int sx = 1 + random.nextInt(size), sy = 1 + random.nextInt(size);
+            int gx = 1 + random.nextInt(size), gy = 1 + random.nextInt(size);
+            if (!map.free(sx, sy) || !map.free(gx, gy) || finder.search(sx, sy, gx, gy) < 0) continue;
+            queries[4 * n] = sx; queries[4 * n + 1] = sy;
+            queries[4 * n + 2] = gx; queries[4 * n + 3] = gy;
+            n++;
+        }
+    }
+
+    @Benchmark
+    public int search() {
+        int q = 4 * (next++ & (QUERIES - 1));
+        return finder.search(queries[q], queries[q + 1], queries[q + 2], queries[q + 3]);
+    }
+
+    /** Routing as the environment does it (distance field when cached, the strategy's search otherwise). */
+    @Benchmark
+    public int route() {
+        int q = 4 * (next++ & (QUERIES - 1));
+        return planner.plan(queries[q], queries[q + 1], queries[q + 2], queries[q + 3]);
+    }
+}